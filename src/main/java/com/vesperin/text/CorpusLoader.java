@@ -0,0 +1,302 @@
+package com.vesperin.text;
+
+import com.google.common.collect.ImmutableList;
+import com.vesperin.base.Source;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Loads a corpus of Java source files from directory trees and source archives
+ * (e.g., {@code -sources.jar} files). Files are read with NIO (large files are
+ * memory-mapped) and decoded concurrently, according to an
+ * {@link ExecutionPolicy}, while the caller consumes the sources already read;
+ * e.g., by handing the stream returned by {@link #load(Path...)} to
+ * {@link Selection#selects(int, Stream, Set, Set)}, files are read while
+ * previous files are parsed.
+ *
+ * <p>Each source is named after its path, relative to the directory or archive
+ * it was found in, minus the {@code .java} extension; e.g., {@code com/foo/Bar}.
+ * Names are unique within a load: the same file name under two roots (e.g., a
+ * class in both a directory and a source archive) is an error, rather than two
+ * sources that downstream code (e.g., {@link SelectionState}) could not tell apart.
+ * Only {@code .java} files matching at least one include glob (if any) and no
+ * exclude glob are loaded; globs are matched against these relative paths
+ * (see {@link FileSystem#getPathMatcher(String)}).
+ *
+ * @author Huascar Sanchez
+ */
+public class CorpusLoader {
+  private static final long MAPPED_THRESHOLD = 64 * 1024;
+
+  private final ExecutionPolicy policy;
+  private final List<String>    includes;
+  private final List<String>    excludes;
+
+  private final List<PathMatcher> includeMatchers;
+  private final List<PathMatcher> excludeMatchers;
+
+  private CorpusLoader(ExecutionPolicy policy, List<String> includes, List<String> excludes){
+    this.policy   = Objects.requireNonNull(policy);
+    this.includes = ImmutableList.copyOf(includes);
+    this.excludes = ImmutableList.copyOf(excludes);
+
+    this.includeMatchers = matchers(this.includes);
+    this.excludeMatchers = matchers(this.excludes);
+  }
+
+  /**
+   * @return a loader that loads every Java source file, reading files in a
+   *  shared work-stealing pool (see {@link ExecutionPolicy#shared()}).
+   */
+  public static CorpusLoader defaults(){
+    return of(ExecutionPolicy.shared());
+  }
+
+  /**
+   * Creates a loader that loads every Java source file, reading files
+   * according to the given execution policy.
+   *
+   * @param policy execution policy
+   * @return a new CorpusLoader object.
+   */
+  public static CorpusLoader of(ExecutionPolicy policy){
+    return new CorpusLoader(policy, ImmutableList.of(), ImmutableList.of());
+  }
+
+  /**
+   * Creates a copy of this loader that only loads files matching
+   * the given globs (or the globs of this loader).
+   *
+   * @param globs include globs; e.g., {@code "com/foo/**"}
+   * @return a new CorpusLoader object.
+   */
+  public CorpusLoader include(String... globs){
+    return new CorpusLoader(policy, concat(includes, globs), excludes);
+  }
+
+  /**
+   * Creates a copy of this loader that skips files matching
+   * the given globs (or the globs of this loader).
+   *
+   * @param globs exclude globs; e.g., {@code "**}{@code /test/**"}
+   * @return a new CorpusLoader object.
+   */
+  public CorpusLoader exclude(String... globs){
+    return new CorpusLoader(policy, includes, concat(excludes, globs));
+  }
+
+  /**
+   * Lazily loads the Java source files in the given directories, source
+   * archives ({@code .jar} or {@code .zip} files) or Java files. Files are
+   * read (at most {@link ExecutionPolicy#parallelism()} at a time) ahead of
+   * the stream's consumer. Archives are closed once the stream is fully
+   * consumed or closed.
+   *
+   * @param roots directories, archives or files.
+   * @return an ordered stream of sources.
+   * @throws ExecutionPolicy.TaskFailure (while the stream is consumed) if
+   *    a file cannot be read.
+   * @throws UncheckedIOException (while the stream is consumed) if a
+   *    directory or archive cannot be opened.
+   * @throws IllegalArgumentException (while the stream is consumed) if two
+   *    files have the same name; see {@link CorpusLoader}.
+   */
+  public Stream<Source> load(Path... roots){
+    final List<FileSystem> archives = new ArrayList<>();
+    final Set<String>      names    = ConcurrentHashMap.newKeySet();
+    final Stream<Entry>    entries  = Arrays.stream(roots)
+      .flatMap(r -> entries(r, archives))
+      .peek(e -> {
+        if(!names.add(e.name())){
+          throw new IllegalArgumentException("Duplicate source " + e.name() + ": " + e);
+        }
+      });
+
+    final Runnable close = () -> {
+      entries.close();
+      closeAll(archives);
+    };
+
+    final Iterator<Source> sources = policy.map(entries.iterator(), CorpusLoader::read);
+    final Iterator<Source> closing = new Iterator<Source>() {
+      @Override public boolean hasNext() {
+        final boolean more = sources.hasNext();
+        if(!more) close.run();
+        return more;
+      }
+
+      @Override public Source next() {
+        return sources.next();
+      }
+    };
+
+    return StreamSupport.stream(
+      Spliterators.spliteratorUnknownSize(closing, Spliterator.ORDERED | Spliterator.NONNULL),
+      false
+    ).onClose(close);
+  }
+
+  /**
+   * Loads all the Java source files in the given directories, source
+   * archives or Java files. See {@link #load(Path...)}.
+   *
+   * @param roots directories, archives or files.
+   * @return the set of loaded sources, in load order.
+   * @throws IllegalArgumentException if two files have the same name.
+   */
+  public Set<Source> loadAll(Path... roots){
+    try (Stream<Source> sources = load(roots)){
+      return sources.collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+  }
+
+  private Stream<Entry> entries(Path root, List<FileSystem> archives){
+    try {
+      if(Files.isDirectory(root)) return walk(root);
+
+      final String name = root.getFileName().toString().toLowerCase(Locale.ENGLISH);
+      if(name.endsWith(".jar") || name.endsWith(".zip")){
+        final FileSystem archive = FileSystems.newFileSystem(root, (ClassLoader) null);
+        synchronized (archives){
+          archives.add(archive);
+        }
+
+        return walk(archive.getPath("/"));
+      }
+
+      final Path parent = root.toAbsolutePath().getParent();
+      return Stream.of(root.toAbsolutePath())
+        .filter(this::isJavaFile)
+        .map(p -> new Entry(p, parent.relativize(p)))
+        .filter(this::accepts);
+
+    } catch (IOException e){
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Stream<Entry> walk(Path root) throws IOException {
+    return Files.walk(root)
+      .filter(Files::isRegularFile)
+      .filter(this::isJavaFile)
+      .map(p -> new Entry(p, root.relativize(p)))
+      .filter(this::accepts);
+  }
+
+  private boolean isJavaFile(Path path){
+    return path.getFileName() != null && path.getFileName().toString().endsWith(".java");
+  }
+
+  private boolean accepts(Entry entry){
+    final Path relative = Paths.get(entry.relativePath);
+    return (includeMatchers.isEmpty() || matchesAny(includeMatchers, relative))
+      && !matchesAny(excludeMatchers, relative);
+  }
+
+  private static List<PathMatcher> matchers(List<String> globs){
+    return globs.stream()
+      .map(g -> FileSystems.getDefault().getPathMatcher("glob:" + g))
+      .collect(Collectors.toList());
+  }
+
+  private static boolean matchesAny(List<PathMatcher> matchers, Path path){
+    for(PathMatcher each : matchers){
+      if(each.matches(path)) return true;
+    }
+
+    return false;
+  }
+
+  static Source read(Entry entry){
+    try {
+      return Source.from(entry.name(), decode(bytes(entry.file)));
+    } catch (IOException e){
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static ByteBuffer bytes(Path file) throws IOException {
+    if(file.getFileSystem() == FileSystems.getDefault()){
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+        final long size = channel.size();
+        if(size >= MAPPED_THRESHOLD){
+          return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+      }
+    }
+
+    return ByteBuffer.wrap(Files.readAllBytes(file));
+  }
+
+  private static String decode(ByteBuffer bytes) throws CharacterCodingException {
+    final String content = StandardCharsets.UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE)
+      .decode(bytes)
+      .toString();
+
+    // drops the byte order mark, if any
+    return content.startsWith("\uFEFF") ? content.substring(1) : content;
+  }
+
+  private static List<String> concat(List<String> globs, String... more){
+    return ImmutableList.<String>builder().addAll(globs).add(more).build();
+  }
+
+  private static void closeAll(List<FileSystem> archives){
+    synchronized (archives){
+      for(FileSystem each : archives){
+        try {
+          each.close();
+        } catch (IOException ignored){}
+      }
+
+      archives.clear();
+    }
+  }
+
+  static class Entry {
+    final Path    file;
+    final String  relativePath;  // separated by '/'
+
+    Entry(Path file, Path relative){
+      this.file         = file;
+      this.relativePath = relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+    }
+
+    String name(){
+      return relativePath.substring(0, relativePath.length() - ".java".length());
+    }
+
+    @Override public String toString() {
+      return file.toUri().toString();
+    }
+  }
+}
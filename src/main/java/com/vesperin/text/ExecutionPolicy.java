@@ -0,0 +1,261 @@
+package com.vesperin.text;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Decides where and how many tasks run concurrently; e.g., the per-Source
+ * word extraction tasks run by {@link Selection}. Policies never create or
+ * destroy threads per call: they either use a caller-supplied executor, a
+ * shared work-stealing pool sized to the number of cores, or (on runtimes
+ * that support them) one virtual thread per task.
+ *
+ * <p>At most {@link #parallelism()} tasks of a single {@link #map(Collection, Function)},
+ * {@link #map(Iterator, Function)} or {@link #forEach(Iterator, Function, Consumer)}
+ * call are in flight at any time. If a task fails, the remaining tasks are cancelled
+ * and a {@link TaskFailure} naming the failing item is thrown.
+ *
+ * @author Huascar Sanchez
+ */
+public class ExecutionPolicy {
+  private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+  private final Executor executor;
+  private final int      parallelism;
+
+  private ExecutionPolicy(Executor executor, int parallelism){
+    if(parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+
+    this.executor     = Objects.requireNonNull(executor);
+    this.parallelism  = parallelism;
+  }
+
+  /**
+   * @return a policy backed by a shared work-stealing pool with one
+   *  thread per core.
+   */
+  public static ExecutionPolicy shared(){
+    return Shared.POLICY;
+  }
+
+  /**
+   * Creates a policy backed by a caller-supplied executor. The policy
+   * never shuts this executor down.
+   *
+   * @param executor the executor
+   * @param parallelism max number of tasks in flight per call.
+   * @return a new ExecutionPolicy object.
+   */
+  public static ExecutionPolicy of(Executor executor, int parallelism){
+    return new ExecutionPolicy(executor, parallelism);
+  }
+
+  /**
+   * Creates a policy that runs every task in its own virtual thread.
+   *
+   * @param parallelism max number of tasks in flight per call.
+   * @return a new ExecutionPolicy object.
+   * @throws UnsupportedOperationException if the running JVM does not
+   *    support virtual threads.
+   */
+  public static ExecutionPolicy virtualThreads(int parallelism){
+    final Executor executor = VirtualThreads.EXECUTOR;
+    if(executor == null){
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+    }
+
+    return new ExecutionPolicy(executor, parallelism);
+  }
+
+  /**
+   * @return true if the running JVM supports virtual threads.
+   */
+  public static boolean supportsVirtualThreads(){
+    return VirtualThreads.EXECUTOR != null;
+  }
+
+  /**
+   * @return max number of tasks in flight per call.
+   */
+  public int parallelism(){
+    return parallelism;
+  }
+
+  /**
+   * Applies a task to every item, running at most {@link #parallelism()}
+   * tasks at once, and waits for all of them.
+   *
+   * @param items items to process
+   * @param task task to apply
+   * @param <T> item type
+   * @param <R> result type
+   * @return results, in item order.
+   * @throws TaskFailure if a task fails, or if the calling thread is
+   *    interrupted while waiting.
+   */
+  public <T, R> List<R> map(Collection<T> items, Function<? super T, ? extends R> task){
+    final List<R> result = new ArrayList<>(items.size());
+    forEach(items.iterator(), task, result::add);
+    return result;
+  }
+
+  /**
+   * Applies a task to a (possibly unbounded) sequence of items, running at
+   * most {@link #parallelism()} tasks at once. Items are pulled from the
+   * iterator only when there is room for a new task, and results are handed
+   * to the sink, on the calling thread, in item order and as soon as they
+   * (and their predecessors) complete.
+   *
+   * @param items items to process
+   * @param task task to apply
+   * @param sink result consumer
+   * @param <T> item type
+   * @param <R> result type
+   * @throws TaskFailure if a task fails, or if the calling thread is
+   *    interrupted while waiting.
+   */
+  public <T, R> void forEach(Iterator<T> items, Function<? super T, ? extends R> task, Consumer<? super R> sink){
+    final Window<T, R> window = new Window<>(items, task);
+
+    try {
+      while(window.hasNext()){
+        sink.accept(window.next());
+      }
+    } finally {
+      window.cancel();
+    }
+  }
+
+  /**
+   * Lazily applies a task to a (possibly unbounded) sequence of items; i.e.,
+   * the pull-based version of {@link #forEach(Iterator, Function, Consumer)}.
+   * Tasks for the next {@link #parallelism()} items run ahead of the caller,
+   * and results are returned in item order. Tasks still in flight when the
+   * caller stops iterating are left to complete.
+   *
+   * @param items items to process
+   * @param task task to apply
+   * @param <T> item type
+   * @param <R> result type
+   * @return an iterator over the results; its {@code next} method throws
+   *    a {@link TaskFailure} if a task fails, or if the calling thread is
+   *    interrupted while waiting.
+   */
+  public <T, R> Iterator<R> map(Iterator<T> items, Function<? super T, ? extends R> task){
+    return new Window<>(items, task);
+  }
+
+  @Override public String toString() {
+    return "ExecutionPolicy(" + executor.getClass().getSimpleName() + ", " + parallelism + ")";
+  }
+
+  /**
+   * Thrown when a task fails; it names the item the task was processing.
+   */
+  public static class TaskFailure extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object item;
+
+    TaskFailure(Object item, Throwable cause){
+      super(item == null ? "Interrupted while waiting for tasks" : ("Failed to process " + item));
+      this.item = item;
+      initCause(cause);
+    }
+
+    /**
+     * @return the item whose task failed; null if the caller was interrupted.
+     */
+    public Object item(){
+      return item;
+    }
+  }
+
+  private class Window<T, R> implements Iterator<R> {
+    final Iterator<T>                       items;
+    final Function<? super T, ? extends R>  task;
+    final Deque<T>                          inFlight;
+    final Deque<FutureTask<R>>              futures;
+
+    Window(Iterator<T> items, Function<? super T, ? extends R> task){
+      this.items    = Objects.requireNonNull(items);
+      this.task     = Objects.requireNonNull(task);
+      this.inFlight = new ArrayDeque<>(parallelism);
+      this.futures  = new ArrayDeque<>(parallelism);
+    }
+
+    @Override public boolean hasNext() {
+      fill();
+      return !futures.isEmpty();
+    }
+
+    @Override public R next() {
+      if(!hasNext()) throw new NoSuchElementException();
+
+      final T item = inFlight.peek();
+      try {
+        final R result = futures.peek().get();
+        inFlight.poll();
+        futures.poll();
+
+        return result;
+      } catch (ExecutionException e){
+        cancel();
+        throw new TaskFailure(item, e.getCause());
+      } catch (InterruptedException e){
+        cancel();
+        Thread.currentThread().interrupt();
+        throw new TaskFailure(null, e);
+      }
+    }
+
+    void fill(){
+      while(items.hasNext() && futures.size() < parallelism){
+        final T             item   = items.next();
+        final FutureTask<R> future = new FutureTask<>(() -> task.apply(item));
+
+        executor.execute(future);
+        inFlight.add(item);
+        futures.add(future);
+      }
+    }
+
+    void cancel(){
+      futures.forEach(f -> f.cancel(true));
+      futures.clear();
+      inFlight.clear();
+    }
+  }
+
+  private static class Shared {
+    static final ExecutionPolicy POLICY = new ExecutionPolicy(new ForkJoinPool(CORES), CORES);
+  }
+
+  private static class VirtualThreads {
+    static final Executor EXECUTOR = create();
+
+    private static Executor create(){
+      try {
+        final Method factory = java.util.concurrent.Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException | RuntimeException e){
+        return null;
+      }
+    }
+  }
+}
@@ -105,7 +105,8 @@ public interface Grouping {
     @Override public Groups apply(List<Word> words) {
       final Index index = Index.createIndex(words);
 
-      final Map<Word, Matrix> wordToMatrix = Jamas.splitMatrix(index.wordList(), index.lsiMatrix());
+      final Matrix[]  wordToMatrix = Jamas.splitMatrix(index.lsiMatrix());
+      final int[]     wordIds      = words.stream().mapToInt(index::wordId).toArray();
 
       // prelim work
       int numDocs   = words.size();
@@ -120,7 +121,7 @@ public interface Grouping {
       final List<Group> clusters = new ArrayList<>();
       for(int i = 0; i < numGroups; i++){
         final Group cluster = new GroupImpl();
-        cluster.add(initialClusters.get(i), wordToMatrix.get(words.get(i)));
+        cluster.add(initialClusters.get(i), wordToMatrix[wordIds[i]]);
         clusters.add(cluster);
       }
 
@@ -135,7 +136,7 @@ public interface Grouping {
           int bestCluster = 0;
           double maxDistance = Double.MIN_VALUE;
           final Word    word = words.get(i);
-          final Matrix  doc  = wordToMatrix.get(word);
+          final Matrix  doc  = wordToMatrix[wordIds[i]];
 
           for(int j = 0; j < numGroups; j++){
             final double distance = clusters.get(j).proximity(doc);
@@ -174,7 +175,7 @@ public interface Grouping {
         .collect(Collectors.toList());
 
       final Matrix docToMatrix = index.lsiMatrix().transpose();
-      final Map<Document, Matrix> documents = Jamas.splitMatrix(docList, docToMatrix);
+      final Matrix[] documents  = Jamas.splitMatrix(docToMatrix);
 
       // prelim work
       int numDocs   = docList.size();
@@ -189,7 +190,7 @@ public interface Grouping {
       final List<Group> clusters = new ArrayList<>();
       for(int i = 0; i < numGroups; i++){
         final Group cluster = new GroupImpl();
-        cluster.add(initialClusters.get(i), documents.get(docList.get(i)));
+        cluster.add(initialClusters.get(i), documents[docList.get(i).id()]);
         clusters.add(cluster);
       }
 
@@ -203,7 +204,7 @@ public interface Grouping {
           int bestCluster = 0;
           double maxDistance = Double.MIN_VALUE;
           final Document word = docList.get(i);
-          final Matrix   doc  = documents.get(word);
+          final Matrix   doc  = documents[word.id()];
 
           for(int j = 0; j < numGroups; j++){
             final double distance = clusters.get(j).proximity(doc);
@@ -1,48 +1,124 @@
 package com.vesperin.text;
 
 import Jama.Matrix;
-import Jama.SingularValueDecomposition;
-import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.primitives.Ints;
 import com.vesperin.text.Selection.Document;
 import com.vesperin.text.Selection.Word;
+import com.vesperin.text.utils.Hnsw;
 import com.vesperin.text.utils.Jamas;
+import com.vesperin.text.utils.Postings;
+import com.vesperin.text.utils.SparseMatrix;
+import com.vesperin.text.utils.TruncatedSvd;
+import com.vesperin.text.utils.Weighting;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /**
  * @author Huascar Sanchez
  */
 public class Index {
-  private int docCount;
-  private int wordCount;
 
-  private Map<Document, List<Word>> indexMap;
-  private Map<String, Document>     docMap;
+  /**
+   * Default fraction of changed documents (or new words) since the last
+   * full SVD after which the latent semantic matrix is re-decomposed
+   * instead of updated by fold-in.
+   */
+  static final double DEFAULT_DRIFT_THRESHOLD = 0.1D;
+
+  private static final AtomicLong UIDS = new AtomicLong();
+
+  private final long          uid;
+  private final TruncatedSvd  svdEngine;
+
+  private final Map<Word, Integer>    rows;
+  private final List<Word>            wordList;
+  private final Map<String, Document> docMap;
+  private final List<Document>        docList;  // indexed by document id; null if removed
+  private final List<Postings>        columns;  // indexed by document id; null if removed
+
+  private int[]         docFrequency;
+  private int           docCount;
+  private Set<Document> docSet;
+  private long          version;
+
+  private SparseMatrix  wordFrequencyMatrix;
+  private final Map<Weighting, SparseMatrix> tfidfMatrices;
 
-  private Matrix      wordFrequencyMatrix;
-  private Matrix      lsiMatrix;
-  private List<Word>  wordList;
-  private Set<String> docSet;
+  // latent semantic matrix; backed by an array with spare capacity
+  // so documents can be folded in without copying the whole matrix.
+  // If rows (i.e., words) are normalized, the array holds the reconstructed
+  // scores, and each row is scaled by its rowScale when read.
+  private double[][]        lsiData;
+  private boolean           lsiByWord;  // rows (i.e., words) are normalized, not columns
+  private double[]          rowSums;    // sum of each row of lsiData; only if lsiByWord
+  private double[]          rowScale;   // 1 / |rowSums|; or 1, if columns are normalized
+  private double[]          rowSquares; // sum of squares of each row of lsiData
+  private TruncatedSvd.Svd  decomposition;
+  private double[][]        docLatent;  // k-dim document coordinates, by document id
+  private int               decomposedDocs;
+  private int               decomposedWords;
+  private int               changedDocs;
+  private double            driftThreshold;
+
+  private double[]          docInverse;   // 1 / norm of each column of the latent semantic matrix
+  private double[]          wordInverse;  // 1 / norm of each row of lsiData
+  private Hnsw              docGraph;
+  private Hnsw              wordGraph;
+
+  // parts of a loaded snapshot that are still views over the mapped
+  // file; they are read on first use (see Snapshot)
+  private DoubleBuffer      storedWeights;
+  private ByteBuffer        storedLatent;
 
   Index(){
-    this.wordCount  = 0;
-    this.docCount   = 0;
-    this.indexMap   = new ConcurrentHashMap<>();
-    this.docMap     = new ConcurrentHashMap<>();
-    this.wordList   = new CopyOnWriteArrayList<>();
-    this.docSet     = new HashSet<>();
+    this(TruncatedSvd.defaults());
+  }
+
+  Index(TruncatedSvd svdEngine){
+    this.uid            = UIDS.incrementAndGet();
+    this.svdEngine      = Objects.requireNonNull(svdEngine);
+    this.rows           = new LinkedHashMap<>();
+    this.wordList       = new ArrayList<>();
+    this.docMap         = new LinkedHashMap<>();
+    this.docList        = new ArrayList<>();
+    this.columns        = new ArrayList<>();
+    this.docFrequency   = new int[0];
+    this.docCount       = 0;
+    this.docSet         = Collections.emptySet();
+    this.version        = 0;
+    this.driftThreshold = DEFAULT_DRIFT_THRESHOLD;
 
     this.wordFrequencyMatrix  = null;
-    this.lsiMatrix            = null;
+    this.tfidfMatrices        = new EnumMap<>(Weighting.class);
+    this.lsiData              = null;
   }
 
   /**
@@ -53,123 +129,1265 @@ public class Index {
    * @return a new Index object.
    */
   static Index createIndex(List<Word> words){
-    final Index index = new Index();
+    return createIndex(words, TruncatedSvd.defaults());
+  }
+
+  /**
+   * It creates an index based on a flatten word list; the index's latent
+   * semantic matrix is computed by the given truncated SVD engine whenever
+   * the word-document matrix is big enough
+   * (see {@link TruncatedSvd#worthwhile(int, int)}).
+   *
+   * @param words flatten Word List.
+   * @param svdEngine truncated SVD engine.
+   * @return a new Index object.
+   */
+  static Index createIndex(List<Word> words, TruncatedSvd svdEngine){
+    final Index index = new Index(svdEngine);
     index.index(words);
     return index;
   }
 
+  /**
+   * @return indexed documents, ordered by their id (i.e., their
+   *  column in {@link #wordDocFrequency()}).
+   */
   Set<Document> docSet(){
-    return indexMap.keySet();
+    if(docSet == null){
+      final Set<Document> live = new LinkedHashSet<>();
+      for(Document each : docList){
+        if(each != null) live.add(each);
+      }
+
+      docSet = Collections.unmodifiableSet(live);
+    }
+
+    return docSet;
+  }
+
+  /**
+   * @return documents indexed by their id; removed documents are
+   *  represented by null entries.
+   */
+  List<Document> docList(){
+    return Collections.unmodifiableList(docList);
   }
 
   List<Word> wordList(){
     return wordList;
   }
 
-  Matrix wordDocFrequency(){
+  /**
+   * @param word a word
+   * @return the word's id (i.e., its row in {@link #wordDocFrequency()});
+   *  -1 if the word is not indexed.
+   */
+  int wordId(Word word){
+    final Integer row = rows.get(word);
+    return row == null ? -1 : row;
+  }
+
+  /**
+   * @param document a document
+   * @return the document's id in this index (i.e., its column in
+   *  {@link #wordDocFrequency()}); -1 if the document is not indexed.
+   */
+  int docId(Document document){
+    final Document doc = docMap.get(document.toString());
+    return doc == null ? -1 : doc.id();
+  }
+
+  /**
+   * @return the number of documents in each word's row; i.e., the
+   *  word's document frequency.
+   */
+  int[] docFrequency(){
+    return Arrays.copyOf(docFrequency, wordList.size());
+  }
+
+  /**
+   * @return the number of (live) documents in this index.
+   */
+  int docCount(){
+    return docCount;
+  }
+
+  /**
+   * @return a number that identifies this index object within this JVM.
+   */
+  long uid(){
+    return uid;
+  }
+
+  /**
+   * @return a number that changes every time this index changes.
+   */
+  long version(){
+    return version;
+  }
+
+  /**
+   * @return the sparse word-by-document frequency matrix; rows follow
+   *  {@link #wordList()} and columns follow document ids (see {@link #docList()}).
+   */
+  SparseMatrix wordDocFrequency(){
+    if(wordFrequencyMatrix == null){
+      createWordDocMatrix();
+    }
+
     return wordFrequencyMatrix;
   }
 
+  /**
+   * @return the tf-idf weighted (and column normalized) version of
+   *  {@link #wordDocFrequency()}, using raw word counts.
+   *  See {@link #tfidfMatrix(Weighting)}.
+   */
+  SparseMatrix tfidfMatrix(){
+    return tfidfMatrix(Weighting.RAW);
+  }
+
+  /**
+   * @param weighting term frequency weighting scheme
+   * @return the tf-idf weighted (and column normalized) version of
+   *  {@link #wordDocFrequency()}; it is computed on first use and cached
+   *  until this index changes.
+   */
+  SparseMatrix tfidfMatrix(Weighting weighting){
+    return tfidfMatrices.computeIfAbsent(
+      Objects.requireNonNull(weighting),
+      w -> w == Weighting.RAW && storedWeights != null
+        ? wordDocFrequency().withValues(Snapshot.readDoubles(storedWeights))
+        : Jamas.tfidfMatrix(wordDocFrequency(), docFrequency(), docCount, w)
+    );
+  }
+
+  /**
+   * Writes a snapshot of this index to a file. The snapshot contains the
+   * index's vocabulary, documents, postings, tf-idf weights and
+   * latent semantic matrix (if already computed). See {@link #load(Path)}.
+   *
+   * @param file target file; it is replaced atomically.
+   * @throws IOException if unable to write the file.
+   */
+  public void save(Path file) throws IOException {
+    Snapshot.write(this, file);
+  }
+
+  /**
+   * Loads an index from a snapshot file written by {@link #save(Path)}. The
+   * file is memory-mapped, so no corpus parsing or SVD takes place.
+   *
+   * @param file snapshot file
+   * @return a new Index object.
+   * @throws IOException if unable to read the file, or if the file is not
+   *    a valid snapshot (e.g., wrong format version or checksum).
+   */
+  public static Index load(Path file) throws IOException {
+    return Snapshot.read(file, TruncatedSvd.defaults());
+  }
+
+  /**
+   * @return the latent semantic matrix; it is computed on first use, and
+   *  re-decomposed if the index drifted too far from its last full SVD.
+   *  If its rows (i.e., words) are normalized, this is a (scaled) copy.
+   */
   Matrix lsiMatrix(){
-    return lsiMatrix;
+    if(!decomposed()) return null;
+
+    final int words = wordList.size();
+    final int docs  = docList.size();
+    if(!lsiByWord) return new Matrix(lsiData, words, docs);
+
+    final double[][] data = new double[words][docs];
+    for (int i = 0; i < words; i++) {
+      for (int j = 0; j < docs; j++) {
+        data[i][j] = Math.abs(lsiData[i][j]) * rowScale[i];
+      }
+    }
+
+    return new Matrix(data, words, docs);
   }
 
-  void index(List<Word> words/*unique*/){
+  /**
+   * Reads the latent semantic matrix of a loaded snapshot, or decomposes
+   * this index, if not decomposed yet (or if it drifted too far from its
+   * last full SVD).
+   *
+   * @return false if this index is empty.
+   */
+  private boolean decomposed(){
+    readStoredLatent();
 
-    final Map<String, List<Word>> map = new HashMap<>();
-    final Set<Word> wordsSet = new LinkedHashSet<>();
-    wordsSet.addAll(words);
+    if(docCount == 0 || wordList.isEmpty()) return false;
 
-    for(Word each : words){
-      final Set<String> docs = each.container();
+    if(lsiData == null || drift() > driftThreshold){
+      createLsiMatrix();
+    }
 
-      for(String doc : docs){
-        if(!map.containsKey(doc)){
-          map.put(doc, Lists.newArrayList(each));
-        } else {
-          map.get(doc).add(each);
-        }
+    return true;
+  }
+
+  /**
+   * @return the columns of the latent semantic matrix (i.e., document
+   *  vectors) scaled to unit length on the fly, by word id then document id.
+   *  Empty if this index is empty. See {@link #lsiMatrix()}.
+   */
+  UnitVectors unitDocVectors(){
+    if(!decomposed()) return UnitVectors.EMPTY;
+
+    return new UnitVectors(lsiData, rowScale, docInverse, false);
+  }
+
+  /**
+   * @return the rows of the latent semantic matrix (i.e., word vectors)
+   *  scaled to unit length on the fly, by document id then word id.
+   *  Empty if this index is empty. See {@link #lsiMatrix()}.
+   */
+  UnitVectors unitWordVectors(){
+    if(!decomposed()) return UnitVectors.EMPTY;
+
+    // a row's scale does not change its direction
+    return new UnitVectors(lsiData, wordInverse, null, true);
+  }
+
+  /**
+   * @return an approximate nearest neighbour graph over the documents' latent
+   *  coordinates (i.e., the columns of S * V', scaled to unit length); it is
+   *  built (in parallel) on first use after a full SVD, and documents folded
+   *  in afterwards are inserted, re-linked or deleted in place. Hits are
+   *  meant to be rescored exactly, using {@link #unitDocVectors()}. See {@link #docGraphQuery(int[])}.
+   */
+  Hnsw docGraph(){
+    final boolean decomposed = decomposed();
+    if(docGraph == null){
+      docGraph = Hnsw.build(decomposed ? latentDocVectors(false) : new float[docList.size()][]);
+    }
+
+    return docGraph;
+  }
+
+  /**
+   * @return an approximate nearest neighbour graph over the words' latent
+   *  coordinates (i.e., the rows of U * S, scaled to unit length); it is
+   *  built (in parallel) on first use after a full SVD (fold-in does not
+   *  change these coordinates). Hits are meant to be rescored exactly, using
+   *  {@link #unitWordVectors()}. See {@link #wordGraphQuery(int[])}.
+   */
+  Hnsw wordGraph(){
+    final boolean decomposed = decomposed();
+    if(wordGraph == null){
+      wordGraph = Hnsw.build(decomposed ? latentWordVectors() : new float[wordList.size()][]);
+    }
+
+    return wordGraph;
+  }
+
+  /**
+   * Projects a query made of (equally weighted) words onto the latent space
+   * of {@link #docGraph()}; i.e., U' * q. Words unknown to the last SVD
+   * are ignored.
+   *
+   * @param words distinct word ids
+   * @return the query's unit length latent coordinates; empty if
+   *    this index is empty.
+   */
+  float[] docGraphQuery(int[] words){
+    if(!decomposed()) return new float[0];
+
+    final Matrix    U     = decomposition.getU();
+    final double[]  query = new double[U.getColumnDimension()];
+    for(int id : words){
+      if(id >= U.getRowDimension()) continue;
+
+      for (int l = 0; l < query.length; l++) {
+        query[l] += U.get(id, l);
       }
     }
 
-    int idx = 0; for(String each : map.keySet()){
-      final Document doc = new Selection.DocumentImpl(idx, each);
-      indexMap.put(doc, map.get(each));
-      docMap.put(each, doc);
-      docSet.add(each);
-      idx++;
+    return unitLength(query);
+  }
+
+  /**
+   * Projects a query made of (equally weighted) documents onto the latent
+   * space of {@link #wordGraph()}; i.e., q' * V.
+   *
+   * @param docs distinct document ids
+   * @return the query's unit length latent coordinates; empty if
+   *    this index is empty.
+   */
+  float[] wordGraphQuery(int[] docs){
+    if(!decomposed()) return new float[0];
+
+    final double[] s     = decomposition.getSingularValues();
+    final double[] query = new double[s.length];
+    for(int id : docs){
+      for (int l = 0; l < query.length; l++) {
+        query[l] += s[l] == 0.0D ? 0.0D : docLatent[id][l] / s[l];
+      }
     }
 
-    docCount  = indexMap.keySet().size();
-    wordCount = wordsSet.size();
-    wordList.addAll(wordsSet);
+    return unitLength(query);
+  }
 
-    createWordDocMatrix();
-    createLsiMatrix();
+  /**
+   * Sets the drift threshold of this index. See {@link #drift()}.
+   *
+   * @param threshold fraction in (0, 1]
+   */
+  void driftThreshold(double threshold){
+    if(threshold <= 0.0D) throw new IllegalArgumentException("Invalid threshold " + threshold);
+    this.driftThreshold = threshold;
   }
 
-  void createWordDocMatrix(){
-    final double[][] data = new double[wordCount][docCount];
+  /**
+   * @return how far the index drifted from its last full SVD; this is
+   *  the largest of the fraction of documents that were added, replaced or
+   *  removed since then and the fraction of words that were added since then.
+   */
+  double drift(){
+    if(decomposition == null && storedLatent == null) return 0.0D;
 
-    final List<String> docList = docSet.stream()
-      .collect(Collectors.toList());
+    final double docs  = changedDocs / (double) Math.max(1, decomposedDocs);
+    final double words = (wordList.size() - decomposedWords) / (double) Math.max(1, decomposedWords);
 
-    for (int i = 0; i < wordCount; i++) {
-      for (int j = 0; j < docCount; j++) {
+    return Math.max(docs, words);
+  }
 
-        final List<Word> ws = indexMap.get(docMap.get(docList.get(j)));
-        if(ws == null) continue;
+  void index(List<Word> words/*unique*/){
+    clear();
+    touch();
 
-        final Word word = wordList.get(i);
+    for(Word each : words){
+      final Word word = wordList.get(rowOf(each));
 
-        int count = 0; for(Word each : ws){
-          if(Objects.equals(each, word)) count++;
+      for(String container : each.container()){
+        word.add(container);
+
+        if(!docMap.containsKey(container)){
+          newDocument(container);
         }
+      }
+    }
 
-        data[i][j] = count;
+    // Builds the word-by-document frequency matrix in a single pass over
+    // the postings; i.e., each (word, container) pair is visited once.
+    final SparseMatrix.Builder builder = SparseMatrix.builder(wordList.size(), docList.size());
+    for(Word each : words){
+      final int row = rows.get(each);
+      for(String container : each.container()){
+        builder.add(row, docMap.get(container).id(), 1.0D);
       }
     }
 
-    wordFrequencyMatrix = new Matrix(data);
+    wordFrequencyMatrix = builder.build();
+    docFrequency        = wordFrequencyMatrix.rowNonZeros();
+    docCount            = docList.size();
+
+    for(int j = 0; j < docList.size(); j++){
+      columns.add(postingsOf(wordFrequencyMatrix, j));
+    }
+  }
+
+  /**
+   * Adds a new document to this index. If the document is already
+   * indexed, then its words are replaced.
+   *
+   * @param container document's container; i.e., path-to-src-file#method-signature
+   * @param words document's words; duplicates count as multiple occurrences.
+   * @return the indexed document.
+   */
+  Document add(String container, List<Word> words){
+    Objects.requireNonNull(container);
+    Objects.requireNonNull(words);
+
+    if(docMap.containsKey(container)){
+      return replace(docMap.get(container), words);
+    }
+
+    final Document doc    = newDocument(container);
+    final Postings column = columnOf(words);
+    columns.add(column);
+    docCount++;
+
+    countDocFrequency(column, 1);
+    updateContainers(column, doc, true);
+    updateFrequencies(doc.id(), column);
+    foldIn(doc.id(), column);
+
+    return doc;
+  }
+
+  /**
+   * Replaces the words of an already indexed document.
+   *
+   * @param document indexed document
+   * @param words document's new words; duplicates count as multiple occurrences.
+   * @return the indexed document.
+   */
+  Document replace(Document document, List<Word> words){
+    final Document doc = liveDocument(document);
+
+    final Postings column = columnOf(words);
+    countDocFrequency(columns.get(doc.id()), -1);
+    countDocFrequency(column, 1);
+    updateContainers(columns.get(doc.id()), doc, false);
+    updateContainers(column, doc, true);
+    columns.set(doc.id(), column);
+
+    updateFrequencies(doc.id(), column);
+    foldIn(doc.id(), column);
+
+    return doc;
+  }
+
+  /**
+   * Removes an indexed document. The ids of the remaining documents
+   * do not change.
+   *
+   * @param document indexed document.
+   */
+  void remove(Document document){
+    final Document doc = liveDocument(document);
+
+    countDocFrequency(columns.get(doc.id()), -1);
+    updateContainers(columns.get(doc.id()), doc, false);
+    columns.set(doc.id(), null);
+    docList.set(doc.id(), null);
+    docMap.remove(doc.toString());
+    docCount--;
+
+    updateFrequencies(doc.id(), Postings.EMPTY);
+    foldIn(doc.id(), Postings.EMPTY);
+  }
+
+  /**
+   * Rebuilds this index from its current documents, dropping removed
+   * documents and unused words, and then re-decomposes its latent semantic
+   * matrix. Document ids might change.
+   */
+  void reindex(){
+    final List<String>              containers = new ArrayList<>();
+    final List<Map<Word, Integer>>  counts     = new ArrayList<>();
+
+    for(int j = 0; j < docList.size(); j++){
+      final Postings column = columns.get(j);
+      if(column == null) continue;
+
+      final Map<Word, Integer> words = new LinkedHashMap<>();
+      column.forEach((row, count) -> words.put(wordList.get(row), count));
+
+      containers.add(docList.get(j).toString());
+      counts.add(words);
+    }
+
+    readStoredLatent();
+
+    final boolean decomposed = lsiData != null;
+    clear();
+
+    for(int j = 0; j < containers.size(); j++){
+      final Map<Integer, Integer> column = new TreeMap<>();
+      counts.get(j).forEach((w, c) -> column.put(rowOf(w), c));
+
+      final Document doc = newDocument(containers.get(j));
+      columns.add(Postings.of(
+        Ints.toArray(column.keySet()), Ints.toArray(column.values())
+      ));
+      docCount++;
+
+      updateContainers(columns.get(j), doc, true);
+    }
+
+    docFrequency = new int[wordList.size()];
+    columns.forEach(c -> countDocFrequency(c, 1));
+
+    touch();
+
+    if(decomposed) createLsiMatrix();
   }
 
-  Matrix createLsiMatrix(){
-    final Matrix raw    = wordDocFrequency();
-    final boolean inconsistent = raw.getRowDimension() < raw.getColumnDimension();
-    final Matrix matrix = inconsistent ? raw.transpose() : raw;
+  void createLsiMatrix(){
+    final SparseMatrix raw  = wordDocFrequency();
+    final int          rows = raw.getRowDimension();
+    final int          cols = raw.getColumnDimension();
+
     // compute the value of k (ie where to truncate)
-    int k = (int) Math.floor(Math.sqrt(matrix.getColumnDimension()));
+    final int k = (int) Math.floor(Math.sqrt(Math.min(rows, cols)));
+
+    final TruncatedSvd.Svd svd = TruncatedSvd.worthwhile(rows, cols)
+      ? svdEngine.decompose(raw, k)
+      // small matrices are cheap to decompose exactly
+      : TruncatedSvd.exact(raw.toDense(), k);
 
-    final SingularValueDecomposition svd = matrix.svd();
+    final Matrix weights = svd.reconstruct();
 
-    final Matrix U  = svd.getU();
-    final Matrix S  = svd.getS();
-    final Matrix V  = svd.getV();
+    // With fewer words than documents, the matrix is decomposed as documents
+    // by words, so each word's scores (i.e., rows) are normalized instead;
+    // they are kept as they are, and scaled by their row sums when read
+    lsiByWord = rows < cols;
 
-    final Matrix reducedU  = U.getMatrix(0, U.getRowDimension() - 1, 0, k - 1);
-    final Matrix reducedS  = S.getMatrix(0, k - 1, 0, k - 1);
-    final Matrix reducedV  = V.getMatrix(0, V.getRowDimension() - 1, 0, k - 1);
+    if(!lsiByWord){
+      // Phase 2: Normalize the word score for a single document
+      for (int j = 0; j < weights.getColumnDimension(); j++) {
+        double sum = Jamas.colSum(Jamas.getCol(weights, j));
 
-    final Matrix weights = reducedU.times(reducedS)
-      .times(reducedV.transpose());
+        for (int i = 0; i < weights.getRowDimension(); i++) {
+          // removed documents leave empty columns behind
+          weights.set(i, j, sum == 0.0D ? 0.0D : Math.abs((weights.get(i, j)) / sum));
+        }
+      }
+    }
 
-    // Phase 2: Normalize the word score for a single document
-    for (int j = 0; j < weights.getColumnDimension(); j++) {
-      double sum = Jamas.colSum(Jamas.getCol(weights, j));
+    storedLatent    = null;
+    decomposition   = svd;
+    docLatent       = latentColumns(svd, cols);
+    decomposedDocs  = docCount;
+    decomposedWords = rows;
+    changedDocs     = 0;
+    lsiData         = weights.getArray();
+    docGraph        = null;
+    wordGraph       = null;
 
-      for (int i = 0; i < weights.getRowDimension(); i++) {
-        weights.set(i, j, Math.abs((weights.get(i, j)) / sum));
+    computeNorms(rows, cols);
+  }
+
+  /**
+   * Folds a new version of a document into the latent semantic matrix,
+   * without a new SVD. The document is projected onto the latent space
+   * of the last full SVD; i.e., U * S * (inv(S) * U' * d) = U * U' * d.
+   *
+   * Only the document's column, and the row sums and norms, are updated;
+   * i.e., O(words * k) work. If rows (i.e., words) are normalized, the
+   * new column changes every row's scale, and so the norms of the other
+   * columns; these are left as they are until the next full SVD (see
+   * {@link #drift()}).
+   */
+  private void foldIn(int id, Postings column){
+    touch();
+    readStoredLatent();
+
+    if(lsiData == null) return;
+
+    changedDocs++;
+
+    final Matrix  U       = decomposition.getU();
+    final int     k       = U.getColumnDimension();
+    final int     known   = U.getRowDimension();
+    final int     words   = wordList.size();
+    final int     docs    = docList.size();
+
+    lsiData     = withCapacity(lsiData, words, docs);
+    rowScale    = withCapacity(rowScale, words);
+    rowSquares  = withCapacity(rowSquares, words);
+    wordInverse = withCapacity(wordInverse, words);
+    docInverse  = withCapacity(docInverse, docs);
+    if(lsiByWord) rowSums = withCapacity(rowSums, words);
+
+    final double[] projection = new double[k];
+    column.forEach((row, count) -> {
+      if(row >= known) return; // unknown to the last SVD
+
+      for (int l = 0; l < k; l++) {
+        projection[l] += U.get(row, l) * count;
       }
+    });
+
+    // U' * d is the document's column of S * V'
+    if(docLatent.length < docs){
+      docLatent = Arrays.copyOf(docLatent, Math.max(docs, docLatent.length * 3 / 2));
     }
 
-    if(inconsistent){
-      lsiMatrix = weights.transpose();
+    if(docList.get(id) == null){
+      // a removed document keeps its coordinates, as it still links
+      // its neighbors together in the graph
+      if(docGraph != null) docGraph.delete(id);
     } else {
-      lsiMatrix = weights;
+      docLatent[id] = projection;
+      if(docGraph != null) docGraph.put(id, unitLength(projection));
+    }
+
+    final double[] weights = new double[words];
+    double sum = 0.0D;
+    for (int i = 0; i < known; i++) {
+      double w = 0.0D;
+      for (int l = 0; l < k; l++) {
+        w += U.get(i, l) * projection[l];
+      }
+
+      weights[i] = w;
+      sum += w;
     }
 
-    return lsiMatrix;
+    double norm = 0.0D;
+    for (int i = 0; i < words; i++) {
+      final double old = lsiData[i][id];
+      final double value;
+      if(lsiByWord){
+        value       = weights[i];
+        rowSums[i] += value - old;
+        rowScale[i] = scale(rowSums[i]);
+      } else {
+        value       = sum == 0.0D ? 0.0D : Math.abs(weights[i] / sum);
+        rowScale[i] = 1.0D;
+      }
+
+      lsiData[i][id] = value;
+      rowSquares[i]  = Math.max(0.0D, rowSquares[i] + value * value - old * old);
+      wordInverse[i] = rowScale[i] == 0.0D ? 0.0D : inverse(rowSquares[i]);
+
+      final double cell = Math.abs(value) * rowScale[i];
+      norm += cell * cell;
+    }
+
+    docInverse[id] = inverse(norm);
   }
 
+  /**
+   * Computes the row sums, the row scales and the inverse norms of the
+   * (rows x cols) latent semantic matrix from scratch.
+   */
+  private void computeNorms(int rows, int cols){
+    rowSums     = lsiByWord ? new double[rows] : null;
+    rowScale    = new double[rows];
+    rowSquares  = new double[rows];
+    wordInverse = new double[rows];
+    docInverse  = new double[cols];
+
+    for (int i = 0; i < rows; i++) {
+      final double[] row = lsiData[i];
+
+      double sum = 0.0D;
+      for (int j = 0; j < cols; j++) {
+        sum           += row[j];
+        rowSquares[i] += row[j] * row[j];
+      }
 
+      if(lsiByWord) rowSums[i] = sum;
+
+      rowScale[i]    = lsiByWord ? scale(sum) : 1.0D;
+      wordInverse[i] = rowScale[i] == 0.0D ? 0.0D : inverse(rowSquares[i]);
+
+      for (int j = 0; j < cols; j++) {
+        final double cell = Math.abs(row[j]) * rowScale[i];
+        docInverse[j] += cell * cell;
+      }
+    }
+
+    for (int j = 0; j < cols; j++) docInverse[j] = inverse(docInverse[j]);
+  }
+
+  private static double scale(double sum){
+    return sum == 0.0D ? 0.0D : 1.0D / Math.abs(sum);
+  }
+
+  private static double inverse(double squaredNorm){
+    return squaredNorm == 0.0D ? 0.0D : 1.0D / Math.sqrt(squaredNorm);
+  }
+
+  /**
+   * @return the columns of S * V'; one k-dim vector per document.
+   */
+  private static double[][] latentColumns(TruncatedSvd.Svd svd, int docs){
+    final Matrix    V       = svd.getV();
+    final double[]  s       = svd.getSingularValues();
+    final double[][] result = new double[docs][s.length];
+    for (int j = 0; j < docs; j++) {
+      for (int l = 0; l < s.length; l++) {
+        result[j][l] = V.get(j, l) * s[l];
+      }
+    }
+
+    return result;
+  }
+
+  private static double[][] withCapacity(double[][] data, int words, int docs){
+    if(data.length < words){
+      final int capacity = Math.max(words, data.length * 3 / 2);
+      final int width    = data.length == 0 ? docs : data[0].length;
+
+      data = Arrays.copyOf(data, capacity);
+      for (int i = 0; i < capacity; i++) {
+        if(data[i] == null) data[i] = new double[width];
+      }
+    }
+
+    if(data[0].length < docs){
+      final int capacity = Math.max(docs, data[0].length * 3 / 2);
+      for (int i = 0; i < data.length; i++) {
+        data[i] = Arrays.copyOf(data[i], capacity);
+      }
+    }
+
+    return data;
+  }
+
+  private static double[] withCapacity(double[] data, int size){
+    if(data.length >= size) return data;
+
+    return Arrays.copyOf(data, Math.max(size, data.length * 3 / 2));
+  }
+
+  private void clear(){
+    rows.clear();
+    wordList.clear();
+    docMap.clear();
+    docList.clear();
+    columns.clear();
+
+    docFrequency        = new int[0];
+    docCount            = 0;
+    wordFrequencyMatrix = null;
+    tfidfMatrices.clear();
+    lsiData             = null;
+    lsiByWord           = false;
+    rowSums             = null;
+    rowScale            = null;
+    rowSquares          = null;
+    docInverse          = null;
+    wordInverse         = null;
+    docGraph            = null;
+    wordGraph           = null;
+    decomposition       = null;
+    docLatent           = null;
+    changedDocs         = 0;
+    storedWeights       = null;
+    storedLatent        = null;
+  }
+
+  /**
+   * Marks a change of this index. The latent semantic matrix and its norms
+   * are updated in place (see {@link #foldIn(int, Postings)}); the tf-idf
+   * weights depend on the number of documents, so they are dropped and
+   * computed again on first use (queries do not read them).
+   */
+  private void touch(){
+    version++;
+    docSet              = null;
+    storedWeights       = null;
+    tfidfMatrices.clear();
+  }
+
+  /**
+   * Reads the latent semantic matrix (and its decomposition and graphs) of
+   * a loaded snapshot, if not read yet.
+   */
+  private void readStoredLatent(){
+    if(storedLatent == null) return;
+
+    final ByteBuffer in = storedLatent;
+    storedLatent = null;
+    Snapshot.readLatent(this, in);
+  }
+
+  private Document liveDocument(Document document){
+    final Document doc = docMap.get(Objects.requireNonNull(document).toString());
+    if(doc == null) throw new IllegalArgumentException("Unknown document " + document);
+    return doc;
+  }
+
+  private Document newDocument(String container){
+    final Document doc = new Selection.DocumentImpl(docList.size(), container);
+    docMap.put(container, doc);
+    docList.add(doc);
+    return doc;
+  }
+
+  private int rowOf(Word word){
+    final Integer row = rows.get(word);
+    if(row != null) return row;
+
+    // indexed words are copies, so their containers are this index's documents
+    // (which change), and the caller's words are never changed
+    final Word copy = Selection.createWord(word.element());
+    copy.count(word.value() - copy.value());
+
+    final int newRow = wordList.size();
+    rows.put(copy, newRow);
+    wordList.add(copy);
+
+    if(docFrequency.length <= newRow){
+      docFrequency = Arrays.copyOf(docFrequency, Math.max(16, newRow * 2));
+    }
+
+    return newRow;
+  }
+
+  private Postings columnOf(List<Word> words){
+    final int[] occurrences = new int[words.size()];
+    for (int p = 0; p < occurrences.length; p++) {
+      occurrences[p] = rowOf(words.get(p));
+    }
+
+    return Postings.count(occurrences);
+  }
+
+  private void updateContainers(Postings column, Document doc, boolean contains){
+    column.forEach((row, count) -> {
+      if(contains){
+        wordList.get(row).add(doc.toString());
+      } else {
+        wordList.get(row).container().remove(doc.toString());
+      }
+    });
+  }
+
+  /**
+   * Replaces a column of the word-by-document frequency matrix, if already
+   * built; the other columns are copied as they are.
+   */
+  private void updateFrequencies(int id, Postings column){
+    if(wordFrequencyMatrix == null) return;
+
+    final int[]    rows   = column.ids();
+    final int[]    counts = column.frequencies();
+    final double[] values = new double[counts.length];
+    for (int p = 0; p < counts.length; p++) values[p] = counts[p];
+
+    wordFrequencyMatrix = wordFrequencyMatrix.withColumn(wordList.size(), id, rows, values);
+  }
+
+  private void countDocFrequency(Postings column, int step){
+    column.forEach((row, count) -> docFrequency[row] += step);
+  }
+
+  private void createWordDocMatrix(){
+    final SparseMatrix.Builder builder = SparseMatrix.builder(wordList.size(), docList.size());
+    for (int j = 0; j < columns.size(); j++) {
+      final Postings column = columns.get(j);
+      if(column == null) continue;
+
+      final int col = j;
+      column.forEach((row, count) -> builder.add(row, col, count));
+    }
+
+    wordFrequencyMatrix = builder.build();
+  }
+
+  /**
+   * @param removed true if removed documents (i.e., deleted graph nodes)
+   *    should get their last coordinates too.
+   */
+  private float[][] latentDocVectors(boolean removed){
+    final float[][] vectors = new float[docList.size()][];
+    for (int j = 0; j < vectors.length; j++) {
+      if(docLatent[j] != null && (removed || docList.get(j) != null)){
+        vectors[j] = unitLength(docLatent[j]);
+      }
+    }
+
+    return vectors;
+  }
+
+  private float[][] latentWordVectors(){
+    final Matrix    U       = decomposition.getU();
+    final double[]  s       = decomposition.getSingularValues();
+    final float[][] vectors = new float[wordList.size()][];
+
+    // words added after the last SVD have no latent coordinates
+    for (int i = 0; i < Math.min(vectors.length, U.getRowDimension()); i++) {
+      final double[] row = new double[s.length];
+      for (int l = 0; l < s.length; l++) {
+        row[l] = U.get(i, l) * s[l];
+      }
+
+      vectors[i] = unitLength(row);
+    }
+
+    return vectors;
+  }
+
+  private static float[] unitLength(double[] vector){
+    double norm = 0.0D;
+    for(double each : vector) norm += each * each;
+
+    norm = norm == 0.0D ? 0.0D : 1.0D / Math.sqrt(norm);
+
+    final float[] result = new float[vector.length];
+    for (int l = 0; l < vector.length; l++) {
+      result[l] = (float) (vector[l] * norm);
+    }
+
+    return result;
+  }
+
+  private static Postings postingsOf(SparseMatrix matrix, int col){
+    final int   from        = matrix.columnStart(col);
+    final int   size        = matrix.columnEnd(col) - from;
+    final int[] rows        = new int[size];
+    final int[] frequencies = new int[size];
+
+    for (int p = 0; p < size; p++) {
+      rows[p]        = matrix.rowAt(from + p);
+      frequencies[p] = (int) matrix.valueAt(from + p);
+    }
+
+    return Postings.of(rows, frequencies);
+  }
+
+  /**
+   * Unit length vectors (either the columns or the rows) of the latent
+   * semantic matrix. They are scaled while read (i.e., the absolute value
+   * of an entry times its row and column factors), so no copy of the
+   * matrix is made.
+   */
+  static final class UnitVectors {
+    static final UnitVectors EMPTY = new UnitVectors(new double[0][], null, null, false);
+
+    private final double[][]  data;
+    private final double[]    rowFactors;
+    private final double[]    colFactors;
+    private final boolean     transposed;
+
+    UnitVectors(double[][] data, double[] rowFactors, double[] colFactors, boolean transposed){
+      this.data       = data;
+      this.rowFactors = rowFactors;
+      this.colFactors = colFactors;
+      this.transposed = transposed;
+    }
+
+    /**
+     * @param id query id; i.e., a word id (or a document id, if transposed)
+     * @param item item id; i.e., a document id (or a word id, if transposed)
+     * @return the item's unit length vector entry at the query id.
+     */
+    double get(int id, int item){
+      final int i = transposed ? item : id;
+      final int j = transposed ? id : item;
+
+      double value = Math.abs(data[i][j]);
+      if(rowFactors != null) value *= rowFactors[i];
+      if(colFactors != null) value *= colFactors[j];
+
+      return value;
+    }
+  }
+
+  /**
+   * Binary snapshot of an index. A snapshot file is made of a header
+   * (magic number, format version, payload length and CRC32 checksum of
+   * the payload) followed by the payload. Snapshots with a different format
+   * version or a bad checksum are rejected.
+   */
+  static class Snapshot {
+    static final int MAGIC          = 0x43554549; // "CUEI"
+    static final int FORMAT_VERSION = 8;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    private Snapshot(){}
+
+    static void write(Index index, Path file) throws IOException {
+      final Path temp = Files.createTempFile(
+        file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp"
+      );
+
+      try {
+        final CRC32 checksum = new CRC32();
+        long length;
+
+        try (final FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+          fos.write(new byte[HEADER_SIZE]); // placeholder
+
+          final CountingOutputStream counter = new CountingOutputStream(
+            new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), checksum)
+          );
+
+          final DataOutputStream out = new DataOutputStream(counter);
+          writePayload(index, out);
+          out.flush();
+
+          length = counter.getCount();
+        }
+
+        try (final RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "rw")) {
+          raf.writeInt(MAGIC);
+          raf.writeInt(FORMAT_VERSION);
+          raf.writeLong(length);
+          raf.writeLong(checksum.getValue());
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    static Index read(Path file, TruncatedSvd svdEngine) throws IOException {
+      try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        final long size = channel.size();
+        if(size < HEADER_SIZE || size > Integer.MAX_VALUE){
+          throw new IOException("Invalid index snapshot size: " + size);
+        }
+
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        final int   magic   = buffer.getInt();
+        final int   format  = buffer.getInt();
+        final long  length  = buffer.getLong();
+        final long  crc     = buffer.getLong();
+
+        if(magic != MAGIC){
+          throw new IOException(file + " is not an index snapshot");
+        }
+
+        if(format != FORMAT_VERSION){
+          throw new IOException("Stale index snapshot: format " + format + ", expected " + FORMAT_VERSION);
+        }
+
+        if(length != size - HEADER_SIZE){
+          throw new IOException("Truncated index snapshot: " + file);
+        }
+
+        final CRC32 checksum = new CRC32();
+        checksum.update(buffer.duplicate());
+        if(checksum.getValue() != crc){
+          throw new IOException("Corrupted index snapshot (checksum mismatch): " + file);
+        }
+
+        return readPayload(buffer, svdEngine);
+      }
+    }
+
+    private static void writePayload(Index index, DataOutputStream out) throws IOException {
+      out.writeLong(index.version);
+      out.writeDouble(index.driftThreshold);
+
+      // vocabulary
+      out.writeInt(index.wordList.size());
+      for(Word each : index.wordList){
+        writeString(out, each.element());
+        out.writeInt(each.value());
+      }
+
+      // documents and their postings
+      out.writeInt(index.docList.size());
+      for(int j = 0; j < index.docList.size(); j++){
+        final Document doc    = index.docList.get(j);
+        final Postings column = index.columns.get(j);
+
+        out.writeBoolean(doc != null);
+        if(doc == null) continue;
+
+        writeString(out, doc.toString());
+
+        final byte[] bytes = column.bytes();
+        out.writeInt(column.size());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      // tf-idf statistics
+      for(int df : index.docFrequency()) out.writeInt(df);
+
+      final SparseMatrix tfidf = index.tfidfMatrix();
+      out.writeInt(tfidf.nonZeros());
+      for(int p = 0; p < tfidf.nonZeros(); p++){
+        out.writeDouble(tfidf.valueAt(p));
+      }
+
+      // latent semantic matrix (last, so it can be read on first use)
+      index.readStoredLatent();
+
+      out.writeBoolean(index.lsiData != null);
+      if(index.lsiData == null) return;
+
+      out.writeInt(index.decomposedDocs);
+      out.writeInt(index.decomposedWords);
+      out.writeInt(index.changedDocs);
+
+      final TruncatedSvd.Svd svd = index.decomposition;
+      final double[] s = svd.getSingularValues();
+      out.writeInt(s.length);
+      for(double each : s) out.writeDouble(each);
+      writeMatrix(out, svd.getU());
+      writeMatrix(out, svd.getV());
+      final int words = index.wordList.size();
+      final int docs  = index.docList.size();
+      writeMatrix(out, new Matrix(index.lsiData, words, docs));
+
+      // row sums and norms, as updated by fold-in
+      out.writeBoolean(index.lsiByWord);
+      if(index.lsiByWord) writeDoubles(out, index.rowSums, words);
+      writeDoubles(out, index.rowScale, words);
+      writeDoubles(out, index.rowSquares, words);
+      writeDoubles(out, index.wordInverse, words);
+      writeDoubles(out, index.docInverse, docs);
+
+      final int k = s.length;
+      writeMatrix(out, new Matrix(index.docLatent, index.docList.size(), k));
+
+      // approximate nearest neighbour graphs (only their links)
+      out.writeBoolean(index.docGraph != null);
+      if(index.docGraph != null) index.docGraph.write(out);
+
+      out.writeBoolean(index.wordGraph != null);
+      if(index.wordGraph != null) index.wordGraph.write(out);
+    }
+
+    /**
+     * Reads the payload of a snapshot. Only the vocabulary and the document
+     * table are copied out of the (mapped) buffer; postings are views over
+     * it, and the tf-idf weights and the latent semantic block are kept as
+     * views until first use (see {@link #readLatent(Index, ByteBuffer)}).
+     */
+    private static Index readPayload(ByteBuffer in, TruncatedSvd svdEngine) throws IOException {
+      final Index index = new Index(svdEngine);
+
+      final long    version   = in.getLong();
+      index.driftThreshold    = in.getDouble();
+
+      final int words = in.getInt();
+      for(int i = 0; i < words; i++){
+        final Word word = Selection.createWord(readString(in));
+        word.count(in.getInt() - word.value());
+        index.rowOf(word);
+      }
+
+      final int slots = in.getInt();
+      for(int j = 0; j < slots; j++){
+        if(in.get() == 0){
+          index.docList.add(null);
+          index.columns.add(null);
+          continue;
+        }
+
+        final Document  doc     = index.newDocument(readString(in));
+        final int       size    = in.getInt();
+        final int       length  = in.getInt();
+
+        final Postings column = Postings.view(slice(in, length), size);
+        index.columns.add(column);
+        index.docCount++;
+
+        column.forEach((row, count) -> index.wordList.get(row).add(doc.toString()));
+      }
+
+      index.docFrequency  = readInts(in, words);
+
+      final int weights   = in.getInt();
+      index.storedWeights = slice(in, weights * 8).asDoubleBuffer();
+
+      if(in.get() != 0){
+        index.decomposedDocs  = in.getInt();
+        index.decomposedWords = in.getInt();
+        index.changedDocs     = in.getInt();
+        index.storedLatent    = slice(in, in.remaining());
+      }
+
+      index.docSet          = null;
+      index.version         = version;
+
+      return index;
+    }
+
+    /**
+     * Reads the latent semantic block of a snapshot: the last SVD, the
+     * latent semantic matrix, the documents' latent coordinates and the
+     * nearest neighbour graphs. The graphs' vectors are computed from the
+     * stored coordinates, as they were when the graphs were built; i.e., the
+     * index is not checked for drift here.
+     */
+    static void readLatent(Index index, ByteBuffer in){
+      final double[] s = readDoubles(in, in.getInt());
+      final Matrix   U = readMatrix(in);
+      final Matrix   V = readMatrix(in);
+
+      index.decomposition = new TruncatedSvd.Svd(U, s, V);
+      final Matrix lsi    = readMatrix(in);
+      final int    words  = lsi.getRowDimension();
+
+      index.lsiData       = lsi.getArray();
+      index.lsiByWord     = in.get() != 0;
+      index.rowSums       = index.lsiByWord ? readDoubles(in, words) : null;
+      index.rowScale      = readDoubles(in, words);
+      index.rowSquares    = readDoubles(in, words);
+      index.wordInverse   = readDoubles(in, words);
+      index.docInverse    = readDoubles(in, lsi.getColumnDimension());
+      index.docLatent     = readMatrix(in).getArray();
+
+      try {
+        if(in.get() != 0){
+          index.docGraph  = Hnsw.read(in, index.latentDocVectors(true));
+        }
+
+        if(in.get() != 0){
+          index.wordGraph = Hnsw.read(in, index.latentWordVectors());
+        }
+      } catch (IOException e){
+        // the graphs do not match the stored matrix; they are rebuilt on first use
+        index.docGraph  = null;
+        index.wordGraph = null;
+      }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in){
+      final byte[] bytes = new byte[in.getInt()];
+      in.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeMatrix(DataOutputStream out, Matrix matrix) throws IOException {
+      out.writeInt(matrix.getRowDimension());
+      out.writeInt(matrix.getColumnDimension());
+
+      final double[][] data = matrix.getArray();
+      for (int i = 0; i < matrix.getRowDimension(); i++) {
+        for (int j = 0; j < matrix.getColumnDimension(); j++) {
+          out.writeDouble(data[i][j]);
+        }
+      }
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values, int size) throws IOException {
+      for (int p = 0; p < size; p++) {
+        out.writeDouble(values[p]);
+      }
+    }
+
+    private static Matrix readMatrix(ByteBuffer in){
+      final int rows = in.getInt();
+      final int cols = in.getInt();
+
+      final double[][] data = new double[rows][];
+      for (int i = 0; i < rows; i++) {
+        data[i] = readDoubles(in, cols);
+      }
+
+      return new Matrix(data, rows, cols);
+    }
+
+    private static int[] readInts(ByteBuffer in, int size){
+      final int[] values = new int[size];
+      in.asIntBuffer().get(values);
+      in.position(in.position() + size * 4);
+      return values;
+    }
+
+    static double[] readDoubles(DoubleBuffer in){
+      final double[] values = new double[in.limit()];
+      in.duplicate().get(values);
+      return values;
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int length){
+      final ByteBuffer slice = in.slice();
+      slice.limit(length);
+      in.position(in.position() + length);
+      return slice;
+    }
+
+    private static double[] readDoubles(ByteBuffer in, int size){
+      final double[] values = new double[size];
+      in.asDoubleBuffer().get(values);
+      in.position(in.position() + size * 8);
+      return values;
+    }
+  }
 }
@@ -1,19 +1,35 @@
 package com.vesperin.text;
 
 import Jama.Matrix;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.vesperin.text.Selection.Document;
 import com.vesperin.text.Selection.Word;
-import com.vesperin.text.utils.Jamas;
+import com.vesperin.text.utils.Hnsw;
+import com.vesperin.text.utils.TopK;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Query mixin
@@ -21,6 +37,11 @@ import java.util.stream.Collectors;
  * @author Huascar Sanchez
  */
 public interface Query {
+  /**
+   * Number of items (e.g., documents) scored together by batched queries.
+   */
+  int BATCH_BLOCK = 1024;
+
   /**
    * Search for interesting methods in some index using a list of keywords.
    *
@@ -32,6 +53,47 @@ public interface Query {
     return createQuery().methodSearch(words, index);
   }
 
+  /**
+   * Search for the k most interesting methods in some index using a list of keywords.
+   *
+   * @param words query of keywords
+   * @param index existing index
+   * @param k max number of hits
+   * @return a new query result object, best hit first.
+   */
+  static Result methods(List<Word> words, Index index, int k){
+    return createQuery().methodSearch(words, index, k);
+  }
+
+  /**
+   * Search for the k most interesting methods in some index, for each one of
+   * many lists of keywords. The index is scanned once for all the queries.
+   *
+   * @param queries lists of keywords
+   * @param index existing index
+   * @param k max number of hits per query
+   * @return a query result object per query, in query order.
+   */
+  static List<Result> methodBatch(List<List<Word>> queries, Index index, int k){
+    return createQuery().batchMethodSearch(queries, index, k);
+  }
+
+  /**
+   * Search for (approximately) the k most interesting methods in some index
+   * using a list of keywords. Candidates are found using the index's
+   * nearest neighbour graph, and then rescored exactly.
+   *
+   * @param words query of keywords
+   * @param index existing index
+   * @param k max number of hits
+   * @param ef number of candidates to consider; larger values increase
+   *    recall and latency.
+   * @return a new query result object, best hit first.
+   */
+  static Result methods(List<Word> words, Index index, int k, int ef){
+    return createQuery().methodSearch(words, index, k, ef);
+  }
+
   /**
    * Search for interesting fully.qualified.ClassName#methodName entries in
    * some index using a list of Documents.
@@ -44,6 +106,32 @@ public interface Query {
     return createQuery().typeSearch(docs, index);
   }
 
+  /**
+   * Search for the k most interesting words in some index, for each one of
+   * many lists of documents. The index is scanned once for all the queries.
+   *
+   * @param queries lists of documents
+   * @param index existing index
+   * @param k max number of hits per query
+   * @return a query result object per query, in query order.
+   */
+  static List<Result> typeBatch(List<List<Document>> queries, Index index, int k){
+    return createQuery().batchTypeSearch(queries, index, k);
+  }
+
+  /**
+   * Search for the k most interesting words in some index using a list
+   * of Documents.
+   *
+   * @param docs query of documents
+   * @param index existing index
+   * @param k max number of hits
+   * @return a new query result object, best hit first.
+   */
+  static Result types(List<Document> docs, Index index, int k){
+    return createQuery().typeSearch(docs, index, k);
+  }
+
   /**
    * @return a new query object.
    */
@@ -51,6 +139,18 @@ public interface Query {
     return new MethodQuery();
   }
 
+  /**
+   * Creates a query object that caches its results. Cached results are
+   * dropped as soon as the index they were computed from changes.
+   *
+   * @param maximumWeight max number of cached items (e.g., documents) across
+   *    all cached results.
+   * @return a new caching query object.
+   */
+  static CachingQuery createCachingQuery(long maximumWeight){
+    return new CachingQuery(createQuery(), maximumWeight);
+  }
+
   /**
    * Searches the index for interesting methods.
    *
@@ -59,12 +159,62 @@ public interface Query {
    * @return a list of matching methods.
    */
   default Result methodSearch(List<Word> words, Index index){
+    return methodSearch(words, index, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Searches the index for the k most interesting methods.
+   *
+   * @param words list of words
+   * @param index the corpus in a Matrix form.
+   * @param k max number of hits
+   * @return a list of matching methods, best hit first.
+   */
+  default Result methodSearch(List<Word> words, Index index, int k){
+    final List<Word> keywords   = Objects.requireNonNull(words);
+    final Index      validIndex = Objects.requireNonNull(index);
+
+    final int[] ids = keywords.stream().mapToInt(validIndex::wordId).toArray();
+
+    return topK(ids, validIndex.unitDocVectors(), validIndex.docList(), k);
+  }
 
-    final List<Word> keywords       = Objects.requireNonNull(words);
-    final Index      validIndex     = Objects.requireNonNull(index);
-    final Matrix     queryMatrix    = createQueryVector(keywords, validIndex.wordList());
+  /**
+   * Searches the index for the k most interesting methods of each query.
+   *
+   * @param queries lists of words
+   * @param index the corpus in a Matrix form.
+   * @param k max number of hits per query
+   * @return a list of matching methods per query, best hit first.
+   */
+  default List<Result> batchMethodSearch(List<List<Word>> queries, Index index, int k){
+    final Index validIndex = Objects.requireNonNull(index);
+
+    final int[][] ids = Objects.requireNonNull(queries).stream()
+      .map(q -> q.stream().mapToInt(validIndex::wordId).toArray())
+      .toArray(int[][]::new);
 
-    return methodSearch(queryMatrix, index.docSet(), index.lsiMatrix());
+    return topK(ids, validIndex.unitDocVectors(), validIndex.docList(), k);
+  }
+
+  /**
+   * Searches the index for (approximately) the k most interesting methods.
+   *
+   * @param words list of words
+   * @param index the corpus in a Matrix form.
+   * @param k max number of hits
+   * @param ef number of candidates to consider (see {@link Hnsw}).
+   * @return a list of matching methods, best hit first.
+   */
+  default Result methodSearch(List<Word> words, Index index, int k, int ef){
+    final List<Word> keywords   = Objects.requireNonNull(words);
+    final Index      validIndex = Objects.requireNonNull(index);
+
+    final int[] ids = keywords.stream().mapToInt(validIndex::wordId).toArray();
+
+    return nearest(
+      ids, validIndex.unitDocVectors(), validIndex.docGraph(), validIndex::docGraphQuery, validIndex.docList(), k, ef
+    );
   }
 
   /**
@@ -75,45 +225,76 @@ public interface Query {
    * @return a list of matching types.
    */
   default Result typeSearch(List<Document> documents, Index index){
+    return typeSearch(documents, index, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Searches the index for the k most interesting types.
+   *
+   * @param documents list of documents
+   * @param index the corpus in a Matrix form.
+   * @param k max number of hits
+   * @return a list of matching types, best hit first.
+   */
+  default Result typeSearch(List<Document> documents, Index index, int k){
+    final List<Document>  keydocs     = Objects.requireNonNull(documents);
+    final Index           validIndex  = Objects.requireNonNull(index);
 
-    final List<Document>  keydocs        = Objects.requireNonNull(documents);
-    final Index           validIndex     = Objects.requireNonNull(index);
-    final List<Document>  docList        = validIndex.docSet().stream().collect(Collectors.toList());
-    final Matrix          queryMatrix    = createQueryVector(keydocs, docList);
+    final int[] ids = keydocs.stream().mapToInt(validIndex::docId).toArray();
 
-    return typeSearch(queryMatrix, index.wordList(), index.lsiMatrix().transpose());
+    return topK(ids, validIndex.unitWordVectors(), validIndex.wordList(), k);
   }
 
   /**
-   * Searches for a list of methods that match a given query.
+   * Searches the index for the k most interesting types of each query.
    *
-   * @param query list of words as a query.
-   * @param index the indexed corpus (as a matrix).
-   * @return a list of matching methods.
+   * @param queries lists of documents
+   * @param index the corpus in a Matrix form.
+   * @param k max number of hits per query
+   * @return a list of matching types per query, best hit first.
    */
-  default Result methodSearch(Matrix query, Set<Document> docSet, Matrix index) {
-    final Map<Integer, Double> scores = new HashMap<>();
+  default List<Result> batchTypeSearch(List<List<Document>> queries, Index index, int k){
+    final Index validIndex = Objects.requireNonNull(index);
 
-    for(Document each : docSet){
-      double score = Jamas.computeSimilarity(query, Jamas.getCol(index, each.id()));
-      if(Doubles.compare(score, 0.0D) > 0){
-        scores.put(each.id(), score);
-      }
-    }
+    final int[][] ids = Objects.requireNonNull(queries).stream()
+      .map(q -> q.stream().mapToInt(validIndex::docId).toArray())
+      .toArray(int[][]::new);
 
+    return topK(ids, validIndex.unitWordVectors(), validIndex.wordList(), k);
+  }
 
-    final List<Document> docList = docSet.stream().collect(Collectors.toList());
+  /**
+   * Searches the index for (approximately) the k most interesting types.
+   *
+   * @param documents list of documents
+   * @param index the corpus in a Matrix form.
+   * @param k max number of hits
+   * @param ef number of candidates to consider (see {@link Hnsw}).
+   * @return a list of matching types, best hit first.
+   */
+  default Result typeSearch(List<Document> documents, Index index, int k, int ef){
+    final List<Document>  keydocs     = Objects.requireNonNull(documents);
+    final Index           validIndex  = Objects.requireNonNull(index);
 
-    final List<Integer> indices = scores.entrySet().stream()
-      .sorted((a, b) -> Double.compare(a.getValue(), b.getValue()))
-      .map(Map.Entry::getKey).collect(Collectors.toList());
+    final int[] ids = keydocs.stream().mapToInt(validIndex::docId).toArray();
 
-    Collections.reverse(indices);
+    return nearest(
+      ids, validIndex.unitWordVectors(), validIndex.wordGraph(), validIndex::wordGraphQuery, validIndex.wordList(), k, ef
+    );
+  }
 
-    final List<Document> scoredDocList = indices.stream()
-      .map(docList::get).collect(Collectors.toList());
+  /**
+   * Searches for a list of methods that match a given query.
+   *
+   * @param query list of words as a query.
+   * @param index the indexed corpus (as a matrix).
+   * @return a list of matching methods.
+   */
+  default Result methodSearch(Matrix query, Set<Document> docSet, Matrix index) {
+    final List<Document> docList = new ArrayList<>(docSet);
+    final int[]          columns = docList.stream().mapToInt(Document::id).toArray();
 
-    return Result.downcast(scoredDocList);
+    return topK(query, index, columns, docList);
   }
 
   /**
@@ -124,43 +305,205 @@ public interface Query {
    * @return a list of matching methods.
    */
   default Result typeSearch(Matrix query, List<Word> wordList, Matrix index) {
-    final Map<Integer, Double> scores = new HashMap<>();
+    return topK(query, index, IntStream.range(0, wordList.size()).toArray(), wordList);
+  }
 
-    int idx = 0; for(Word ignored : wordList){
-      double score = Jamas.computeSimilarity(query, Jamas.getCol(index, idx));
-      if(Doubles.compare(score, 0.0D) > 0){
-        scores.put(idx, score);
-      } idx++;
+  /**
+   * Scores items against a query made of (equally weighted) ids using
+   * cosine similarity, and keeps the k best ones.
+   *
+   * @param ids query ids; negative ids are ignored.
+   * @param vectors unit length item vectors, read by query id then item.
+   * @param items items; null items are skipped.
+   * @param k max number of hits
+   * @param <I> item type
+   * @return the k best items, best first.
+   */
+  static <I> Result topK(int[] ids, Index.UnitVectors vectors, List<I> items, int k){
+    final int[] terms = Arrays.stream(ids).filter(id -> id >= 0).distinct().toArray();
+    if(terms.length == 0) return Result.of(Collections.emptyList(), new double[0]);
+
+    final double[] scores = new double[items.size()];
+    for(int id : terms){
+      for (int j = 0; j < scores.length; j++) {
+        scores[j] += vectors.get(id, j);
+      }
+    }
+
+    // the (unit) query vector has 1/sqrt(|terms|) in each of its entries
+    final double norm = 1.0D / Math.sqrt(terms.length);
+    final TopK   best = new TopK(k);
+    for (int j = 0; j < scores.length; j++) {
+      final double score = scores[j] * norm;
+      if(items.get(j) != null && Doubles.compare(score, 0.0D) > 0){
+        best.offer(j, score);
+      }
+    }
+
+    return Result.of(best, items::get);
+  }
+
+  /**
+   * Scores items against many queries at once. Queries are stacked into a
+   * sparse (terms x queries) matrix over the union of their terms, and then
+   * multiplied by the item vectors one block of items at a time; blocks are
+   * scored in parallel and their per-query top k hits are merged.
+   *
+   * @param queries query ids, per query; negative ids are ignored.
+   * @param vectors unit length item vectors, read by query id then item.
+   * @param items items; null items are skipped.
+   * @param k max number of hits per query
+   * @param <I> item type
+   * @return the k best items of each query, best first.
+   */
+  static <I> List<Result> topK(int[][] queries, Index.UnitVectors vectors, List<I> items, int k){
+    final int n = queries.length;
+
+    // union of terms, and the (equal) weight of each term in its queries
+    final Map<Integer, List<Integer>> owners  = new TreeMap<>();
+    final double[]                    weights = new double[n];
+    for (int q = 0; q < n; q++) {
+      final int[] terms = Arrays.stream(queries[q]).filter(id -> id >= 0).distinct().toArray();
+      for(int id : terms){
+        owners.computeIfAbsent(id, key -> new ArrayList<>()).add(q);
+      }
+
+      weights[q] = terms.length == 0 ? 0.0D : 1.0D / Math.sqrt(terms.length);
     }
 
+    final int[]   terms  = Ints.toArray(owners.keySet());
+    final int[][] owner  = owners.values().stream().map(Ints::toArray).toArray(int[][]::new);
+    final int     blocks = (items.size() + BATCH_BLOCK - 1) / BATCH_BLOCK;
+
+    final TopK[] best = IntStream.range(0, blocks).parallel().mapToObj(b -> {
+      final int from = b * BATCH_BLOCK;
+      final int to   = Math.min(items.size(), from + BATCH_BLOCK);
 
-    final List<Word> docList = wordList.stream().collect(Collectors.toList());
+      final double[][] scores = new double[n][to - from];
+      for (int t = 0; t < terms.length; t++) {
+        for (int j = from; j < to; j++) {
+          final double value = vectors.get(terms[t], j);
+          if(value == 0.0D) continue;
+
+          for(int q : owner[t]){
+            scores[q][j - from] += value;
+          }
+        }
+      }
 
-    final List<Integer> indices = scores.entrySet().stream()
-      .sorted((a, b) -> Double.compare(a.getValue(), b.getValue()))
-      .map(Map.Entry::getKey).collect(Collectors.toList());
+      final TopK[] local = new TopK[n];
+      for (int q = 0; q < n; q++) {
+        local[q] = new TopK(k);
+        for (int j = from; j < to; j++) {
+          final double score = scores[q][j - from] * weights[q];
+          if(items.get(j) != null && Doubles.compare(score, 0.0D) > 0){
+            local[q].offer(j, score);
+          }
+        }
+      }
 
-    Collections.reverse(indices);
+      return local;
+    }).reduce(emptyTopK(n, k), (a, c) -> {
+      final TopK[] merged = emptyTopK(n, k);
+      for (int q = 0; q < n; q++) {
+        merged[q].offerAll(a[q]);
+        merged[q].offerAll(c[q]);
+      }
 
-    final List<Word> scoredDocList = indices.stream()
-      .map(docList::get).collect(Collectors.toList());
+      return merged;
+    });
 
-    return Result.downcast(scoredDocList);
+    return Arrays.stream(best)
+      .map(hits -> Result.of(hits, items::get))
+      .collect(Collectors.toList());
   }
 
+  static TopK[] emptyTopK(int n, int k){
+    final TopK[] empty = new TopK[n];
+    for (int q = 0; q < n; q++) {
+      empty[q] = new TopK(k);
+    }
 
-  static <I> Matrix createQueryVector(List<I> keywords, List<I> terms){
-    Matrix      queryMatrix = new Matrix(terms.size(), 1, 0.0D);
+    return empty;
+  }
 
-    for (I k : keywords) {
-      int termIndex = 0;
+  /**
+   * Finds ef candidates in a nearest neighbour graph (over latent
+   * coordinates), rescores them exactly, and keeps the k best ones.
+   * See {@link #topK(int[], Index.UnitVectors, List, int)}.
+   *
+   * @param latent projects the (distinct, non negative) query ids onto
+   *    the graph's latent space.
+   */
+  static <I> Result nearest(int[] ids, Index.UnitVectors vectors, Hnsw graph,
+      Function<int[], float[]> latent, List<I> items, int k, int ef){
 
-      for (I w : terms) {
-        if(Objects.equals(k, w)){
-          queryMatrix.set(termIndex, 0, 1.0D);
-        }
+    final int[] terms = Arrays.stream(ids).filter(id -> id >= 0).distinct().toArray();
+    if(terms.length == 0) return Result.of(Collections.emptyList(), new double[0]);
+
+    final double  norm        = 1.0D / Math.sqrt(terms.length);
+    final int     width       = Math.max(k, ef);
+    final int[]   candidates  = graph.search(latent.apply(terms), width, width).ids();
 
-        termIndex++;
+    // exact rescoring
+    final TopK best = new TopK(k);
+    for(int j : candidates){
+      double score = 0.0D; for(int id : terms){
+        score += vectors.get(id, j);
+      }
+
+      score = score * norm;
+      if(items.get(j) != null && Doubles.compare(score, 0.0D) > 0){
+        best.offer(j, score);
+      }
+    }
+
+    return Result.of(best, items::get);
+  }
+
+  /**
+   * Scores some columns of a matrix against a query vector using cosine
+   * similarity. Column norms are computed in a single pass over the matrix.
+   */
+  static <I> Result topK(Matrix query, Matrix index, int[] columns, List<I> items){
+    final double[][] data  = index.getArray();
+    final double[]   q     = query.getRowPackedCopy();
+    final double     qNorm = query.normF();
+
+    final double[] dots  = new double[index.getColumnDimension()];
+    final double[] norms = new double[index.getColumnDimension()];
+    for (int i = 0; i < index.getRowDimension(); i++) {
+      final double qi = Math.abs(q[i]);
+      for (int j = 0; j < dots.length; j++) {
+        dots[j]  += qi * Math.abs(data[i][j]);
+        norms[j] += data[i][j] * data[i][j];
+      }
+    }
+
+    final TopK best = new TopK(columns.length);
+    for (int p = 0; p < columns.length; p++) {
+      final double score = dots[columns[p]] / (qNorm * Math.sqrt(norms[columns[p]]));
+      if(Doubles.compare(score, 0.0D) > 0){
+        best.offer(p, score);
+      }
+    }
+
+    return Result.of(best, items::get);
+  }
+
+  /**
+   * Creates a query vector out of term ids.
+   *
+   * @param ids term ids; negative ids (i.e., terms not in the index) are ignored.
+   * @param size number of terms in the index.
+   * @return a new (size x 1) query vector.
+   */
+  static Matrix createQueryVector(int[] ids, int size){
+    Matrix      queryMatrix = new Matrix(size, 1, 0.0D);
+
+    for (int id : ids) {
+      if(id >= 0){
+        queryMatrix.set(id, 0, 1.0D);
       }
     }
 
@@ -171,9 +514,11 @@ public interface Query {
 
   class Result implements Iterable<Object> {
     final List<Object> documents;
+    final double[]     scores;
 
-    Result(List<Object> documents){
+    Result(List<Object> documents, double[] scores){
       this.documents = documents;
+      this.scores    = scores;
     }
 
     static <I> Result downcast(List<I> items){
@@ -181,7 +526,35 @@ public interface Query {
     }
 
     static Result of(List<Object> items){
-      return new Result(items);
+      final double[] unknown = new double[items.size()];
+      Arrays.fill(unknown, Double.NaN);
+      return of(items, unknown);
+    }
+
+    static Result of(List<Object> items, double[] scores){
+      return new Result(items, scores);
+    }
+
+    static Result of(TopK hits, IntFunction<?> items){
+      return of(
+        Arrays.stream(hits.ids()).mapToObj(items).collect(Collectors.toList()),
+        hits.scores()
+      );
+    }
+
+    /**
+     * @return the scores of the items in this result (best first); NaN
+     *  if unknown.
+     */
+    public double[] scores(){
+      return Arrays.copyOf(scores, scores.length);
+    }
+
+    /**
+     * @return number of items in this result.
+     */
+    public int size(){
+      return documents.size();
     }
 
 
@@ -212,4 +585,192 @@ public interface Query {
 
   class MethodQuery implements Query {}
 
+  /**
+   * Bounded, concurrent result cache in front of another query object. Results
+   * are keyed by index, normalized query (order independent; words are
+   * case-insensitive, and documents are keyed by id), result type, k and ef.
+   * Every key carries its index's version; once an index changes, its cached
+   * results are no longer hit, and they are evicted in time.
+   */
+  class CachingQuery implements Query {
+    private static final int EXACT = -1; // ef of exact searches
+
+    final Query               delegate;
+    final Cache<Key, Result>  cache;
+
+    CachingQuery(Query delegate, long maximumWeight){
+      this.delegate = Objects.requireNonNull(delegate);
+      this.cache    = CacheBuilder.newBuilder()
+        .maximumWeight(maximumWeight)
+        .weigher((Key key, Result value) -> value.size() + 1)
+        .recordStats()
+        .build();
+    }
+
+    @Override public Result methodSearch(List<Word> words, Index index, int k) {
+      final Index validIndex = Objects.requireNonNull(index);
+      final Key   key        = methodKey(words, validIndex, k, EXACT);
+
+      return get(key, () -> delegate.methodSearch(words, validIndex, k));
+    }
+
+    @Override public Result methodSearch(List<Word> words, Index index, int k, int ef) {
+      final Index validIndex = Objects.requireNonNull(index);
+      final Key   key        = methodKey(words, validIndex, k, ef);
+
+      return get(key, () -> delegate.methodSearch(words, validIndex, k, ef));
+    }
+
+    @Override public List<Result> batchMethodSearch(List<List<Word>> queries, Index index, int k) {
+      final Index     validIndex = Objects.requireNonNull(index);
+      final List<Key> keys       = queries.stream()
+        .map(q -> methodKey(q, validIndex, k, EXACT))
+        .collect(Collectors.toList());
+
+      return getAll(keys, queries, misses -> delegate.batchMethodSearch(misses, validIndex, k));
+    }
+
+    @Override public Result typeSearch(List<Document> documents, Index index, int k) {
+      final Index validIndex = Objects.requireNonNull(index);
+      final Key   key        = typeKey(documents, validIndex, k, EXACT);
+
+      return get(key, () -> delegate.typeSearch(documents, validIndex, k));
+    }
+
+    @Override public Result typeSearch(List<Document> documents, Index index, int k, int ef) {
+      final Index validIndex = Objects.requireNonNull(index);
+      final Key   key        = typeKey(documents, validIndex, k, ef);
+
+      return get(key, () -> delegate.typeSearch(documents, validIndex, k, ef));
+    }
+
+    @Override public List<Result> batchTypeSearch(List<List<Document>> queries, Index index, int k) {
+      final Index     validIndex = Objects.requireNonNull(index);
+      final List<Key> keys       = queries.stream()
+        .map(q -> typeKey(q, validIndex, k, EXACT))
+        .collect(Collectors.toList());
+
+      return getAll(keys, queries, misses -> delegate.batchTypeSearch(misses, validIndex, k));
+    }
+
+    /**
+     * @return hit, miss and eviction counters of this cache.
+     */
+    public CacheStats stats(){
+      return cache.stats();
+    }
+
+    /**
+     * @return number of cached results.
+     */
+    public long size(){
+      return cache.size();
+    }
+
+    /**
+     * Discards all cached results.
+     */
+    public void invalidateAll(){
+      cache.invalidateAll();
+    }
+
+    private static Key methodKey(List<Word> words, Index index, int k, int ef){
+      return key(index, Kind.METHODS, words.stream().map(w -> w.element().toLowerCase(Locale.ENGLISH)), k, ef);
+    }
+
+    private static Key typeKey(List<Document> documents, Index index, int k, int ef){
+      // document ids are case-sensitive; see Index#docId(Document)
+      return key(index, Kind.TYPES, documents.stream().map(index::docId), k, ef);
+    }
+
+    private static Key key(Index index, Kind kind, Stream<? extends Comparable<?>> terms, int k, int ef){
+      final List<Object> normalized = terms
+        .distinct()
+        .sorted()
+        .collect(Collectors.toList());
+
+      return new Key(index.uid(), index.version(), kind, normalized, k, ef);
+    }
+
+    private Result get(Key key, Callable<Result> loader){
+      try {
+        return cache.get(key, loader);
+      } catch (ExecutionException | UncheckedExecutionException e){
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+
+    /**
+     * Looks up the results of many queries; the missing ones are computed by
+     * a single (batched) call of the loader.
+     */
+    private <T> List<Result> getAll(List<Key> keys, List<List<T>> queries,
+        Function<List<List<T>>, List<Result>> loader){
+
+      final Result[]      results = new Result[keys.size()];
+      final List<Integer> misses  = new ArrayList<>();
+      for (int q = 0; q < results.length; q++) {
+        results[q] = cache.getIfPresent(keys.get(q));
+        if(results[q] == null) misses.add(q);
+      }
+
+      if(misses.isEmpty()) return Arrays.asList(results);
+
+      final List<Result> loaded = loader.apply(
+        misses.stream().map(queries::get).collect(Collectors.toList())
+      );
+
+      for (int p = 0; p < loaded.size(); p++) {
+        final int q = misses.get(p);
+        results[q]  = loaded.get(p);
+        cache.put(keys.get(q), results[q]);
+      }
+
+      return Arrays.asList(results);
+    }
+
+    enum Kind { METHODS, TYPES }
+
+    static final class Key {
+      final long          uid;
+      final long          version;
+      final Kind          kind;
+      final List<Object>  terms;
+      final int           k;
+      final int           ef;
+      final int           hash;
+
+      Key(long uid, long version, Kind kind, List<Object> terms, int k, int ef){
+        this.uid      = uid;
+        this.version  = version;
+        this.kind     = kind;
+        this.terms    = terms;
+        this.k        = k;
+        this.ef       = ef;
+        this.hash     = Objects.hash(uid, version, kind, terms, k, ef);
+      }
+
+      @Override public boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(!(obj instanceof Key)) return false;
+
+        final Key other = (Key) obj;
+        return uid == other.uid
+          && version == other.version
+          && k == other.k
+          && ef == other.ef
+          && kind == other.kind
+          && terms.equals(other.terms);
+      }
+
+      @Override public int hashCode() {
+        return hash;
+      }
+
+      @Override public String toString() {
+        return kind + "" + terms + "@" + k + (ef == EXACT ? "" : "~" + ef);
+      }
+    }
+  }
+
 }
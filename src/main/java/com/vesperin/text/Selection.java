@@ -1,9 +1,9 @@
 package com.vesperin.text;
 
-import Jama.Matrix;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
-import com.google.common.primitives.Doubles;
 import com.vesperin.base.Context;
 import com.vesperin.base.EclipseJavaParser;
 import com.vesperin.base.Source;
@@ -14,8 +14,8 @@ import com.vesperin.base.utils.Jdt;
 import com.vesperin.base.visitors.SkeletalVisitor;
 import com.vesperin.text.nouns.Noun;
 import com.vesperin.text.spelling.StopWords;
-import com.vesperin.text.spelling.WordCorrector;
-import com.vesperin.text.utils.Jamas;
+import com.vesperin.text.utils.SparseMatrix;
+import com.vesperin.text.utils.TopK;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
@@ -24,21 +24,13 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.vesperin.text.spelling.WordCorrector.containsWord;
-import static com.vesperin.text.spelling.WordCorrector.similarity;
-import static com.vesperin.text.spelling.WordCorrector.suggestCorrection;
 import static java.util.stream.Collectors.toList;
 
 /**
@@ -105,10 +97,126 @@ public interface Selection {
    * @return a new list of relevant words
    */
   static List<Word> selects(int k, Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
+    return selects(k, code, whiteSet, stopWords, WordCache.shared());
+  }
+
+  /**
+   * Selects the most relevant words in a corpus of source files. Only source files
+   * whose words are not in the given cache are parsed.
+   *
+   * @param k limit the list to this number (capped to 10)
+   * @param code corpus
+   * @param cache word extraction cache
+   * @return a new list of relevant words
+   */
+  static List<Word> selects(int k, Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords, WordCache cache){
+    return selects(k, code, whiteSet, stopWords, cache, ExecutionPolicy.shared());
+  }
+
+  /**
+   * Selects the most relevant words in a corpus of source files. Only source files
+   * whose words are not in the given cache are parsed, and they are parsed
+   * according to the given execution policy.
+   *
+   * @param k limit the list to this number (capped to 10)
+   * @param code corpus
+   * @param cache word extraction cache
+   * @param policy execution policy
+   * @return a new list of relevant words
+   */
+  static List<Word> selects(int k, Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords,
+                            WordCache cache, ExecutionPolicy policy){
+
+    return selects(k, code, whiteSet, stopWords, cache, policy, Extraction.AST);
+  }
+
+  /**
+   * Selects the most relevant words in a corpus of source files. Only source files
+   * whose words are not in the given cache are parsed, and they are parsed
+   * according to the given execution policy and extraction mode.
+   *
+   * @param k limit the list to this number (capped to 10)
+   * @param code corpus
+   * @param cache word extraction cache
+   * @param policy execution policy
+   * @param extraction extraction mode
+   * @return a new list of relevant words
+   */
+  static List<Word> selects(int k, Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords,
+                            WordCache cache, ExecutionPolicy policy, Extraction extraction){
+
     final int topK = Math.min(Math.max(0, k), 150);
-    return new SelectionImpl().weightedWords(topK, code, whiteSet, stopWords);
+    return new SelectionImpl(cache, policy, extraction).weightedWords(topK, code, whiteSet, stopWords);
   }
 
+  /**
+   * Selects the most relevant words in a stream of source files. Source files
+   * are pulled from the stream (and parsed) only when there is room for more
+   * in-flight work, and their words are folded into the word counts as soon
+   * as they are parsed; the stream is never materialized.
+   *
+   * @param k limit the list to this number (capped to 10)
+   * @param code corpus
+   * @return a new list of relevant words
+   */
+  static List<Word> selects(int k, Stream<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
+    return selects(k, code, whiteSet, stopWords, WordCache.shared(), ExecutionPolicy.shared());
+  }
+
+  /**
+   * Selects the most relevant words in a stream of source files. See
+   * {@link #selects(int, Stream, Set, Set)}.
+   *
+   * @param k limit the list to this number (capped to 10)
+   * @param code corpus
+   * @param cache word extraction cache
+   * @param policy execution policy
+   * @return a new list of relevant words
+   */
+  static List<Word> selects(int k, Stream<Source> code, Set<String> whiteSet, Set<StopWords> stopWords,
+                            WordCache cache, ExecutionPolicy policy){
+
+    return selects(k, code, whiteSet, stopWords, cache, policy, Extraction.AST);
+  }
+
+  /**
+   * Selects the most relevant words in a stream of source files. See
+   * {@link #selects(int, Stream, Set, Set)}.
+   *
+   * @param k limit the list to this number (capped to 10)
+   * @param code corpus
+   * @param cache word extraction cache
+   * @param policy execution policy
+   * @param extraction extraction mode
+   * @return a new list of relevant words
+   */
+  static List<Word> selects(int k, Stream<Source> code, Set<String> whiteSet, Set<StopWords> stopWords,
+                            WordCache cache, ExecutionPolicy policy, Extraction extraction){
+
+    final int topK = Math.min(Math.max(0, k), 150);
+    return new SelectionImpl(cache, policy, extraction).weightedWords(topK, code.iterator(), whiteSet, stopWords);
+  }
+
+  /**
+   * Selects the most relevant words in a changed corpus. Only the added and
+   * modified source files are parsed, and only the contributions of the changed
+   * source files are subtracted from (or added to) the corpus word counts kept
+   * by the selection state. The result is the same list of words
+   * {@link #selects(int, Set, Set, Set)} would return for the updated corpus.
+   *
+   * @param k limit the list to this number (capped to 150)
+   * @param previous selection state of the corpus before the change; it is updated
+   * @param added new source files
+   * @param modified changed source files
+   * @param deleted removed source files
+   * @return a new list of relevant words
+   */
+  static List<Word> reselects(int k, SelectionState previous, Set<Source> added,
+                              Set<Source> modified, Set<Source> deleted){
+
+    previous.update(added, modified, deleted);
+    return previous.selects(k);
+  }
 
   /**
    * Creates a new Word object.
@@ -124,9 +232,15 @@ public interface Selection {
    * Catches a list of words from a given source code.
    *
    * @param code Java source file containing source code.
-   * @return a new list of words. Duplicate words are allowed.
+   * @return a new list of words; one per distinct word, counting its
+   *    occurrences in the source code.
    */
   default List<Word> from(Source code, Set<String> whiteSet, Set<StopWords> stopWords) {
+    if(extraction() == Extraction.TOKENS){
+      final WordCollector collector = new WordCollector(whiteSet, stopWords);
+      if(WordScanner.scan(code, collector)) return collector.wordList();
+    }
+
     final Context       context = newContext(code);
     final UnitLocation  scope   = buildScope(context);
 
@@ -139,7 +253,8 @@ public interface Selection {
    * Catches a list of words from a given located code block.
    *
    * @param scope Block of source code.
-   * @return a new list of words. Duplicate words are allowed.
+   * @return a new list of words; one per distinct word, counting its
+   *    occurrences in the code block.
    */
   default List<Word> from(UnitLocation scope, Set<String> whiteSet, Set<StopWords> stopWords){
     final Optional<UnitLocation> optional = Optional.ofNullable(scope);
@@ -162,6 +277,16 @@ public interface Selection {
    * @return the top k list of words.
    */
   default List<Word> flattenWordList(Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
+    return flattenWordList(code.iterator(), whiteSet, stopWords);
+  }
+
+  /**
+   * It flattens a list of word duplicates.
+   *
+   * @param code src files
+   * @return the top k list of words.
+   */
+  default List<Word> flattenWordList(Iterator<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
     return frequentWords(Integer.MAX_VALUE, code, whiteSet, stopWords);
   }
 
@@ -173,10 +298,28 @@ public interface Selection {
    * @return the top k list of words.
    */
   default List<Word> frequentWords(int k, Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
-    final List<Word> raw = cleansing(stopWords, from(code, whiteSet, stopWords).stream())
-      .collect(Collectors.toList());
+    return frequentWords(k, code.iterator(), whiteSet, stopWords);
+  }
 
-    return from(raw, new WordByFrequency(k));
+  /**
+   * Filters the k most frequent words in the corpus. Each src file's words are
+   * counted as soon as they are extracted, so only the distinct words (not
+   * every occurrence) are kept in memory.
+   *
+   * @param k limit the number words to k words.
+   * @param code src files
+   * @return the top k list of words.
+   */
+  default List<Word> frequentWords(int k, Iterator<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
+    final WordCounter counter = new WordCounter(Collections.emptyList());
+
+    executionPolicy().forEach(
+      code,
+      c -> from(c, whiteSet, stopWords),
+      words -> cleansing(stopWords, words.stream()).forEach(counter::add)
+    );
+
+    return counter.top(k);
   }
 
   /**
@@ -188,10 +331,19 @@ public interface Selection {
    * @return a list of most representative words.
    */
   default List<Word> weightedWords(int k, Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
-    final List<Word> words = from(flattenWordList(code, whiteSet, stopWords), new WordByCompositeWeight());
-    if(words.isEmpty()) return words;
-    final int topK = Math.min(Math.max(0, k), words.size());
-    return words.stream().limit(topK).collect(Collectors.toList());
+    return weightedWords(k, code.iterator(), whiteSet, stopWords);
+  }
+
+  /**
+   * Filters the list of most relevant words in a stream of src files.
+   * See {@link #weightedWords(int, Set, Set, Set)}.
+   *
+   * @param k limit the number words to k words.
+   * @param code the corpus.
+   * @return a list of most representative words.
+   */
+  default List<Word> weightedWords(int k, Iterator<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
+    return from(flattenWordList(code, whiteSet, stopWords), new WordByCompositeWeight(Math.max(0, k)));
   }
 
 
@@ -218,31 +370,39 @@ public interface Selection {
    * Catches a list of words from a given source code.
    *
    * @param code Java source file containing source code.
-   * @return a new list of words. Duplicate words are allowed.
+   * @return a new list of words; one per distinct word in each
+   *    source file. Duplicate words (across files) are allowed.
    */
   default List<Word> from(Set<Source> code, final Set<String> whiteSet, final Set<StopWords> stopWords) {
-    final List<Word> result = new CopyOnWriteArrayList<>();
-
-    final Collection<Callable<List<Word>>> tasks = new ArrayList<>();
-    code.forEach(c -> tasks.add(() -> from(c, whiteSet, stopWords)));
+    final List<Word> result = new ArrayList<>();
 
-    final ExecutorService service = scaleExecutor(code.size());
+    executionPolicy()
+      .map(code, c -> from(c, whiteSet, stopWords))
+      .forEach(result::addAll);
 
-    try {
+    return result;
+  }
 
-      final List<Future<List<Word>>> results = service.invokeAll(tasks);
-      for (Future<List<Word>> each : results){
-        result.addAll(each.get());
-      }
-    } catch (InterruptedException | ExecutionException e){
-      Thread.currentThread().interrupt();
-    }
+  /**
+   * @return the policy used to extract words from many source files
+   *  concurrently; a shared work-stealing pool by default.
+   */
+  default ExecutionPolicy executionPolicy(){
+    return ExecutionPolicy.shared();
+  }
 
-    shutdownService(service);
-    return result;
+  /**
+   * @return how words are extracted from source files; by walking
+   *  their ASTs by default.
+   */
+  default Extraction extraction(){
+    return Extraction.AST;
   }
 
-  static ExecutorService scaleExecutor(int scale){
+  /**
+   * @deprecated use an {@link ExecutionPolicy} instead; see {@link #executionPolicy()}.
+   */
+  @Deprecated static ExecutorService scaleExecutor(int scale){
     final int cpus       = Runtime.getRuntime().availableProcessors();
     scale                = scale > 10 ? 10 : scale;
     final int maxThreads = ((cpus * scale) > 0 ? (cpus * scale) : 1);
@@ -250,11 +410,11 @@ public interface Selection {
     return Executors.newFixedThreadPool(maxThreads);
   }
 
-  static void shutdownService(ExecutorService service){
+  @Deprecated static void shutdownService(ExecutorService service){
     shutdownService(500, service);
   }
 
-  static void shutdownService(long timeout, ExecutorService service){
+  @Deprecated static void shutdownService(long timeout, ExecutorService service){
     // wait for all of the executor threads to finish
     service.shutdown();
 
@@ -299,6 +459,24 @@ public interface Selection {
     return new EclipseJavaParser().parseJava(code);
   }
 
+  /**
+   * How words are extracted from a source file. Both modes produce the same words
+   * and containers for well-formed source files.
+   */
+  enum Extraction {
+    /**
+     * Walks the source file's full AST.
+     */
+    AST,
+
+    /**
+     * Scans the source file's tokens, tracking the enclosing types and methods
+     * by brace depth; no AST is built. Source files that cannot be tokenized
+     * are parsed instead.
+     */
+    TOKENS
+  }
+
   interface Filter<I> {
     List<I> apply(List<I> whole);
   }
@@ -325,7 +503,8 @@ public interface Selection {
 
 
     /**
-     * @return the current count
+     * @return the current count; i.e., the number of times this
+     *  word occurs in its containers.
      */
     int value();
 
@@ -364,6 +543,8 @@ public interface Selection {
     final int    id;
     final String filename;
     final String method;
+    final String container;
+    final int    hash;
 
     DocumentImpl(int id, String container){
       this.id = id;
@@ -377,17 +558,35 @@ public interface Selection {
         this.method   = "";
       }
 
+      this.container  = filename + ("".equals(method) ? "" :("#" + method));
+      this.hash       = hashIgnoreCase(this.container);
+    }
+
+    /**
+     * Hashes a string the way {@link String#equalsIgnoreCase(String)}
+     * compares it; i.e., strings equal ignoring case share the same hash.
+     */
+    static int hashIgnoreCase(String value){
+      int hash = 0;
+      for (int i = 0; i < value.length(); i++) {
+        hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+      }
+
+      return hash;
     }
 
     @Override public boolean equals(Object obj) {
+      if(this == obj) return true;
       if(!(obj instanceof Document)) return false;
       final Document doc = (Document) obj;
 
+      if(doc instanceof DocumentImpl && ((DocumentImpl) doc).hash != hash) return false;
+
       return doc.toString().equalsIgnoreCase(toString());
     }
 
     @Override public int hashCode() {
-      return toString().hashCode();
+      return hash;
     }
 
     @Override public int id() {
@@ -403,7 +602,7 @@ public interface Selection {
     }
 
     @Override public String toString() {
-      return path() + ("".equals(method()) ? "" :("#" + method()));
+      return container;
     }
   }
 
@@ -411,6 +610,7 @@ public interface Selection {
   class WordImpl implements Word {
     final String      element;
     final Set<String> container;
+    final int         hash;
 
     int count;
 
@@ -418,6 +618,7 @@ public interface Selection {
       this.element    = element;
       this.container  = new HashSet<>();
       this.count      = 1;
+      this.hash       = DocumentImpl.hashIgnoreCase(element);
     }
 
     @Override public void add(String container) {
@@ -431,14 +632,17 @@ public interface Selection {
     }
 
     @Override public int hashCode() {
-      return element().hashCode();
+      return hash;
     }
 
     @Override public boolean equals(Object obj) {
+      if(this == obj) return true;
       if(!(obj instanceof Word)) return false;
 
       final Word other = (Word) obj;
 
+      if(other instanceof WordImpl && ((WordImpl) other).hash != hash) return false;
+
       return other.element().equalsIgnoreCase(element());
     }
 
@@ -462,25 +666,27 @@ public interface Selection {
 
   class WordCollector extends SkeletalVisitor implements Iterable <Word> {
 
-    static final Noun NOUN = Noun.newNoun();
-
-    final List<Word>      items;
-    final Set<String>     visited;
+    final Map<String, Word> items;  // one aggregate per distinct word
     final Set<StopWords>  stopWords;
     final Set<String>     whiteSet;
+    final TermCache       terms;
 
     WordCollector(Set<String> whiteSet, Set<StopWords> stopWords){
+      this(whiteSet, stopWords, TermCache.shared());
+    }
+
+    WordCollector(Set<String> whiteSet, Set<StopWords> stopWords, TermCache terms){
       this.whiteSet   = whiteSet.stream()
         .map(s -> s.toLowerCase(Locale.ENGLISH))
         .collect(Collectors.toSet());
 
       this.stopWords  = stopWords;
-      this.items      = new ArrayList<>();
-      this.visited    = new HashSet<>();
+      this.items      = new LinkedHashMap<>();
+      this.terms      = Objects.requireNonNull(terms);
     }
 
     List<Word> wordList(){
-      return items;
+      return new ArrayList<>(items.values());
     }
 
     @Override public Iterator<Word> iterator() {
@@ -494,65 +700,42 @@ public interface Selection {
 
       if(!method.isPresent()) return false;
 
-      String methodName = method.get().getName().getIdentifier();
-      methodName        = methodName.toLowerCase(Locale.ENGLISH);
-      if(!whiteSet.contains(methodName) && !whiteSet.isEmpty()) return false;
-
-
-      final String identifier = simpleName.getIdentifier()
-        .replaceAll("(-?\\d+)|(\\+1)", "");
-
-      if(visited.contains(identifier)) return false;
-      final String  pattern         = Pattern.quote("_");
-      final boolean underscored     = identifier.split(pattern).length == 1;
-      final boolean onlyConsonants  = WordCorrector.onlyConsonantsOrVowels(identifier);
-      final boolean tooSmall        = identifier.length() < 4;
-
-
-      if((underscored && onlyConsonants) || tooSmall){
-        visited.add(identifier);
-        return false;
-      }
-
-      if(!isThrowableAlike(identifier)){
-        // make sure we have a valid split
-        String[] split = splitMassaging(identifier);
-
-        for(String eachLabel : split){
-
-          if(" ".equals(eachLabel) || eachLabel.isEmpty()
-            || StopWords.isStopWord(stopWords, eachLabel, NOUN.pluralOf(eachLabel)))
-            continue;
+      collect(
+        simpleName.getIdentifier(),
+        method.get().getName().getIdentifier(),
+        () -> resolveContainer(simpleName)
+      );
 
-          String currentLabel = eachLabel.toLowerCase(Locale.ENGLISH);
+      return false;
+    }
 
-          if(WordCorrector.onlyConsonantsOrVowels(currentLabel) || !containsWord(currentLabel)){
-            final String newLabel = suggestCorrection(currentLabel).toLowerCase();
+    /**
+     * Collects the words in an identifier.
+     *
+     * @param name identifier
+     * @param methodName name of the method enclosing the identifier
+     * @param container resolves the container (type#method) of the identifier
+     */
+    void collect(String name, String methodName, Supplier<String> container){
+      methodName = methodName.toLowerCase(Locale.ENGLISH);
+      if(!whiteSet.contains(methodName) && !whiteSet.isEmpty()) return;
 
-            if(similarity(currentLabel, newLabel) > 0.3f){
-              currentLabel = newLabel;
-            }
-          }
+      final List<String> elements = terms.terms(name, stopWords);
+      if(elements.isEmpty()) return;
 
-          final String element    = currentLabel.toLowerCase(Locale.ENGLISH);
-          final String container  = resolveContainer(simpleName);
-          final Word   word       = createWord(element);
-          word.add(container);
+      final String resolved = container.get();
+      for(String element : elements){
+        final Word word = items.get(element);
+        if(word == null){
+          final Word first = createWord(element);
+          first.add(resolved);
 
-          wordList().add(word);
+          items.put(element, first);
+        } else {
+          word.count();
+          word.add(resolved);
         }
       }
-
-      return false;
-    }
-
-    private static String[] splitMassaging(String identifier){
-      String[] split = identifier.split("((?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z]))|_");
-      if(split.length == 1){
-        split = split[0].split(Pattern.quote("_"));
-      }
-
-      return split;
     }
 
     private static String resolveContainer(SimpleName name){
@@ -584,21 +767,13 @@ public interface Selection {
 
       return packageName;
     }
-
-    private static boolean isThrowableAlike(String identifier){
-      return (identifier.endsWith("Exception")
-        || identifier.equals("Throwable")
-        || identifier.equals("Error"));
-    }
   }
 
   class WordCounter {
-    private final Set<StopWords>  stopWords;
-    private final Map<Word, Word> items;
-    private final AtomicInteger   totalItemCount;
-
     private static final Noun NOUN = Noun.newNoun();
 
+    private final Set<StopWords>      stopWords;
+    private final Map<String, Tally>  items;  // by element, ignoring case
 
     /**
      * Counts words in some text.
@@ -614,8 +789,7 @@ public interface Selection {
      */
     private WordCounter(List<Word> items, Set<StopWords> stopWords){
       this.stopWords      = stopWords;
-      this.items          = new HashMap<>();
-      this.totalItemCount = new AtomicInteger(0);
+      this.items          = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
       addAll(items);
     }
@@ -637,7 +811,10 @@ public interface Selection {
 
 
     /**
-     * Adds an item to this counter.
+     * Adds an item to this counter. The item is an aggregate (see
+     * {@link Word#value()}), so its count and containers are added
+     * to this counter's entry for the item. The item itself is never
+     * modified.
      *
      * @param item string item.
      */
@@ -646,78 +823,114 @@ public interface Selection {
 
       if(StopWords.isStopWord(stopWords, item.element())) return;
 
-      if(items.containsKey(item)){
-        addEntry(item);
-      } else {
-        final Word singular = singularWord(item);
-        if(items.containsKey(singular)){
-          if(StopWords.isStopWord(stopWords, singular.element())) return;
-          addEntry(singular);
-        } else {
-          add(item, 1);
-        }
-      }
-    }
+      final Tally tally = items.computeIfAbsent(item.element(), Tally::new);
 
-    private void addEntry(Word item) {
-      final Word entry = items.get(item);
-      if(entry == null) {
-        add(item, item.count());
-      } else {
-        entry.container().addAll(item.container());
-        add(entry, entry.count());
-      }
+      tally.count += item.value();
+      tally.containers.addAll(item.container());
     }
 
     /**
-     * Adds a fixed count of items to this counter.
+     * Removes an item previously added to this counter; i.e., subtracts
+     * its count and containers from this counter's entry for the item.
      *
-     * @param item string item
-     * @param count number of times this item will be added.
+     * @param item string item.
      */
-    void add(Word item, int count) {
-      items.put(item, item);
-      totalItemCount.addAndGet(count);
-    }
-
-    static Word singularWord(Word word){
-      final String element = word.element();
-      final Set<String> container = word.container();
+    void remove(Word item) {
+      if(item == null) return;
 
-      final String singElement = NOUN.singularOf(element);
-      final Word singular = new WordImpl(singElement);
+      final Tally tally = items.get(item.element());
+      if(tally == null) return;
 
-      container.forEach(singular::add);
+      tally.count -= item.value();
+      item.container().forEach(tally.containers::remove);
 
-      return new WordImpl(singElement);
+      if(tally.count <= 0) items.remove(item.element());
     }
+
     /**
-     * Returns the list of most frequent items.
+     * Returns the list of most frequent items. Words are counted together with
+     * their singular form, if that form was counted too. Items are selected with
+     * a bounded heap (i.e., the vocabulary is not sorted); equally frequent items
+     * are ordered by their element. The result does not depend on the order in
+     * which items were added or removed.
      *
      * @param k number of results to collect.
      * @return A list of the min(k, size()) most frequent items
      */
     List<Word> top(int k) {
-      final List<Word> all = entriesByFrequency();
-      final int resultSize = Math.min(k, items.size());
-      final List<Word> result = new ArrayList<>(resultSize);
+      final Tally[] tallies = items.values().toArray(new Tally[items.size()]);
+      for (int i = 0; i < tallies.length; i++) {
+        tallies[i].id = i;
+      }
+
+      final int[] roots  = new int[tallies.length];
+      final int[] counts = new int[tallies.length];
+      for (int i = 0; i < tallies.length; i++) {
+        roots[i] = rootOf(tallies[i]);
+        counts[roots[i]] += tallies[i].count;
+      }
+
+      final TopK best = new TopK(Math.min(Math.max(0, k), tallies.length));
+      for (int i = 0; i < tallies.length; i++) {
+        if(roots[i] == i) best.offer(i, counts[i]);
+      }
+
+      final int[] ids   = best.ids();
+      final int[] slots = new int[tallies.length];
+      Arrays.fill(slots, -1);
+
+      final List<Set<String>> containers = new ArrayList<>(ids.length);
+      for (int j = 0; j < ids.length; j++) {
+        slots[ids[j]] = j;
+        containers.add(new TreeSet<>());
+      }
+
+      for (int i = 0; i < tallies.length; i++) {
+        final int slot = slots[roots[i]];
+        if(slot >= 0) containers.get(slot).addAll(tallies[i].containers.elementSet());
+      }
+
+      final List<Word> result = new ArrayList<>(ids.length);
+      for (int j = 0; j < ids.length; j++) {
+        final Word word = createWord(tallies[ids[j]].element);
+        word.count(counts[ids[j]] - word.value());
+        containers.get(j).forEach(word::add);
 
-      result.addAll(all.subList(0, resultSize).stream()
-        .collect(Collectors.toList()));
+        result.add(word);
+      }
 
       return Collections.unmodifiableList(result);
     }
 
-    /**
-     * Returns the list of items (ordered by their frequency)
-     *
-     * @return the list of ordered items.
-     */
-    private List<Word> entriesByFrequency() {
-      return items.entrySet().stream()
-        .map(Map.Entry::getValue)
-        .sorted((a, b) -> Integer.compare(b.value(), a.value()))
-        .collect(Collectors.toList());
+    private int rootOf(Tally tally){
+      Tally root = tally;
+      for (int step = 0; step < 8 && root.singular != null; step++) {
+        final Tally singular = items.get(root.singular);
+        if(singular == null || singular == root) break;
+
+        root = singular;
+      }
+
+      return root.id;
+    }
+
+    private static class Tally {
+      final String            element;
+      final String            singular;   // null if element is singular
+      final Multiset<String>  containers;
+
+      int count;
+      int id;
+
+      Tally(String element){
+        final String singular = NOUN.singularOf(element);
+
+        this.element    = element;
+        this.singular   = singular.equalsIgnoreCase(element) ? null : singular;
+        this.containers = HashMultiset.create();
+        this.count      = 0;
+        this.id         = -1;
+      }
     }
   }
 
@@ -736,13 +949,33 @@ public interface Selection {
 
   class WordByCompositeWeight implements Filter<Word> {
     final Index index;
+    final int   k;
 
     WordByCompositeWeight(){
-      this(new Index());
+      this(Integer.MAX_VALUE);
+    }
+
+    WordByCompositeWeight(int k){
+      this(k, new Index());
     }
 
     WordByCompositeWeight(Index index){
-      this.index = index;
+      this(Integer.MAX_VALUE, index);
+    }
+
+    /**
+     * Ranks words by their composite weight, keeping only the k best
+     * ones; see {@link #weightWords(Index)}. Words with the same weight are
+     * ordered by their position in the ranked list.
+     *
+     * @param k number of words to keep.
+     * @param index index used to weight words.
+     */
+    WordByCompositeWeight(int k, Index index){
+      if(k < 0) throw new IllegalArgumentException("negative k");
+
+      this.index  = Objects.requireNonNull(index);
+      this.k      = k;
     }
 
     @Override public List<Word> apply(List<Word> words) {
@@ -750,28 +983,58 @@ public interface Selection {
 
       index.index(words);
 
-      final Map<Word, Double> scores = weightWords(index.wordDocFrequency(), index.wordList());
-
-      final List<Word> allWords = scores.entrySet().stream()
-        .sorted((a, b) -> Doubles.compare(b.getValue(), a.getValue()))
-        .map(Map.Entry::getKey).collect(toList());
+      final double[] scores = weightWords(index);
+      final TopK     best   = new TopK(Math.min(k, scores.length));
+      for (int i = 0; i < scores.length; i++) {
+        best.offer(i, scores[i]);
+      }
 
-      return allWords.stream().collect(Collectors.toList());
+      final List<Word> wordList = index.wordList();
+      return Arrays.stream(best.ids()).mapToObj(wordList::get).collect(toList());
     }
 
-    static Map<Word, Double> weightWords(Matrix raw, List<Word> words) {
-      // Turns tf-idf statistic into a score (to be used as word ranking)
-      final Matrix tfidf = Jamas.tfidfMatrix(raw);
+    /**
+     * Turns the tf-idf statistic into a score (to be used as word ranking).
+     *
+     * @param index word index
+     * @return the score of each word, indexed by word id (see {@link Index#wordId(Word)}).
+     */
+    static double[] weightWords(Index index) {
+      final SparseMatrix tfidf = index.tfidfMatrix();
+      final double[]     sums  = tfidf.rowSums();
 
-      final Map<Word, Double> scores = new HashMap<>();
-      for (int i = 0; i < tfidf.getRowDimension(); i++) {
-        final double s = Jamas.rowSum(tfidf, i);
-        scores.put(words.get(i), s);
+      for (int i = 0; i < sums.length; i++) {
+        if(Double.isNaN(sums[i])) sums[i] = 0.0D;
       }
-      return scores;
+
+      return sums;
     }
   }
 
-  class SelectionImpl implements Selection {}
+  class SelectionImpl implements Selection {
+    final WordCache       cache;
+    final ExecutionPolicy policy;
+    final Extraction      extraction;
+
+    SelectionImpl(WordCache cache, ExecutionPolicy policy, Extraction extraction){
+      this.cache      = Objects.requireNonNull(cache);
+      this.policy     = Objects.requireNonNull(policy);
+      this.extraction = Objects.requireNonNull(extraction);
+    }
+
+    @Override public ExecutionPolicy executionPolicy() {
+      return policy;
+    }
+
+    @Override public Extraction extraction() {
+      return extraction;
+    }
+
+    @Override public List<Word> from(Source code, Set<String> whiteSet, Set<StopWords> stopWords) {
+      return cache.get(
+        code, whiteSet, stopWords, extraction, c -> Selection.super.from(c, whiteSet, stopWords)
+      );
+    }
+  }
 
 }
@@ -0,0 +1,204 @@
+package com.vesperin.text;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.vesperin.base.Source;
+import com.vesperin.text.Selection.Extraction;
+import com.vesperin.text.Selection.Word;
+import com.vesperin.text.Selection.WordByCompositeWeight;
+import com.vesperin.text.Selection.WordCounter;
+import com.vesperin.text.spelling.StopWords;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * State of a word selection over a changing corpus. It remembers the words each
+ * source file contributed to the corpus-wide word counts, so when a few files are
+ * added, modified or deleted (e.g., on every push), only those files are parsed
+ * again and only their contributions are subtracted from (or added to) the word
+ * counts. See {@link Selection#reselects(int, SelectionState, Set, Set, Set)}.
+ *
+ * <p>The selected words are the same words {@link Selection#selects(int, Set, Set, Set)}
+ * would select from scratch over the current corpus. Words are still weighted
+ * against the whole corpus, since adding or removing files changes the weight of
+ * every word; however, that costs far less than parsing the corpus again.
+ *
+ * <p>Source files are identified by an id; by default, their names. Ids must be
+ * unique within the corpus: e.g., every source file created by {@link Source#from(String)}
+ * has the same name, and same-named files in different packages or roots collide;
+ * such corpora need a caller-supplied id (e.g., the files' paths). See
+ * {@link #of(Set, Set, Set, WordCache, ExecutionPolicy, Extraction, Function)}.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author Huascar Sanchez
+ */
+public class SelectionState {
+  private final Selection       selection;
+  private final Set<String>     whiteSet;
+  private final Set<StopWords>  stopWords;
+
+  private final Function<Source, String>  identity;
+  private final Map<String, List<Word>>   contributions;  // by source id
+  private final WordCounter               counter;
+
+  private SelectionState(Selection selection, Set<String> whiteSet, Set<StopWords> stopWords,
+                         Function<Source, String> identity){
+
+    this.selection      = Objects.requireNonNull(selection);
+    this.whiteSet       = ImmutableSet.copyOf(whiteSet);
+    this.stopWords      = ImmutableSet.copyOf(stopWords);
+    this.identity       = Objects.requireNonNull(identity);
+    this.contributions  = new TreeMap<>();
+    this.counter        = new WordCounter(Collections.emptyList());
+  }
+
+  /**
+   * Creates the selection state of a corpus of source files.
+   *
+   * @param code corpus; source files are identified by their names.
+   * @param whiteSet words of interest; empty if all of them
+   * @param stopWords stop words
+   * @return a new SelectionState object.
+   * @throws IllegalArgumentException if two source files have the same name.
+   */
+  public static SelectionState of(Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords){
+    return of(code, whiteSet, stopWords, WordCache.shared(), ExecutionPolicy.shared(), Extraction.AST);
+  }
+
+  /**
+   * Creates the selection state of a corpus of source files. Only source files
+   * whose words are not in the given cache are parsed, and they are parsed
+   * according to the given execution policy and extraction mode.
+   *
+   * @param code corpus; source files are identified by their names.
+   * @param whiteSet words of interest; empty if all of them
+   * @param stopWords stop words
+   * @param cache word extraction cache
+   * @param policy execution policy
+   * @param extraction extraction mode
+   * @return a new SelectionState object.
+   * @throws IllegalArgumentException if two source files have the same name.
+   */
+  public static SelectionState of(Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords,
+                                  WordCache cache, ExecutionPolicy policy, Extraction extraction){
+
+    return of(code, whiteSet, stopWords, cache, policy, extraction, Source::getName);
+  }
+
+  /**
+   * Creates the selection state of a corpus of source files, identified by
+   * a caller-supplied id; e.g., their paths. A modified source file must
+   * keep its id.
+   *
+   * @param code corpus
+   * @param whiteSet words of interest; empty if all of them
+   * @param stopWords stop words
+   * @param cache word extraction cache
+   * @param policy execution policy
+   * @param extraction extraction mode
+   * @param identity source file's id
+   * @return a new SelectionState object.
+   * @throws IllegalArgumentException if two source files have the same id.
+   */
+  public static SelectionState of(Set<Source> code, Set<String> whiteSet, Set<StopWords> stopWords,
+                                  WordCache cache, ExecutionPolicy policy, Extraction extraction,
+                                  Function<Source, String> identity){
+
+    final SelectionState state = new SelectionState(
+      new Selection.SelectionImpl(cache, policy, extraction), whiteSet, stopWords, identity
+    );
+
+    state.update(code, Collections.emptySet(), Collections.emptySet());
+    return state;
+  }
+
+  /**
+   * @return ids of the source files in the corpus.
+   */
+  public Set<String> sources(){
+    return Collections.unmodifiableSet(contributions.keySet());
+  }
+
+  /**
+   * Selects the most relevant words in the current corpus.
+   *
+   * @param k limit the list to this number (capped to 150)
+   * @return a new list of relevant words
+   */
+  public List<Word> selects(int k){
+    final int        topK  = Math.min(Math.max(0, k), 150);
+    final List<Word> words = counter.top(Integer.MAX_VALUE);
+
+    return selection.from(words, new WordByCompositeWeight(topK));
+  }
+
+  /**
+   * Updates the corpus. Deleted source files are removed first; then added and
+   * modified source files are (re)parsed, replacing their previous contributions
+   * if any. Source files are identified by their ids (see {@link SelectionState});
+   * unknown deleted source files are ignored, and unknown modified source files
+   * are added.
+   *
+   * @param added new source files
+   * @param modified changed source files
+   * @param deleted removed source files
+   * @throws IllegalArgumentException if two added or modified source files have
+   *    the same id, or if an added source file has the id of a source file in
+   *    the corpus (and not deleted); the corpus is left unchanged.
+   */
+  public void update(Set<Source> added, Set<Source> modified, Set<Source> deleted){
+    final Set<String> removed = new LinkedHashSet<>();
+    for(Source each : deleted){
+      removed.add(identity.apply(each));
+    }
+
+    final Map<String, Source> changed = new LinkedHashMap<>();
+    for(Source each : Iterables.concat(added, modified)){
+      final String id       = identity.apply(each);
+      final Source previous = changed.put(id, each);
+      if(previous != null && !previous.equals(each)){
+        throw new IllegalArgumentException("Duplicate source id " + id);
+      }
+
+      if(added.contains(each) && contributions.containsKey(id) && !removed.contains(id)){
+        throw new IllegalArgumentException("Source " + id + " is already in the corpus");
+      }
+    }
+
+    removed.forEach(this::subtract);
+
+    // source files are parsed concurrently, but counted on this thread
+    selection.executionPolicy().forEach(
+      changed.entrySet().iterator(),
+      c -> Maps.immutableEntry(c.getKey(), extract(c.getValue())),
+      contribution -> {
+        subtract(contribution.getKey());
+
+        contribution.getValue().forEach(counter::add);
+        contributions.put(contribution.getKey(), contribution.getValue());
+      }
+    );
+  }
+
+  private List<Word> extract(Source code){
+    return Selection.cleansing(stopWords, selection.from(code, whiteSet, stopWords).stream())
+      .collect(toList());
+  }
+
+  private void subtract(String id){
+    final List<Word> previous = contributions.remove(id);
+    if(previous != null) previous.forEach(counter::remove);
+  }
+}
@@ -0,0 +1,186 @@
+package com.vesperin.text;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.vesperin.text.nouns.Noun;
+import com.vesperin.text.spelling.StopWords;
+import com.vesperin.text.spelling.WordCorrector;
+import com.vesperin.text.utils.IdentifierTokenizer;
+import com.vesperin.text.utils.IdentifierTokenizer.Fragments;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.vesperin.text.spelling.WordCorrector.containsWord;
+import static com.vesperin.text.spelling.WordCorrector.similarity;
+import static com.vesperin.text.spelling.WordCorrector.suggestCorrection;
+
+/**
+ * Bounded, thread-safe cache of normalized identifiers. Normalizing an
+ * identifier (splitting it, dropping its stop words, and correcting
+ * its misspelled terms) is expensive, yet the same identifiers show up
+ * over and over across a corpus; with this cache, each distinct identifier
+ * is normalized once per run.
+ *
+ * <p>Entries are keyed by identifier and stop words; entries computed before
+ * a stop word was added or removed (see {@link StopWords#changes()}) are never
+ * returned.
+ *
+ * @author Huascar Sanchez
+ */
+public class TermCache {
+  private static final Noun       NOUN    = Noun.newNoun();
+  private static final TermCache  SHARED  = new TermCache(100_000);
+
+  private final LoadingCache<Key, List<String>> cache;
+
+  private TermCache(long maximumSize){
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .recordStats()
+      .build(new CacheLoader<Key, List<String>>() {
+        @Override public List<String> load(Key key) throws Exception {
+          return normalize(key.identifier, key.stopWords());
+        }
+      });
+  }
+
+  /**
+   * @return the cache shared by all word extraction tasks.
+   */
+  public static TermCache shared(){
+    return SHARED;
+  }
+
+  /**
+   * Creates a new term cache.
+   *
+   * @param maximumSize max number of cached identifiers.
+   * @return a new TermCache object.
+   */
+  public static TermCache of(long maximumSize){
+    return new TermCache(maximumSize);
+  }
+
+  /**
+   * Gets the normalized terms of an identifier, normalizing
+   * the identifier only if it is not cached.
+   *
+   * @param identifier identifier to normalize
+   * @param stopWords stop words to drop
+   * @return an immutable list of lower-cased terms; empty if
+   *    the identifier has no relevant terms.
+   */
+  public List<String> terms(String identifier, Set<StopWords> stopWords){
+    return cache.getUnchecked(new Key(identifier, stopWords));
+  }
+
+  /**
+   * @return this cache's statistics; e.g., its hit rate.
+   */
+  public CacheStats stats(){
+    return cache.stats();
+  }
+
+  /**
+   * @return number of cached identifiers.
+   */
+  public long size(){
+    return cache.size();
+  }
+
+  /**
+   * Discards all entries.
+   */
+  public void invalidateAll(){
+    cache.invalidateAll();
+  }
+
+  static List<String> normalize(String name, Set<StopWords> stopWords){
+    final String identifier = IdentifierTokenizer.stripNumbers(name);
+
+    final boolean underscored     = IdentifierTokenizer.countUnderscoreParts(identifier) == 1;
+    final boolean onlyConsonants  = WordCorrector.onlyConsonantsOrVowels(identifier);
+    final boolean tooSmall        = identifier.length() < 4;
+
+    if((underscored && onlyConsonants) || tooSmall) return ImmutableList.of();
+    if(isThrowableAlike(identifier))                return ImmutableList.of();
+
+    final ImmutableList.Builder<String> terms = ImmutableList.builder();
+
+    final Fragments split = IdentifierTokenizer.tokenize(identifier);
+    for(int i = 0; i < split.size(); i++){
+      if(split.length(i) == 0) continue;
+
+      final String eachLabel = split.get(i);
+      if(" ".equals(eachLabel)
+        || StopWords.isStopWord(stopWords, eachLabel, NOUN.pluralOf(eachLabel)))
+        continue;
+
+      String currentLabel = eachLabel.toLowerCase(Locale.ENGLISH);
+
+      if(WordCorrector.onlyConsonantsOrVowels(currentLabel) || !containsWord(currentLabel)){
+        final String newLabel = suggestCorrection(currentLabel).toLowerCase();
+
+        if(similarity(currentLabel, newLabel, 0.3f) > 0.3f){
+          currentLabel = newLabel;
+        }
+      }
+
+      terms.add(currentLabel.toLowerCase(Locale.ENGLISH));
+    }
+
+    return terms.build();
+  }
+
+  private static boolean isThrowableAlike(String identifier){
+    return (identifier.endsWith("Exception")
+      || identifier.equals("Throwable")
+      || identifier.equals("Error"));
+  }
+
+  private static class Key {
+    final String  identifier;
+    final int     stopWords;  // one bit per StopWords constant
+    final long    changes;
+    final int     hash;
+
+    Key(String identifier, Set<StopWords> stopWords){
+      int bits = 0; for(StopWords each : stopWords) bits |= 1 << each.ordinal();
+
+      this.identifier = identifier;
+      this.stopWords  = bits;
+      this.changes    = StopWords.changes();
+      this.hash       = 31 * (31 * identifier.hashCode() + bits) + Long.hashCode(changes);
+    }
+
+    Set<StopWords> stopWords(){
+      final Set<StopWords> result = EnumSet.noneOf(StopWords.class);
+      for(StopWords each : StopWords.values()){
+        if((stopWords & (1 << each.ordinal())) != 0) result.add(each);
+      }
+
+      return result;
+    }
+
+    @Override public boolean equals(Object o) {
+      if(this == o) return true;
+      if(!(o instanceof Key)) return false;
+
+      final Key other = (Key) o;
+      return hash == other.hash
+        && stopWords == other.stopWords
+        && changes == other.changes
+        && identifier.equals(other.identifier);
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+  }
+}
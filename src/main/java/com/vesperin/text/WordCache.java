@@ -0,0 +1,351 @@
+package com.vesperin.text;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.vesperin.base.Source;
+import com.vesperin.text.Selection.Word;
+import com.vesperin.text.spelling.StopWords;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Content-addressed cache of the words extracted from a source file. Entries
+ * are keyed by a hash of the file's content plus the white set, stop words
+ * (i.e., their current words) and extraction mode used to extract them, and
+ * the version of the extraction code, so an unchanged file is never parsed twice.
+ *
+ * <p>The cache has an in-memory LRU tier and an optional on-disk tier; the
+ * on-disk tier survives between runs. Every lookup returns fresh Word
+ * objects, since callers update them (e.g., their counts).
+ *
+ * @author Huascar Sanchez
+ */
+public class WordCache {
+  private static final int MAGIC          = 0x43554557; // "CUEW"
+  private static final int FORMAT_VERSION = 1;
+
+  // bump whenever word extraction (e.g., WordScanner) changes its output
+  private static final int    EXTRACTION_VERSION  = 1;
+  private static final String CODE_VERSION        = Optional.ofNullable(WordCache.class.getPackage())
+    .map(Package::getImplementationVersion)
+    .orElse("");
+
+  private static final WordCache SHARED = memory(1024);
+
+  private final Cache<String, Entry>  memory;
+  private final Optional<Path>        directory;
+
+  private final AtomicLong diskHits;
+  private final AtomicLong misses;
+
+  private WordCache(long maximumSize, Path directory){
+    this.memory     = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .recordStats()
+      .build();
+
+    this.directory  = Optional.ofNullable(directory);
+    this.diskHits   = new AtomicLong();
+    this.misses     = new AtomicLong();
+  }
+
+  /**
+   * @return the cache used by {@link Selection#selects(int, Set, Set, Set)}.
+   */
+  static WordCache shared(){
+    return SHARED;
+  }
+
+  /**
+   * Creates an in-memory word cache.
+   *
+   * @param maximumSize max number of cached source files.
+   * @return a new WordCache object.
+   */
+  public static WordCache memory(long maximumSize){
+    return new WordCache(maximumSize, null);
+  }
+
+  /**
+   * Creates a word cache backed by a directory.
+   *
+   * @param maximumSize max number of source files cached in memory.
+   * @param directory directory where cached entries are stored.
+   * @return a new WordCache object.
+   * @throws IOException if unable to create the directory.
+   */
+  public static WordCache tiered(long maximumSize, Path directory) throws IOException {
+    return new WordCache(maximumSize, Files.createDirectories(Objects.requireNonNull(directory)));
+  }
+
+  /**
+   * Gets the words of a source file, extracting them only if they
+   * are not cached.
+   *
+   * @param code source file
+   * @param whiteSet white set used by the extractor
+   * @param stopWords stop words used by the extractor
+   * @param extraction extraction mode used by the extractor
+   * @param extractor word extractor
+   * @return a new list of words.
+   */
+  public List<Word> get(Source code, Set<String> whiteSet, Set<StopWords> stopWords,
+                        Selection.Extraction extraction, Function<Source, List<Word>> extractor){
+
+    final String key = key(code, whiteSet, stopWords, extraction);
+
+    Entry entry = memory.getIfPresent(key);
+    if(entry == null){
+      entry = readEntry(key);
+
+      if(entry != null){
+        diskHits.incrementAndGet();
+      } else {
+        misses.incrementAndGet();
+
+        entry = Entry.of(extractor.apply(code));
+        writeEntry(key, entry);
+      }
+
+      memory.put(key, entry);
+    }
+
+    return entry.words();
+  }
+
+  /**
+   * @return in-memory tier's statistics.
+   */
+  public CacheStats memoryStats(){
+    return memory.stats();
+  }
+
+  /**
+   * @return number of lookups answered by the on-disk tier.
+   */
+  public long diskHits(){
+    return diskHits.get();
+  }
+
+  /**
+   * @return number of lookups that required extracting words.
+   */
+  public long misses(){
+    return misses.get();
+  }
+
+  /**
+   * Discards all in-memory entries.
+   */
+  public void invalidateAll(){
+    memory.invalidateAll();
+  }
+
+  static String key(Source code, Set<String> whiteSet, Set<StopWords> stopWords, Selection.Extraction extraction){
+    final Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    hasher.putInt(EXTRACTION_VERSION);
+    hasher.putString(CODE_VERSION, StandardCharsets.UTF_8);
+    hasher.putString(extraction.name(), StandardCharsets.UTF_8);
+    hasher.putString(code.getContent(), StandardCharsets.UTF_8);
+
+    whiteSet.stream()
+      .map(s -> s.toLowerCase(Locale.ENGLISH))
+      .distinct()
+      .sorted()
+      .forEach(s -> hasher.putByte((byte) 0).putString(s, StandardCharsets.UTF_8));
+
+    hasher.putByte((byte) 1);
+    stopWords.stream()
+      .sorted()
+      .forEach(s -> hasher.putByte((byte) 0)
+        .putString(s.toString(), StandardCharsets.UTF_8)
+        .putLong(s.fingerprint()));
+
+    return hasher.hash().toString();
+  }
+
+  private Path file(String key){
+    return directory.get().resolve(key.substring(0, 2)).resolve(key + ".words");
+  }
+
+  private Entry readEntry(String key){
+    if(!directory.isPresent()) return null;
+
+    final Path file = file(key);
+    if(!Files.exists(file)) return null;
+
+    try (InputStream is = Files.newInputStream(file)){
+      return Entry.read(new DataInputStream(new BufferedInputStream(is)));
+    } catch (IOException e){
+      // unreadable (e.g., truncated or stale) entries are treated as misses
+      return null;
+    }
+  }
+
+  private void writeEntry(String key, Entry entry){
+    if(!directory.isPresent()) return;
+
+    try {
+      final Path file = file(key);
+      Files.createDirectories(file.getParent());
+
+      final Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+      try {
+        try (OutputStream os = Files.newOutputStream(temp)){
+          final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+          entry.write(out);
+          out.flush();
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException ignored){
+      // the on-disk tier is best effort
+    }
+  }
+
+  /**
+   * Immutable form of the words extracted from a source file.
+   * Containers are stored once and referred to by index.
+   */
+  static class Entry {
+    final String[]  containers;
+    final String[]  elements;
+    final int[]     counts;
+    final int[][]   wordContainers;
+
+    Entry(String[] containers, String[] elements, int[] counts, int[][] wordContainers){
+      this.containers     = containers;
+      this.elements       = elements;
+      this.counts         = counts;
+      this.wordContainers = wordContainers;
+    }
+
+    static Entry of(List<Word> words){
+      final Map<String, Integer> containers = new LinkedHashMap<>();
+
+      final String[] elements       = new String[words.size()];
+      final int[]    counts         = new int[words.size()];
+      final int[][]  wordContainers = new int[words.size()][];
+
+      for (int i = 0; i < elements.length; i++) {
+        final Word word = words.get(i);
+        elements[i] = word.element();
+        counts[i]   = word.value();
+
+        wordContainers[i] = word.container().stream()
+          .sorted()
+          .mapToInt(c -> containers.computeIfAbsent(c, key -> containers.size()))
+          .toArray();
+      }
+
+      return new Entry(containers.keySet().toArray(new String[0]), elements, counts, wordContainers);
+    }
+
+    List<Word> words(){
+      if(elements.length == 0) return Collections.emptyList();
+
+      final List<Word> words = new ArrayList<>(elements.length);
+      for (int i = 0; i < elements.length; i++) {
+        final Word word = Selection.createWord(elements[i]);
+        word.count(counts[i] - word.value());
+
+        for(int c : wordContainers[i]){
+          word.add(containers[c]);
+        }
+
+        words.add(word);
+      }
+
+      return words;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+
+      out.writeInt(containers.length);
+      for(String each : containers) out.writeUTF(each);
+
+      out.writeInt(elements.length);
+      for (int i = 0; i < elements.length; i++) {
+        out.writeUTF(elements[i]);
+        writeVarint(out, counts[i]);
+        writeVarint(out, wordContainers[i].length);
+        for(int c : wordContainers[i]) writeVarint(out, c);
+      }
+    }
+
+    static Entry read(DataInputStream in) throws IOException {
+      if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+        throw new IOException("Not a word cache entry");
+      }
+
+      final String[] containers = new String[in.readInt()];
+      for (int c = 0; c < containers.length; c++) containers[c] = in.readUTF();
+
+      final int       size            = in.readInt();
+      final String[]  elements        = new String[size];
+      final int[]     counts          = new int[size];
+      final int[][]   wordContainers  = new int[size][];
+
+      for (int i = 0; i < size; i++) {
+        elements[i]       = in.readUTF();
+        counts[i]         = readVarint(in);
+        wordContainers[i] = new int[readVarint(in)];
+        for (int c = 0; c < wordContainers[i].length; c++) {
+          wordContainers[i][c] = readVarint(in);
+        }
+      }
+
+      return new Entry(containers, elements, counts, wordContainers);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+      while((value & ~0x7F) != 0){
+        out.writeByte((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+
+      out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+      int value = 0; int shift = 0; int b;
+      do {
+        b = in.readUnsignedByte();
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+
+      return value;
+    }
+  }
+}
@@ -0,0 +1,492 @@
+package com.vesperin.text;
+
+import com.vesperin.base.Source;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+import static org.eclipse.jdt.core.compiler.ITerminalSymbols.*;
+
+/**
+ * Token-level replacement for walking a full JDT AST in {@link Selection.WordCollector}.
+ * It finds the same identifiers (and the same enclosing type and method of each
+ * identifier) from the tokens produced by JDT's {@link IScanner}, using a stack
+ * of frames (types, methods and blocks) opened and closed by braces.
+ *
+ * <p>Like the AST path, an identifier is collected only if it has an enclosing
+ * method; e.g., names in field declarations of top-level types are skipped, but
+ * names in field declarations of anonymous classes inside methods are not.
+ *
+ * @author Huascar Sanchez
+ */
+final class WordScanner {
+  private static final int TYPE       = 0; // class or interface declaration
+  private static final int ENUM       = 1;
+  private static final int ANNOTATION = 2;
+  private static final int ANONYMOUS  = 3;
+  private static final int METHOD     = 4;
+  private static final int BLOCK      = 5;
+
+  private final int[]     tokens;
+  private final String[]  identifiers;
+
+  private final Selection.WordCollector collector;
+  private final Deque<Frame>            frames;
+  private final Deque<Boolean>          parens;  // true if a paren holds a class instance creation's args
+
+  private String  packageName;
+  private boolean pendingNew;       // saw 'new'; waiting for its args
+  private int     newAngles;        // open type argument brackets since 'new'
+  private boolean closedCreation;   // the last ')' closed a class instance creation's args
+
+  private WordScanner(int[] tokens, String[] identifiers, Selection.WordCollector collector){
+    this.tokens       = tokens;
+    this.identifiers  = identifiers;
+    this.collector    = collector;
+    this.frames       = new ArrayDeque<>();
+    this.parens       = new ArrayDeque<>();
+    this.packageName  = "";
+  }
+
+  /**
+   * Collects the words of a source file without building its AST.
+   *
+   * @param code source file
+   * @param collector word collector
+   * @return false if the source file could not be tokenized; true otherwise.
+   */
+  static boolean scan(Source code, Selection.WordCollector collector){
+    Objects.requireNonNull(code);
+
+    final IScanner scanner = ToolFactory.createScanner(false, false, false, JavaCore.VERSION_1_8);
+    scanner.setSource(code.getContent().toCharArray());
+
+    int[]     tokens      = new int[1024];
+    String[]  identifiers = new String[1024];
+
+    int size = 0;
+    try {
+      for(int token = scanner.getNextToken(); token != TokenNameEOF; token = scanner.getNextToken()){
+        if(size == tokens.length){
+          tokens      = Arrays.copyOf(tokens, size * 2);
+          identifiers = Arrays.copyOf(identifiers, size * 2);
+        }
+
+        tokens[size]      = token;
+        identifiers[size] = token == TokenNameIdentifier ? new String(scanner.getCurrentTokenSource()) : null;
+        size++;
+      }
+    } catch (InvalidInputException e){
+      return false;
+    }
+
+    new WordScanner(Arrays.copyOf(tokens, size), identifiers, collector).run();
+    return true;
+  }
+
+  private void run(){
+    for (int i = 0; i < tokens.length; i++) {
+      final int   token = tokens[i];
+      final Frame top   = frames.peek();
+
+      if(top == null){
+        compilationUnit(i);
+      } else if(top.isType() && !top.opened){
+        header(i, top);
+      } else if(top.isType()){
+        declaration(i, top);
+      } else {
+        code(i);
+      }
+
+      track(i, token);
+    }
+  }
+
+  private void compilationUnit(int i){
+    switch(tokens[i]){
+      case TokenNamepackage:
+        final StringBuilder name = new StringBuilder();
+        for(int j = i + 1; j < tokens.length && tokens[j] != TokenNameSEMICOLON; j++){
+          if(tokens[j] == TokenNameIdentifier) name.append(identifiers[j]).append('.');
+        }
+
+        packageName = name.toString();
+        break;
+      case TokenNameclass:
+      case TokenNameinterface:
+      case TokenNameenum:
+        if(previous(i) != TokenNameDOT) openType(i, Collections.emptyList());
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void header(int i, Frame type){
+    switch(tokens[i]){
+      case TokenNameIdentifier:
+        emit(identifiers[i]);
+        break;
+      case TokenNameLBRACE:
+        type.opened     = true;
+        type.constants  = type.kind == ENUM;
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void declaration(int i, Frame type){
+    final int token  = tokens[i];
+    Member    member = type.member;
+
+    if(member != null && token != TokenNameIdentifier && token != TokenNameDOT){
+      member.annotation = false;
+    }
+
+    switch(token){
+      case TokenNameIdentifier:
+        if(member == null) member = type.member = new Member();
+        member.names.add(identifiers[i]);
+
+        final boolean annotation = member.annotation;
+        member.annotation = annotation && next(i) == TokenNameDOT;
+
+        if(!annotation && !type.constants && member.signature == null
+          && member.parens == 0 && !member.initializer && next(i) == TokenNameLPAREN){
+
+          member.signature    = identifiers[i];
+          member.constructor  = isConstructor(i, type);
+        }
+        break;
+      case TokenNameAT:
+        if(next(i) == TokenNameinterface) break;
+        if(member == null) member = type.member = new Member();
+        member.annotation = true;
+        break;
+      case TokenNameLPAREN:
+        if(member != null) member.parens++;
+        break;
+      case TokenNameRPAREN:
+        if(member != null && member.parens > 0) member.parens--;
+        break;
+      case TokenNameEQUAL:
+        if(member != null && member.parens == 0) member.initializer = true;
+        break;
+      case TokenNameclass:
+      case TokenNameinterface:
+      case TokenNameenum:
+        if(previous(i) == TokenNameDOT) break;
+        if(member != null && (member.parens > 0 || member.initializer)) break;
+
+        type.member = null;
+        openType(i, member == null ? Collections.emptyList() : member.names);
+        break;
+      case TokenNameLBRACE:
+        if(isAnonymous(i)){
+          flush(member);
+          open(ANONYMOUS, null, false).opened = true;
+        } else if(member != null && member.parens > 0 && !member.initializer){
+          member.braces++; // e.g., an annotation's array value
+        } else if(member != null && member.signature != null && type.kind == ANNOTATION){
+          member.braces++; // an annotation element's array default value
+        } else if(member != null && member.signature != null && !member.initializer && !type.constants){
+          type.member = null;
+          open(METHOD, member.signature, member.constructor);
+          emitAll(member.names);
+        } else if(type.constants && member != null){
+          // an enum constant's class body
+          type.member = null;
+          flush(member);
+          open(ANONYMOUS, null, false).opened = true;
+        } else {
+          // an initializer block, or a lambda body or array
+          // initializer in a field's initializer
+          if(member == null || !member.initializer) type.member = null;
+          flush(member);
+          open(BLOCK, null, false);
+        }
+        break;
+      case TokenNameRBRACE:
+        if(member != null && member.braces > 0){
+          member.braces--;
+          break;
+        }
+
+        type.member = null;
+        flush(member);
+        frames.pop();
+        break;
+      case TokenNameCOMMA:
+        if(type.constants && member != null && member.parens == 0){
+          type.member = null;
+          flush(member);
+        }
+        break;
+      case TokenNameSEMICOLON:
+        if(member != null && member.parens > 0) break;
+
+        type.member = null;
+        if(member != null && member.signature != null && !member.initializer
+          && !type.constants && type.kind != ANNOTATION){
+          // a method without a body
+          open(METHOD, member.signature, member.constructor);
+          emitAll(member.names);
+          frames.pop();
+        } else {
+          flush(member);
+        }
+
+        type.constants = false;
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void code(int i){
+    final int token = tokens[i];
+
+    switch(token){
+      case TokenNameIdentifier:
+        emit(identifiers[i]);
+        break;
+      case TokenNameLBRACE:
+        if(isAnonymous(i)){
+          open(ANONYMOUS, null, false).opened = true;
+        } else {
+          open(BLOCK, null, false);
+        }
+        break;
+      case TokenNameRBRACE:
+        frames.pop();
+        break;
+      case TokenNameclass:
+      case TokenNameinterface:
+      case TokenNameenum:
+        if(previous(i) != TokenNameDOT) openType(i, Collections.emptyList());
+        break;
+      case TokenNameAT:
+      case TokenNamefinal:
+      case TokenNameabstract:
+      case TokenNamestatic:
+      case TokenNamestrictfp:
+        // modifiers of a local type belong to the local type, so
+        // its frame is opened before reading them
+        if(!isStatementStart(i)) break;
+
+        final int keyword = skipModifiers(i);
+        if(keyword < tokens.length && isTypeKeyword(tokens[keyword])){
+          openType(keyword, Collections.emptyList());
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void track(int i, int token){
+    switch(token){
+      case TokenNamenew:
+        pendingNew  = true;
+        newAngles   = 0;
+        break;
+      case TokenNameLESS:
+        newAngles++;
+        break;
+      case TokenNameGREATER:
+        newAngles--;
+        break;
+      case TokenNameRIGHT_SHIFT:
+        newAngles -= 2;
+        break;
+      case TokenNameUNSIGNED_RIGHT_SHIFT:
+        newAngles -= 3;
+        break;
+      case TokenNameLPAREN:
+        parens.push(pendingNew);
+        pendingNew = false;
+        break;
+      case TokenNameRPAREN:
+        closedCreation = !parens.isEmpty() && parens.pop();
+        break;
+      case TokenNameLBRACKET:
+        // e.g., 'new int[size]', but not 'new Action<Class<?>[]>()'
+        if(newAngles <= 0) pendingNew = false;
+        break;
+      case TokenNameLBRACE:
+      case TokenNameSEMICOLON:
+        pendingNew = false;
+        break;
+      default:
+        break;
+    }
+  }
+
+  private boolean isAnonymous(int i){
+    return previous(i) == TokenNameRPAREN && closedCreation;
+  }
+
+  private boolean isConstructor(int i, Frame type){
+    if(!identifiers[i].equals(type.name)) return false;
+
+    switch(previous(i)){
+      case TokenNameIdentifier:
+      case TokenNameRBRACKET:
+      case TokenNamevoid:
+      case TokenNameboolean:
+      case TokenNamebyte:
+      case TokenNamechar:
+      case TokenNameshort:
+      case TokenNameint:
+      case TokenNamelong:
+      case TokenNamefloat:
+      case TokenNamedouble:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  private boolean isStatementStart(int i){
+    switch(previous(i)){
+      case TokenNameSEMICOLON:
+      case TokenNameLBRACE:
+      case TokenNameRBRACE:
+      case TokenNameCOLON:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private int skipModifiers(int i){
+    while(i < tokens.length){
+      switch(tokens[i]){
+        case TokenNamefinal:
+        case TokenNameabstract:
+        case TokenNamestatic:
+        case TokenNamestrictfp:
+          i++;
+          break;
+        case TokenNameAT:
+          do { i += 2; } while(i < tokens.length && tokens[i] == TokenNameDOT);
+          if(i < tokens.length && tokens[i] == TokenNameLPAREN){
+            int depth = 0;
+            do {
+              if(tokens[i] == TokenNameLPAREN) depth++;
+              if(tokens[i] == TokenNameRPAREN) depth--;
+              i++;
+            } while(i < tokens.length && depth > 0);
+          }
+          break;
+        default:
+          return i;
+      }
+    }
+
+    return i;
+  }
+
+  private static boolean isTypeKeyword(int token){
+    return token == TokenNameclass || token == TokenNameinterface || token == TokenNameenum;
+  }
+
+  private void openType(int keyword, List<String> modifiers){
+    final int kind = tokens[keyword] == TokenNameenum ? ENUM
+      : previous(keyword) == TokenNameAT ? ANNOTATION
+      : TYPE;
+
+    final String name = next(keyword) == TokenNameIdentifier ? identifiers[keyword + 1] : null;
+
+    open(kind, name, false);
+    emitAll(modifiers);
+  }
+
+  private Frame open(int kind, String name, boolean constructor){
+    final Frame frame = new Frame(kind, name, constructor, frames.peek());
+    frames.push(frame);
+    return frame;
+  }
+
+  private void flush(Member member){
+    if(member == null) return;
+
+    emitAll(member.names);
+    member.names.clear();
+  }
+
+  private void emitAll(List<String> names){
+    for(String each : names){
+      emit(each);
+    }
+  }
+
+  private void emit(String identifier){
+    final Frame top = frames.peek();
+    if(top == null || top.method == null) return;
+
+    final Frame method = top.method;
+    final Frame type   = top.type;
+
+    collector.collect(identifier, method.name, () -> {
+      final String left  = type != null ? (packageName + type.name + "#") : "";
+      final String right = method.name + (method.constructor ? "(C)" : "");
+      return left + right;
+    });
+  }
+
+  private int previous(int i){
+    return i > 0 ? tokens[i - 1] : TokenNameEOF;
+  }
+
+  private int next(int i){
+    return i + 1 < tokens.length ? tokens[i + 1] : TokenNameEOF;
+  }
+
+  private static class Frame {
+    final int     kind;
+    final String  name;
+    final boolean constructor;
+    final Frame   method; // innermost enclosing method, if any
+    final Frame   type;   // innermost enclosing class or interface, if any
+
+    boolean opened;     // (types only) its body has started
+    boolean constants;  // (enums only) its constants are being declared
+    Member  member;     // (types only) member being declared
+
+    Frame(int kind, String name, boolean constructor, Frame parent){
+      this.kind         = kind;
+      this.name         = name;
+      this.constructor  = constructor;
+      this.method       = kind == METHOD ? this : (parent == null ? null : parent.method);
+      this.type         = kind == TYPE ? this : (parent == null ? null : parent.type);
+      this.opened       = false;
+    }
+
+    boolean isType(){
+      return kind == TYPE || kind == ENUM || kind == ANNOTATION || kind == ANONYMOUS;
+    }
+  }
+
+  private static class Member {
+    final List<String> names = new ArrayList<>();
+
+    String  signature;    // name of the method being declared, if any
+    boolean constructor;
+    boolean initializer;  // a field (or constant) initializer has started
+    boolean annotation;   // reading an annotation's (qualified) name
+    int     parens;
+    int     braces;
+  }
+}
@@ -0,0 +1,234 @@
+package com.vesperin.text.spelling;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Compiles the spelling dictionary ({@code big.txt}) and the stop-word lists
+ * ({@code english}, {@code java} and {@code general}) into binary resources,
+ * at build time (see {@code build.sbt}). Loading these resources skips the
+ * parsing of the raw text files, as well as the building of the dictionary's
+ * indexes (see {@link WordTrie} and {@link SymmetricDeleteIndex}); i.e., they are
+ * read from the classpath as a byte stream and copied, in bulk, into arrays.
+ *
+ * <p>Resources are read with {@link Class#getResourceAsStream(String)}, so they
+ * load from a directory or a jar alike. If a binary resource is missing (e.g.,
+ * classes compiled outside the build), stale or corrupted, callers fall back to the raw
+ * text files.
+ *
+ * @author Huascar Sanchez
+ */
+public final class CompiledResources {
+  static final String DICTIONARY  = "big.bin";
+  static final String STOP_WORDS  = "stopwords.bin";
+
+  static final String DICTIONARY_TEXT = "big.txt";
+
+  private static final int MAGIC    = 0x43554554; // "CUET"
+  private static final int VERSION  = 1;
+
+  // magic number, format version and CRC32 checksum of the payload
+  private static final int HEADER_SIZE = 4 + 4 + 8;
+
+  private CompiledResources(){}
+
+  /**
+   * Compiles the binary resources.
+   *
+   * @param args the directory of the raw text resources, and
+   *    the directory where the binary resources are written.
+   * @throws IOException if a resource cannot be read or written.
+   */
+  public static void main(String... args) throws IOException {
+    if(args.length != 2){
+      throw new IllegalArgumentException("Usage: CompiledResources <resources dir> <output dir>");
+    }
+
+    final Path from = Paths.get(args[0]);
+    final Path to   = Files.createDirectories(Paths.get(args[1]));
+
+    try (Reader text = Files.newBufferedReader(from.resolve(DICTIONARY_TEXT), StandardCharsets.UTF_8)){
+      Files.write(to.resolve(DICTIONARY), compileDictionary(SpellingDictionary.fromText(text)));
+    }
+
+    final Map<String, List<String>> lists = new LinkedHashMap<>();
+    for(StopWords each : StopWords.values()){
+      final Path file = from.resolve(each.resourceName());
+      if(!Files.exists(file)) continue;
+
+      try (Reader text = Files.newBufferedReader(file, StandardCharsets.UTF_8)){
+        lists.put(each.resourceName(), StopWords.readWordList(text));
+      }
+    }
+
+    Files.write(to.resolve(STOP_WORDS), compileStopWords(lists));
+  }
+
+  /**
+   * Reads a binary resource.
+   *
+   * @param name resource name
+   * @return the resource's content (past its header); null if the
+   *    resource is missing or was compiled by another version.
+   */
+  static ByteBuffer read(String name){
+    try (InputStream in = CompiledResources.class.getResourceAsStream("/" + name)){
+      return in == null ? null : content(ByteStreams.toByteArray(in));
+    } catch (IOException e){
+      return null;
+    }
+  }
+
+  /**
+   * @param bytes a binary resource
+   * @return the resource's content (past its header); null if the resource
+   *    was compiled by another version, or if its checksum does not match.
+   */
+  static ByteBuffer content(byte[] bytes){
+    final ByteBuffer content = ByteBuffer.wrap(bytes);
+    if(content.remaining() < HEADER_SIZE || content.getInt() != MAGIC || content.getInt() != VERSION){
+      return null;
+    }
+
+    final long   crc      = content.getLong();
+    final CRC32  checksum = new CRC32();
+    checksum.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+
+    return checksum.getValue() == crc ? content : null;
+  }
+
+  /**
+   * Reads the compiled stop-word lists.
+   *
+   * @return stop words by list name; empty if there are no
+   *  compiled stop words.
+   */
+  static Map<String, List<String>> readStopWords(){
+    final ByteBuffer content = read(STOP_WORDS);
+    return content == null ? Collections.emptyMap() : readStopWords(content);
+  }
+
+  static Map<String, List<String>> readStopWords(ByteBuffer content){
+    try {
+      final Map<String, List<String>> result = new LinkedHashMap<>();
+
+      final int lists = content.getInt();
+      for (int i = 0; i < lists; i++) {
+        final String name = readString(content);
+        result.put(name, Collections.unmodifiableList(readStrings(content)));
+      }
+
+      return result;
+    } catch (BufferUnderflowException e){
+      return Collections.emptyMap();
+    }
+  }
+
+  static byte[] compileStopWords(Map<String, List<String>> lists) throws IOException {
+    final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    writeStopWords(lists, new DataOutputStream(payload));
+    return withHeader(payload.toByteArray());
+  }
+
+  static byte[] compileDictionary(SpellingDictionary dictionary) throws IOException {
+    final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    dictionary.writeTo(new DataOutputStream(payload));
+    return withHeader(payload.toByteArray());
+  }
+
+  private static void writeStopWords(Map<String, List<String>> lists, DataOutputStream out) throws IOException {
+    out.writeInt(lists.size());
+    for(Map.Entry<String, List<String>> each : lists.entrySet()){
+      writeString(out, each.getKey());
+
+      // lower-cased (as StopWords#add would do), distinct and sorted
+      final TreeSet<String> words = new TreeSet<>();
+      each.getValue().forEach(w -> words.add(StopWords.normalize(w)));
+
+      writeStrings(out, new ArrayList<>(words));
+    }
+
+    out.flush();
+  }
+
+  private static byte[] withHeader(byte[] payload) throws IOException {
+    final CRC32 checksum = new CRC32();
+    checksum.update(payload);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + payload.length);
+    final DataOutputStream      out   = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(checksum.getValue());
+    out.write(payload);
+    out.flush();
+
+    return bytes.toByteArray();
+  }
+
+  static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    for(int each : values) out.writeInt(each);
+  }
+
+  static int[] readInts(ByteBuffer in){
+    final int[] result = new int[in.getInt()];
+    in.asIntBuffer().get(result);
+    in.position(in.position() + result.length * 4);
+    return result;
+  }
+
+  static void writeChars(DataOutputStream out, char[] values) throws IOException {
+    out.writeInt(values.length);
+    for(char each : values) out.writeChar(each);
+  }
+
+  static char[] readChars(ByteBuffer in){
+    final char[] result = new char[in.getInt()];
+    in.asCharBuffer().get(result);
+    in.position(in.position() + result.length * 2);
+    return result;
+  }
+
+  static void writeString(DataOutputStream out, String value) throws IOException {
+    writeChars(out, value.toCharArray());
+  }
+
+  static String readString(ByteBuffer in){
+    return new String(readChars(in));
+  }
+
+  static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+    out.writeInt(values.size());
+    for(String each : values) writeString(out, each);
+  }
+
+  static List<String> readStrings(ByteBuffer in){
+    final int size = in.getInt();
+
+    final List<String> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(readString(in));
+    }
+
+    return result;
+  }
+}
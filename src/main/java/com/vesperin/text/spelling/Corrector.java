@@ -1,6 +1,6 @@
 package com.vesperin.text.spelling;
 
-import java.util.Locale;
+import com.vesperin.text.utils.IdentifierTokenizer;
 
 /**
  * @author Huascar Sanchez
@@ -28,14 +28,14 @@ interface Corrector {
   String correct(String word, float accuracy);
 
   static boolean onlyConsonants(String word) {
-    // thx to http://stackoverflow.com/q/26536829/26536928
-    return !(word == null || word.isEmpty())
-      && word.toLowerCase(Locale.ENGLISH).matches("^[aeiuoAEIOU]*$|^(?!.*(NG|ng)).[^aeyiuo]*$");
+    // thx to http://stackoverflow.com/q/26536829/26536928; same as matching
+    // "^[aeiuoAEIOU]*$|^(?!.*(NG|ng)).[^aeyiuo]*$", minus the regex
+    return IdentifierTokenizer.onlyConsonantsOrVowels(word);
   }
 
   static boolean isNumber(String input) {
-    // thx to http://stackoverflow.com/q/15111420/15111450
-    return !(input == null || input.isEmpty()) && input.matches("\\d+");
+    // thx to http://stackoverflow.com/q/15111420/15111450; same as matching "\\d+"
+    return IdentifierTokenizer.isNumber(input);
   }
 
   static boolean startsWithNumbers(String input){
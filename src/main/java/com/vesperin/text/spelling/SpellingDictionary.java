@@ -0,0 +1,150 @@
+package com.vesperin.text.spelling;
+
+import com.google.common.io.CharStreams;
+import com.vesperin.text.utils.IdentifierTokenizer;
+import com.vesperin.text.utils.IdentifierTokenizer.Fragments;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.vesperin.text.spelling.Corrector.endsWithNumbers;
+import static com.vesperin.text.spelling.Corrector.startsWithNumbers;
+import static com.vesperin.text.spelling.Corrector.trimLeft;
+import static com.vesperin.text.spelling.Corrector.trimRight;
+
+/**
+ * The dictionary of {@link WordCorrector}: its words (see {@link WordTrie})
+ * and their delete variants (see {@link SymmetricDeleteIndex}). It is either
+ * read from its binary resource (see {@link CompiledResources}), or built
+ * from the words in {@code big.txt}.
+ *
+ * @author Huascar Sanchez
+ */
+final class SpellingDictionary {
+  final WordTrie             words;
+  final SymmetricDeleteIndex edits;
+
+  private SpellingDictionary(WordTrie words, SymmetricDeleteIndex edits){
+    this.words = Objects.requireNonNull(words);
+    this.edits = Objects.requireNonNull(edits);
+  }
+
+  /**
+   * Loads the dictionary from its binary resource, if there is one;
+   * otherwise, from {@code big.txt}.
+   *
+   * @return a new SpellingDictionary object.
+   * @throws IllegalStateException if the dictionary cannot be loaded.
+   */
+  static SpellingDictionary load(){
+    final ByteBuffer compiled = CompiledResources.read(CompiledResources.DICTIONARY);
+    if(compiled != null){
+      try {
+        return readFrom(compiled);
+      } catch (BufferUnderflowException | IllegalArgumentException ignored){
+        // corrupted resource; falls back to the raw text
+      }
+    }
+
+    final InputStream in = SpellingDictionary.class.getResourceAsStream("/" + CompiledResources.DICTIONARY_TEXT);
+    if(in == null) throw new IllegalStateException("Unable to populate dictionary!");
+
+    try (Reader text = new InputStreamReader(in, StandardCharsets.UTF_8)){
+      return fromText(text);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to populate dictionary!");
+    }
+  }
+
+  /**
+   * Builds a dictionary from the words in a text.
+   *
+   * @param text the text's reader
+   * @return a new SpellingDictionary object.
+   * @throws IOException if the text cannot be read.
+   */
+  static SpellingDictionary fromText(Reader text) throws IOException {
+    final SortedMap<String, Integer> words = new TreeMap<>();
+    populateDictionary(CharStreams.readLines(text), words);
+
+    return new SpellingDictionary(WordTrie.of(words), new SymmetricDeleteIndex(words));
+  }
+
+  /**
+   * Reads a dictionary written by {@link #writeTo(DataOutputStream)}.
+   *
+   * @param in content
+   * @return a new SpellingDictionary object.
+   */
+  static SpellingDictionary readFrom(ByteBuffer in){
+    final WordTrie              words = WordTrie.readFrom(in);
+    final SymmetricDeleteIndex  edits = SymmetricDeleteIndex.readFrom(in);
+
+    if(words.size() != edits.size()) throw new IllegalArgumentException("Inconsistent dictionary");
+
+    return new SpellingDictionary(words, edits);
+  }
+
+  /**
+   * Writes this dictionary; see {@link #readFrom(ByteBuffer)}.
+   *
+   * @param out output stream
+   * @throws IOException if this dictionary cannot be written.
+   */
+  void writeTo(DataOutputStream out) throws IOException {
+    words.writeTo(out);
+    edits.writeTo(out);
+    out.flush();
+  }
+
+  private static void populateDictionary(List<String> lines, SortedMap<String, Integer> dict) {
+    Objects.requireNonNull(dict);
+    Objects.requireNonNull(lines);
+
+    Pattern p = Pattern.compile("\\w+");
+    for(String line : lines){
+      final Matcher m = p.matcher(line);
+
+      while(m.find()) {
+
+        final Fragments words = IdentifierTokenizer.tokenize(m.group());
+
+        for(int i = 0; i < words.size(); i++){
+          if(words.length(i) <= 2)                continue;
+          if(words.onlyConsonantsOrVowels(i))     continue;
+          if(words.isNumber(i))                   continue;
+
+          final String each = words.get(i);
+
+          String updatedEach;
+          if(startsWithNumbers(each) || endsWithNumbers(each)) {
+            updatedEach = trimRight(trimLeft(each))
+              .toLowerCase(Locale.ENGLISH);
+          } else {
+            updatedEach = each.toLowerCase(Locale.ENGLISH);
+          }
+
+          dict.put(
+            updatedEach,
+            // increase frequency
+            (dict.containsKey(updatedEach) ? dict.get(updatedEach) + 1 : 1)
+          );
+
+        }
+      }
+    }
+  }
+}
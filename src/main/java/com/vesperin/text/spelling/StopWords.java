@@ -1,18 +1,25 @@
 package com.vesperin.text.spelling;
 
+import com.google.common.hash.Hashing;
 import com.google.common.io.CharStreams;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Huascar Sanchez
@@ -25,6 +32,7 @@ public enum StopWords {
 
   public final boolean stripApostrophes;
   private final Set<String> stopWords;
+  private long              fingerprint;  // sum of the words' hashes; see fingerprint()
 
   /**
    * Construct the StopWords enum
@@ -51,8 +59,43 @@ public enum StopWords {
    * @param word new word to add
    */
   public void add(String word){
-    final String nonNullWord = Objects.requireNonNull(word);
-    stopWords.add(nonNullWord.toLowerCase(Locale.ENGLISH));
+    final String normalized = normalize(Objects.requireNonNull(word));
+    if(stopWords.add(normalized)){
+      fingerprint += Hashing.murmur3_128().hashString(normalized, StandardCharsets.UTF_8).asLong();
+      Changes.COUNT.incrementAndGet();
+    }
+  }
+
+  /**
+   * Removes a word from the stop-words list.
+   *
+   * @param word word to remove
+   */
+  public void remove(String word){
+    final String normalized = normalize(Objects.requireNonNull(word));
+    if(stopWords.remove(normalized)){
+      fingerprint -= Hashing.murmur3_128().hashString(normalized, StandardCharsets.UTF_8).asLong();
+      Changes.COUNT.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return a fingerprint of this list's current words. Unlike
+   *  {@link #changes()}, it does not depend on the order in which words were
+   *  added; hence, lists with the same words have the same fingerprint, in
+   *  any run.
+   */
+  public long fingerprint(){
+    return fingerprint;
+  }
+
+  /**
+   * @return number of words added to (or removed from) all stop-words lists
+   *  so far; it can be
+   *  used to tell whether results that depend on these lists are stale.
+   */
+  public static long changes(){
+    return Changes.COUNT.get();
   }
 
   /**
@@ -110,31 +153,72 @@ public enum StopWords {
     );
   }
 
+  private static class Changes {
+    // enum constructors cannot refer to the enum's own static fields
+    static final AtomicLong COUNT = new AtomicLong();
+  }
+
+  private static class Compiled {
+    // stop-word lists compiled at build time (see CompiledResources)
+    static final Map<String, List<String>> LISTS = CompiledResources.readStopWords();
+  }
+
+  /**
+   * @return the name of this list's resource file.
+   */
+  String resourceName(){
+    return name().toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Reads a stop-words file: whitespace separated words, where
+   * '|' starts a comment.
+   *
+   * @param reader the file's reader
+   * @return the list of words in the file.
+   * @throws IOException if the file cannot be read.
+   */
+  static List<String> readWordList(Reader reader) throws IOException {
+    final List<String> words = new ArrayList<>();
+
+    final List<String> lines = CharStreams.readLines(reader);
+    final Iterator<String> iterator = lines.iterator();
+    String line;
+
+    while (iterator.hasNext()) {
+      line = iterator.next();
+      line = line.replaceAll("\\|.*", "").trim();
+
+      if (line.length() == 0) {
+        continue;
+      }
+
+      Collections.addAll(words, line.split("\\s+"));
+    }
+
+    return words;
+  }
+
+  static String normalize(String word){
+    return word.toLowerCase(Locale.ENGLISH);
+  }
+
   private void loadSupportedLanguages() {
-    final String wordListResource = name().toLowerCase(Locale.ENGLISH);
+    final String wordListResource = resourceName();
     if (!CUSTOM_WORD.equals(wordListResource)) {
 
+      final List<String> compiled = Compiled.LISTS.get(wordListResource);
+      if (compiled != null) {
+        compiled.forEach(this::add);
+        return;
+      }
+
       final Class<?> stopWordsClass = getClass();
 
       try (final InputStream in = stopWordsClass.getResourceAsStream("/" + wordListResource);
            final InputStreamReader inr = new InputStreamReader(in, Charset.forName("UTF-8"))) {
 
-        final List<String> lines = CharStreams.readLines(inr);
-        final Iterator<String> iterator = lines.iterator();
-        String line;
-
-        while (iterator.hasNext()) {
-          line = iterator.next();
-          line = line.replaceAll("\\|.*", "").trim();
-
-          if (line.length() == 0) {
-            continue;
-          }
-
-          for (final String w : line.split("\\s+")) {
-            add(w);
-          }
-        }
+        readWordList(inr).forEach(this::add);
 
       } catch (IOException e) {
         throw new RuntimeException(e);
@@ -0,0 +1,272 @@
+package com.vesperin.text.spelling;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Symmetric delete (a la SymSpell) index over a dictionary. Each dictionary
+ * word is indexed under every string obtained by deleting up to
+ * {@link #MAX_DELETES} of its chars (including none). Since a word w is at most
+ * {@link #MAX_DELETES} edits (deletes, inserts, replaces or adjacent transposes)
+ * away from a dictionary word only if both share one of those strings,
+ * {@link #candidates(String)} finds every such dictionary word by probing the
+ * index once per delete of w; i.e., without enumerating all edits of w.
+ *
+ * <p>Strings are indexed by their hash, so candidates are a superset of the
+ * dictionary words within {@link #MAX_DELETES} edits: callers must verify them.
+ * Postings are kept in primitive arrays, addressed by an open addressing table.
+ *
+ * @author Huascar Sanchez
+ */
+final class SymmetricDeleteIndex {
+  static final int MAX_DELETES = 2;
+
+  private final String[]  words;        // by frequency, descending
+  private final int[]     frequencies;
+
+  private final int[]     keys;         // distinct hashes
+  private final int[]     offsets;      // postings of keys[k] are ids[offsets[k]..offsets[k + 1])
+  private final int[]     ids;
+  private final int[]     table;        // open addressing; slot -> key index + 1; 0 if empty
+
+  SymmetricDeleteIndex(SortedMap<String, Integer> dictionary){
+    final int size = dictionary.size();
+
+    this.words       = new String[size];
+    this.frequencies = new int[size];
+
+    // frequent words get smaller ids, so candidates come out sorted by frequency
+    final Map.Entry<?, ?>[] entries = dictionary.entrySet().toArray(new Map.Entry<?, ?>[size]);
+    Arrays.sort(entries, (a, b) -> Integer.compare((Integer) b.getValue(), (Integer) a.getValue()));
+    for (int id = 0; id < size; id++) {
+      words[id]       = (String) entries[id].getKey();
+      frequencies[id] = (Integer) entries[id].getValue();
+    }
+
+    final LongBuffer pairs = new LongBuffer(size * 16);
+    for (int id = 0; id < size; id++) {
+      final long word = id;
+      forEachVariant(words[id], h -> pairs.add(((long) h << 32) | word));
+    }
+
+    final long[] sorted = pairs.toSortedArray();
+
+    int distinctKeys = 0;
+    int postings     = 0;
+    for (int p = 0; p < sorted.length; p++) {
+      if(p > 0 && sorted[p] == sorted[p - 1]) continue;
+      if(p == 0 || (sorted[p] >>> 32) != (sorted[p - 1] >>> 32)) distinctKeys++;
+      postings++;
+    }
+
+    this.keys    = new int[distinctKeys];
+    this.offsets = new int[distinctKeys + 1];
+    this.ids     = new int[postings];
+
+    int k = -1; int q = 0;
+    for (int p = 0; p < sorted.length; p++) {
+      if(p > 0 && sorted[p] == sorted[p - 1]) continue;
+      if(p == 0 || (sorted[p] >>> 32) != (sorted[p - 1] >>> 32)){
+        keys[++k]  = (int) (sorted[p] >>> 32);
+        offsets[k] = q;
+      }
+
+      ids[q++] = (int) sorted[p];
+    }
+
+    offsets[distinctKeys] = q;
+
+    this.table = new int[Integer.highestOneBit(Math.max(1, distinctKeys)) << 2];
+    for (int key = 0; key < distinctKeys; key++) {
+      int slot = mix(keys[key]) & (table.length - 1);
+      while(table[slot] != 0) slot = (slot + 1) & (table.length - 1);
+
+      table[slot] = key + 1;
+    }
+  }
+
+  private SymmetricDeleteIndex(String[] words, int[] frequencies, int[] keys, int[] offsets, int[] ids, int[] table){
+    this.words        = words;
+    this.frequencies  = frequencies;
+    this.keys         = keys;
+    this.offsets      = offsets;
+    this.ids          = ids;
+    this.table        = table;
+  }
+
+  /**
+   * Writes this index's arrays; see {@link #readFrom(ByteBuffer)}.
+   *
+   * @param out output stream
+   * @throws IOException if this index cannot be written.
+   */
+  void writeTo(DataOutputStream out) throws IOException {
+    CompiledResources.writeStrings(out, Arrays.asList(words));
+    CompiledResources.writeInts(out, frequencies);
+    CompiledResources.writeInts(out, keys);
+    CompiledResources.writeInts(out, offsets);
+    CompiledResources.writeInts(out, ids);
+    CompiledResources.writeInts(out, table);
+  }
+
+  /**
+   * Reads an index written by {@link #writeTo(DataOutputStream)}.
+   *
+   * @param in content
+   * @return a new SymmetricDeleteIndex object.
+   */
+  static SymmetricDeleteIndex readFrom(ByteBuffer in){
+    return new SymmetricDeleteIndex(
+      CompiledResources.readStrings(in).toArray(new String[0]),
+      CompiledResources.readInts(in),
+      CompiledResources.readInts(in),
+      CompiledResources.readInts(in),
+      CompiledResources.readInts(in),
+      CompiledResources.readInts(in)
+    );
+  }
+
+  /**
+   * @return number of indexed words.
+   */
+  int size(){
+    return words.length;
+  }
+
+  /**
+   * @param id word id
+   * @return the word with the given id
+   */
+  String word(int id){
+    return words[id];
+  }
+
+  /**
+   * @param id word id
+   * @return the frequency of the word with the given id
+   */
+  int frequency(int id){
+    return frequencies[id];
+  }
+
+  /**
+   * Finds the dictionary words that share a (possibly hashed) delete
+   * variant with the given word.
+   *
+   * @param word word to look up
+   * @return candidate word ids, ordered by frequency (most frequent first).
+   */
+  int[] candidates(String word){
+    final IntBuffer result = new IntBuffer(64);
+    forEachVariant(word, h -> {
+      final int key = find(h);
+      if(key < 0) return;
+
+      for (int p = offsets[key]; p < offsets[key + 1]; p++) {
+        result.add(ids[p]);
+      }
+    });
+
+    return result.toDistinctSortedArray();
+  }
+
+  private int find(int hash){
+    int slot = mix(hash) & (table.length - 1);
+    while(table[slot] != 0){
+      final int key = table[slot] - 1;
+      if(keys[key] == hash) return key;
+
+      slot = (slot + 1) & (table.length - 1);
+    }
+
+    return -1;
+  }
+
+  /**
+   * Hashes (as {@link String#hashCode()} would) every string obtained by
+   * deleting up to two (i.e., {@link #MAX_DELETES}) chars of the given word,
+   * without creating those strings. Duplicates are not filtered.
+   */
+  static void forEachVariant(String word, IntConsumer hashes){
+    final int n = word.length();
+
+    hashes.accept(word.hashCode());
+
+    for (int i = 0; i < n; i++) {
+      hashes.accept(hashWithout(word, i, -1));
+
+      for (int j = i + 1; j < n; j++) {
+        hashes.accept(hashWithout(word, i, j));
+      }
+    }
+  }
+
+  private static int hashWithout(String word, int i, int j){
+    int h = 0;
+    for (int p = 0; p < word.length(); p++) {
+      if(p == i || p == j) continue;
+      h = 31 * h + word.charAt(p);
+    }
+
+    return h;
+  }
+
+  private static int mix(int h){
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  private static class LongBuffer {
+    long[] data;
+    int    size;
+
+    LongBuffer(int capacity){
+      this.data = new long[Math.max(16, capacity)];
+      this.size = 0;
+    }
+
+    void add(long value){
+      if(size == data.length) data = Arrays.copyOf(data, data.length * 2);
+      data[size++] = value;
+    }
+
+    long[] toSortedArray(){
+      final long[] result = Arrays.copyOf(data, size);
+      Arrays.sort(result);
+      return result;
+    }
+  }
+
+  private static class IntBuffer {
+    int[] data;
+    int   size;
+
+    IntBuffer(int capacity){
+      this.data = new int[capacity];
+      this.size = 0;
+    }
+
+    void add(int value){
+      if(size == data.length) data = Arrays.copyOf(data, data.length * 2);
+      data[size++] = value;
+    }
+
+    int[] toDistinctSortedArray(){
+      Arrays.sort(data, 0, size);
+
+      int distinct = 0;
+      for (int p = 0; p < size; p++) {
+        if(p == 0 || data[p] != data[p - 1]) data[distinct++] = data[p];
+      }
+
+      return Arrays.copyOf(data, distinct);
+    }
+  }
+}
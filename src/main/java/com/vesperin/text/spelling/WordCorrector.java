@@ -1,49 +1,55 @@
 package com.vesperin.text.spelling;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.vesperin.text.utils.Similarity;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.google.common.primitives.Floats.compare;
-import static com.vesperin.text.spelling.Corrector.endsWithNumbers;
-import static com.vesperin.text.spelling.Corrector.isNumber;
-import static com.vesperin.text.spelling.Corrector.startsWithNumbers;
-import static com.vesperin.text.spelling.Corrector.trimLeft;
-import static com.vesperin.text.spelling.Corrector.trimRight;
 
 /**
+ * Corrects misspelled words. Corrections are a pure function of a word,
+ * an accuracy and the dictionary; hence, the corrections of misspelled words are
+ * kept in a bounded, thread-safe cache (see {@link #correctionStats()}), including
+ * the words with no better correction than themselves.
+ *
  * @author Huascar Sanchez
  */
 public enum WordCorrector implements Corrector {
-  INSTANCE(loadFile());
+  INSTANCE(SpellingDictionary.load());
 
-  private static final String CAMEL_CASE = "((?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z]))|_";
+  private static final long MAX_CACHED_CORRECTIONS = 50_000;
 
-  private SortedMap<String,Integer> dictionary;
+  private WordTrie             dictionary;
+  private SymmetricDeleteIndex edits;
 
-  WordCorrector(Path index){
-    this.dictionary = new TreeMap<>();
+  private final LoadingCache<Key, String> corrections;
 
-    try {
-      populateDictionary(index, this.dictionary);
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to populate dictionary!");
-    }
+  WordCorrector(SpellingDictionary dictionary){
+    this.dictionary = dictionary.words;
+    this.edits      = dictionary.edits;
+
+    this.corrections = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_CORRECTIONS)
+      .recordStats()
+      .build(new CacheLoader<Key, String>() {
+        @Override public String load(Key key) throws Exception {
+          return compute(key.word, key.accuracy);
+        }
+      });
   }
 
 
@@ -69,21 +75,52 @@ public enum WordCorrector implements Corrector {
     return Similarity.similarityScore(word, suggestion);
   }
 
+  /**
+   * @see Similarity#similarityScore(String, String, float)
+   */
+  public static float similarity(String word, String suggestion, float minScore){
+    return Similarity.similarityScore(word, suggestion, minScore);
+  }
+
   @Override public String correct(String word, float accuracy) {
+    // dictionary words are their own corrections; no need to cache them
+    if(contains(word)) return word;
+
+    try {
+      return corrections.getUnchecked(new Key(word, accuracy));
+    } catch (UncheckedExecutionException e){
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * @return the statistics of the corrections cache; e.g., its hit,
+   *  miss and eviction counts.
+   */
+  public CacheStats correctionStats(){
+    return corrections.stats();
+  }
+
+  /**
+   * @return number of cached corrections.
+   */
+  public long cachedCorrections(){
+    return corrections.size();
+  }
+
+  private String compute(String word, float accuracy) {
 
     if(contains(word)) { return word; } else {
       if(onlyConsonantsOrVowels(word)) {
 
         // Make some edits
-        final Optional<String> e1 = max(captureThoseInDictionary(mutate(word)));
-        final Optional<String> e2 = max(captureThoseInDictionary(mutate(word)
-          .map(this::mutate).flatMap((x)->x))
-        );
+        final Optional<String> e1 = mostFrequentEdit(word, 1);
+        final Optional<String> e2 = mostFrequentEdit(word, 2);
 
         // Use prefixes (like a Trie)
-        Optional<String> e3 = max(getPrefixedBy(word, dictionary).stream());
+        Optional<String> e3 = dictionary.bestCompletion(word);
         if(!e3.isPresent()){
-          e3 = max(getPrefixedBy(word.substring(0, word.length() - 1), dictionary).stream());
+          e3 = dictionary.bestCompletion(word.substring(0, word.length() - 1));
         }
 
         final Set<String> winners = new HashSet<>();
@@ -99,10 +136,10 @@ public enum WordCorrector implements Corrector {
 
         return word;
       } else {
-        Optional<String> e0 = max(getPrefixedBy(word, dictionary).stream());
+        Optional<String> e0 = dictionary.bestCompletion(word);
 
         if(!e0.isPresent()){
-          e0 = max(getPrefixedBy(word.substring(0, word.length() - 1), dictionary).stream());
+          e0 = dictionary.bestCompletion(word.substring(0, word.length() - 1));
         }
 
         if(e0.isPresent()) return e0.get();
@@ -113,45 +150,142 @@ public enum WordCorrector implements Corrector {
   }
 
 
-  private Stream<String> captureThoseInDictionary(Stream<String> words){
-    return words.filter(this::contains);
-  }
+  /**
+   * Finds the most frequent dictionary word among the words produced by one
+   * (or two chained) {@link #mutate(String)} calls on the given word; equally
+   * frequent words are ordered as {@link #mutate(String)} produces them. Only
+   * the dictionary words sharing a delete variant with the given word (see
+   * {@link SymmetricDeleteIndex}) are examined, and they are checked without
+   * enumerating the word's edits.
+   *
+   * @param word misspelled word
+   * @param times number of chained mutations; 1 or 2.
+   * @return the best dictionary word, if any.
+   */
+  private Optional<String> mostFrequentEdit(String word, int times){
+    List<String> mutations = null;
 
-  public static boolean containsWord(String word){
-    return WordCorrector.getInstance().contains(word);
+    String  best          = null;
+    long    bestPosition  = Long.MAX_VALUE;
+    int     bestFrequency = 0;
+
+    for(int id : edits.candidates(word)){ // most frequent first
+      final int frequency = edits.frequency(id);
+      if(best != null && frequency < bestFrequency) break;
+
+      final String candidate = edits.word(id);
+
+      final long position;
+      if(times == 1){
+        position = mutationIndex(word, candidate);
+      } else {
+        if(mutations == null) mutations = mutate(word).collect(Collectors.toList());
+        position = mutationIndex(mutations, candidate);
+      }
+
+      if(position >= 0 && position < bestPosition){
+        best          = candidate;
+        bestPosition  = position;
+        bestFrequency = frequency;
+      }
+    }
+
+    return Optional.ofNullable(best);
   }
 
-  private boolean contains(String word){
-    return dictionary.containsKey(word);
+  /**
+   * @return the index of the first occurrence of target in
+   *  {@code mutations.map(this::mutate).flatMap(x -> x)}; -1 if absent.
+   */
+  private static long mutationIndex(List<String> mutations, String target){
+    for (int i = 0; i < mutations.size(); i++) {
+      final String mutation = mutations.get(i);
+      if(Math.abs(mutation.length() - target.length()) > 1) continue;
+
+      final int index = mutationIndex(mutation, target);
+      if(index >= 0) return ((long) i << 32) | index;
+    }
+
+    return -1;
   }
 
-  private static <V> SortedMap<String, V> filterPrefix(SortedMap<String,V> baseMap, String prefix) {
-    if(prefix.length() > 0) {
-      char nextLetter = (char)(prefix.charAt(prefix.length() - 1) + 1);
-      String end = prefix.substring(0, prefix.length() - 1) + nextLetter;
-      return baseMap.subMap(prefix, end);
+  /**
+   * @return the index of the first occurrence of target in {@code mutate(word)};
+   *  -1 if absent. The index is computed from where target and word differ,
+   *  following the order of {@link #mutate(String)}: deletes, replaces, inserts,
+   *  and then transposes.
+   */
+  static int mutationIndex(String word, String target){
+    final int n = word.length();
+    final int m = target.length();
+
+    if(Math.abs(n - m) > 1) return -1;
+
+    int prefix = 0; while(prefix < Math.min(n, m) && word.charAt(prefix) == target.charAt(prefix)) prefix++;
+    int suffix = 0; while(suffix < Math.min(n, m) && word.charAt(n - 1 - suffix) == target.charAt(m - 1 - suffix)) suffix++;
+
+    if(m == n - 1){
+      // deletes: target == word without word[i]
+      final int i = Math.max(0, n - 1 - suffix);
+      return i <= prefix ? i : -1;
+    }
+
+    if(m == n + 1){
+      // inserts: target == word with target[i] inserted at i
+      for (int i = Math.max(0, n - suffix); i <= Math.min(prefix, n); i++) {
+        if(isLetter(target.charAt(i))) return n + 26 * n + 26 * i + (target.charAt(i) - 'a');
+      }
+
+      return -1;
+    }
+
+    if(prefix == n){
+      // replaces a letter with itself, or transposes two equal chars
+      for (int i = 0; i < n; i++) {
+        if(isLetter(word.charAt(i))) return n + 26 * i + (word.charAt(i) - 'a');
+      }
+
+      for (int i = 0; i < n - 1; i++) {
+        if(word.charAt(i) == word.charAt(i + 1)) return n + 26 * n + 26 * (n + 1) + i;
+      }
+
+      return -1;
+    }
+
+    if(prefix + suffix == n - 1 && isLetter(target.charAt(prefix))){
+      return n + 26 * prefix + (target.charAt(prefix) - 'a');
+    }
+
+    if(prefix + suffix == n - 2
+      && target.charAt(prefix) == word.charAt(prefix + 1)
+      && target.charAt(prefix + 1) == word.charAt(prefix)){
+
+      return n + 26 * n + 26 * (n + 1) + prefix;
     }
-    return baseMap;
+
+    return -1;
   }
 
-  private static <V> Set<String> getPrefixedBy(String word, SortedMap<String, V> baseMap){
-    return filterPrefix(baseMap, word).keySet();
+  private static boolean isLetter(char c){
+    return c >= 'a' && c <= 'z';
   }
 
-  private static Path loadFile(){
-    try {
-      return Paths.get((Corrector.class.getResource("/big.txt").toURI()));
-    } catch (Exception e){
-      return null;
-    }
+  /**
+   * @return a copy of the dictionary; word to frequency.
+   */
+  SortedMap<String, Integer> dictionary(){
+    return dictionary.toSortedMap();
   }
 
+  public static boolean containsWord(String word){
+    return WordCorrector.getInstance().contains(word);
+  }
 
-  private Optional<String> max(Stream<String> stream){
-    return stream.max((a, b) -> dictionary.get(a) - dictionary.get(b));
+  private boolean contains(String word){
+    return dictionary.contains(word);
   }
 
-  private Stream<String> mutate(final String word){
+  Stream<String> mutate(final String word){
     final Stream<String> deletes    = IntStream.range(0, word.length())
       .mapToObj((i) -> word.substring(0, i) + word.substring(i + 1));
 
@@ -173,43 +307,26 @@ public enum WordCorrector implements Corrector {
     return Stream.of( deletes,replaces,inserts,transposes ).flatMap((x)->x);
   }
 
+  private static class Key {
+    final String  word;
+    final float   accuracy;
 
-  private static void populateDictionary(Path dictionaryFile, SortedMap<String, Integer> dict) throws
-    IOException {
-    Objects.requireNonNull(dict);
-    Objects.requireNonNull(dictionaryFile);
-
-    final List<String> lines = Files.readAllLines(dictionaryFile);
-
-    Pattern p = Pattern.compile("\\w+");
-    for(String line : lines){
-      final Matcher m = p.matcher(line);
-
-      while(m.find()) {
-
-        final String[] words = m.group().split(CAMEL_CASE);
-
-        for(String each : words){
-          if(each.length() <= 2)            continue;
-          if(onlyConsonantsOrVowels(each))  continue;
-          if(isNumber(each))                continue;
+    Key(String word, float accuracy){
+      this.word     = Objects.requireNonNull(word);
+      this.accuracy = accuracy;
+    }
 
-          String updatedEach;
-          if(startsWithNumbers(each) || endsWithNumbers(each)) {
-            updatedEach = trimRight(trimLeft(each))
-              .toLowerCase(Locale.ENGLISH);
-          } else {
-            updatedEach = each.toLowerCase(Locale.ENGLISH);
-          }
+    @Override public boolean equals(Object o) {
+      if(this == o) return true;
+      if(!(o instanceof Key)) return false;
 
-          dict.put(
-            updatedEach,
-            // increase frequency
-            (dict.containsKey(updatedEach) ? dict.get(updatedEach) + 1 : 1)
-          );
+      final Key other = (Key) o;
+      return Float.compare(accuracy, other.accuracy) == 0
+        && word.equals(other.word);
+    }
 
-        }
-      }
+    @Override public int hashCode() {
+      return 31 * word.hashCode() + Float.hashCode(accuracy);
     }
   }
 }
@@ -0,0 +1,247 @@
+package com.vesperin.text.spelling;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Array-backed trie over a dictionary (word to frequency). Nodes are laid out
+ * in breadth-first order, so the children of a node are contiguous (and sorted
+ * by label); words are not stored as strings, but as paths from the root. Each
+ * node knows its best completion; i.e., the most frequent word starting with
+ * the node's prefix (the lexicographically smallest one, if tied). Hence,
+ * {@link #bestCompletion(String)} is a single walk over the prefix.
+ *
+ * @author Huascar Sanchez
+ */
+final class WordTrie {
+  private final char[]  labels;       // by node; the root (node 0) has no label
+  private final int[]   children;     // children of node i are [children[i], children[i + 1])
+  private final int[]   parents;
+  private final int[]   frequencies;  // 0 if no word ends at a node
+  private final int[]   best;         // node where the best completion of a node ends
+  private final int     size;
+
+  private WordTrie(char[] labels, int[] children, int[] parents, int[] frequencies, int[] best, int size){
+    this.labels       = labels;
+    this.children     = children;
+    this.parents      = parents;
+    this.frequencies  = frequencies;
+    this.best         = best;
+    this.size         = size;
+  }
+
+  /**
+   * Creates a trie over a dictionary.
+   *
+   * @param dictionary words and their (positive) frequencies
+   * @return a new WordTrie object.
+   */
+  static WordTrie of(SortedMap<String, Integer> dictionary){
+    final int       size   = dictionary.size();
+    final String[]  words  = new String[size];
+    final int[]     counts = new int[size];
+
+    int chars = 0; int w = 0;
+    for(Map.Entry<String, Integer> each : dictionary.entrySet()){
+      if(each.getValue() <= 0) throw new IllegalArgumentException("Non positive frequency: " + each);
+
+      words[w]  = each.getKey();
+      counts[w] = each.getValue();
+      chars    += words[w].length();
+      w++;
+    }
+
+    // there is at most one node per char, plus the root
+    final int capacity = chars + 1;
+
+    final char[]  labels      = new char[capacity];
+    final int[]   children    = new int[capacity + 1];
+    final int[]   parents     = new int[capacity];
+    final int[]   frequencies = new int[capacity];
+    final int[]   from        = new int[capacity];  // range of words sharing a node's prefix
+    final int[]   to          = new int[capacity];
+    final int[]   depths      = new int[capacity];
+
+    parents[0]  = -1;
+    from[0]     = 0;
+    to[0]       = size;
+
+    int nodes = 1;
+    for (int node = 0; node < nodes; node++) {
+      final int depth = depths[node];
+
+      int lo = from[node];
+      if(lo < to[node] && words[lo].length() == depth){
+        // sorted words: the node's prefix (if a word) comes first
+        frequencies[node] = counts[lo++];
+      }
+
+      children[node] = nodes;
+      while(lo < to[node]){
+        final char label = words[lo].charAt(depth);
+
+        int hi = lo + 1; while(hi < to[node] && words[hi].charAt(depth) == label) hi++;
+
+        labels[nodes]   = label;
+        parents[nodes]  = node;
+        depths[nodes]   = depth + 1;
+        from[nodes]     = lo;
+        to[nodes]       = hi;
+        nodes++;
+
+        lo = hi;
+      }
+    }
+
+    children[nodes] = nodes;
+
+    // children come after their parents, so best completions are computed bottom up
+    final int[] best = new int[nodes];
+    for (int node = nodes - 1; node >= 0; node--) {
+      best[node] = frequencies[node] > 0 ? node : -1;
+
+      for (int child = children[node]; child < children[node + 1]; child++) {
+        final int candidate = best[child];
+        if(best[node] < 0 || frequencies[candidate] > frequencies[best[node]]){
+          best[node] = candidate;
+        }
+      }
+    }
+
+    return new WordTrie(
+      Arrays.copyOf(labels, nodes),
+      Arrays.copyOf(children, nodes + 1),
+      Arrays.copyOf(parents, nodes),
+      Arrays.copyOf(frequencies, nodes),
+      best,
+      size
+    );
+  }
+
+  /**
+   * Writes this trie's arrays; see {@link #readFrom(ByteBuffer)}.
+   *
+   * @param out output stream
+   * @throws IOException if this trie cannot be written.
+   */
+  void writeTo(DataOutputStream out) throws IOException {
+    out.writeInt(size);
+    CompiledResources.writeChars(out, labels);
+    CompiledResources.writeInts(out, children);
+    CompiledResources.writeInts(out, parents);
+    CompiledResources.writeInts(out, frequencies);
+    CompiledResources.writeInts(out, best);
+  }
+
+  /**
+   * Reads a trie written by {@link #writeTo(DataOutputStream)}.
+   *
+   * @param in content
+   * @return a new WordTrie object.
+   */
+  static WordTrie readFrom(ByteBuffer in){
+    final int size = in.getInt();
+    return new WordTrie(
+      CompiledResources.readChars(in),
+      CompiledResources.readInts(in),
+      CompiledResources.readInts(in),
+      CompiledResources.readInts(in),
+      CompiledResources.readInts(in),
+      size
+    );
+  }
+
+  /**
+   * @return number of words in this trie.
+   */
+  int size(){
+    return size;
+  }
+
+  /**
+   * @param word word to look up
+   * @return true if the word is in this trie.
+   */
+  boolean contains(String word){
+    return frequency(word) > 0;
+  }
+
+  /**
+   * @param word word to look up
+   * @return the word's frequency; 0 if the word is not in this trie.
+   */
+  int frequency(String word){
+    final int node = find(word);
+    return node < 0 ? 0 : frequencies[node];
+  }
+
+  /**
+   * Finds the most frequent word starting with the given prefix; i.e., the
+   * word {@code max} would pick from the words prefixed by the given prefix,
+   * in lexicographic order, when comparing them by frequency.
+   *
+   * @param prefix word prefix; the empty prefix prefixes every word.
+   * @return the best completion of the prefix, if any.
+   */
+  Optional<String> bestCompletion(String prefix){
+    final int node = find(prefix);
+    if(node < 0 || best[node] < 0) return Optional.empty();
+
+    return Optional.of(wordAt(best[node]));
+  }
+
+  /**
+   * @return a new sorted map, containing every word in this trie
+   *  and its frequency.
+   */
+  SortedMap<String, Integer> toSortedMap(){
+    final SortedMap<String, Integer> result = new TreeMap<>();
+    for (int node = 0; node < frequencies.length; node++) {
+      if(frequencies[node] > 0) result.put(wordAt(node), frequencies[node]);
+    }
+
+    return result;
+  }
+
+  private int find(String prefix){
+    int node = 0;
+    for (int i = 0; i < prefix.length() && node >= 0; i++) {
+      node = child(node, prefix.charAt(i));
+    }
+
+    return node;
+  }
+
+  private int child(int node, char label){
+    int lo = children[node];
+    int hi = children[node + 1] - 1;
+
+    while(lo <= hi){
+      final int mid = (lo + hi) >>> 1;
+      if(labels[mid] < label){
+        lo = mid + 1;
+      } else if(labels[mid] > label){
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+
+    return -1;
+  }
+
+  private String wordAt(int node){
+    final StringBuilder word = new StringBuilder();
+    for (int each = node; each > 0; each = parents[each]) {
+      word.append(labels[each]);
+    }
+
+    return word.reverse().toString();
+  }
+}
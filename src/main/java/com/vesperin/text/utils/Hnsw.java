@@ -0,0 +1,582 @@
+package com.vesperin.text.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Approximate nearest neighbour index over unit length vectors, using a
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin). Similarity
+ * is the dot product; i.e., cosine similarity for unit length vectors.
+ *
+ * <p>Every vector is a node in layer 0 of the graph; exponentially fewer
+ * nodes are also in higher layers. A search greedily descends the layers from
+ * a single entry point, and then runs a beam search of width {@code ef} in
+ * layer 0. Larger {@code ef} values trade latency for recall.
+ *
+ * <p>Nodes can be added (or re-linked, if their vectors changed) and deleted
+ * after the graph is built. Deleted nodes are not returned by searches, but
+ * they stay in the graph so that it remains navigable. Updates must not run
+ * concurrently with searches.
+ *
+ * <p>Vectors are not stored by this graph's serialized form; they are owned by
+ * the caller and must be handed back when reading the graph.
+ *
+ * @author Huascar Sanchez
+ */
+public final class Hnsw {
+  public static final int DEFAULT_M               = 16;
+  public static final int DEFAULT_EF_CONSTRUCTION = 100;
+  public static final int DEFAULT_EF              = 50;
+
+  private static final long SEED = 0x5EEDL;
+
+  private final int         m;
+  private final int         efConstruction;
+  private final BitSet      deleted;
+  private final Random      random;
+
+  private float[][]   vectors;  // null entries are not in the graph
+  private int[]       levels;
+  private int[][][]   links;    // [node][level] -> neighbor ids
+  private int[][]     counts;   // [node][level] -> number of neighbors
+  private Object[]    locks;
+
+  private int entryPoint;
+  private int maxLevel;
+
+  private Hnsw(float[][] vectors, int m, int efConstruction, int[] levels){
+    this.vectors        = vectors;
+    this.m              = m;
+    this.efConstruction = efConstruction;
+    this.levels         = levels;
+    this.links          = new int[vectors.length][][];
+    this.counts         = new int[vectors.length][];
+    this.locks          = new Object[vectors.length];
+    this.deleted        = new BitSet();
+    this.random         = new Random(SEED + vectors.length);
+    this.entryPoint     = -1;
+    this.maxLevel       = -1;
+
+    for (int node = 0; node < vectors.length; node++) {
+      if(vectors[node] != null) allocate(node);
+    }
+  }
+
+  /**
+   * Builds a graph using default parameters.
+   *
+   * @param vectors unit length vectors; null vectors are skipped.
+   * @return a new Hnsw graph.
+   */
+  public static Hnsw build(float[][] vectors){
+    return build(vectors, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, true);
+  }
+
+  /**
+   * Builds a graph.
+   *
+   * @param vectors unit length vectors, indexed by id; null vectors are skipped.
+   * @param m number of neighbors per node (twice as many in layer 0).
+   * @param efConstruction beam width used while inserting nodes.
+   * @param parallel true if nodes should be inserted concurrently.
+   * @return a new Hnsw graph.
+   */
+  public static Hnsw build(float[][] vectors, int m, int efConstruction, boolean parallel){
+    if(m < 2)               throw new IllegalArgumentException("m must be at least 2");
+    if(efConstruction < 1)  throw new IllegalArgumentException("invalid efConstruction");
+
+    final Random  random  = new Random(SEED);
+    final int[]   levels  = new int[vectors.length];
+    for (int node = 0; node < vectors.length; node++) {
+      levels[node] = level(random, m);
+    }
+
+    final Hnsw graph = new Hnsw(vectors, m, efConstruction, levels);
+
+    final int[] nodes = IntStream.range(0, vectors.length)
+      .filter(node -> vectors[node] != null).toArray();
+
+    if(nodes.length == 0) return graph;
+
+    graph.entryPoint = nodes[0];
+    graph.maxLevel   = levels[nodes[0]];
+
+    final IntStream inserts = Arrays.stream(nodes, 1, nodes.length);
+    (parallel ? inserts.parallel() : inserts).forEach(graph::insert);
+
+    return graph;
+  }
+
+  /**
+   * Adds a node to this graph, or re-links a node whose vector changed (its
+   * level and the links pointing to it are kept). A deleted node is
+   * added back.
+   *
+   * @param node node id; the graph grows as needed.
+   * @param vector the node's unit length vector.
+   */
+  public synchronized void put(int node, float[] vector){
+    if(node < 0) throw new IllegalArgumentException("Invalid node " + node);
+
+    grow(node + 1);
+    deleted.clear(node);
+    vectors[node] = vector;
+
+    if(links[node] == null){
+      levels[node] = level(random, m);
+      allocate(node);
+
+      if(entryPoint < 0){
+        entryPoint = node;
+        maxLevel   = levels[node];
+        return;
+      }
+    }
+
+    insert(node);
+  }
+
+  /**
+   * Deletes a node from this graph. The node is no longer returned by
+   * searches, but it still links its neighbors together.
+   *
+   * @param node node id
+   */
+  public synchronized void delete(int node){
+    if(node >= 0 && node < links.length && links[node] != null) deleted.set(node);
+  }
+
+  /**
+   * Finds (approximately) the k vectors most similar to a query vector.
+   *
+   * @param query unit length query vector
+   * @param k max number of hits
+   * @param ef beam width; values below k are raised to k.
+   * @return the (approximate) top k hits.
+   */
+  public TopK search(float[] query, int k, int ef){
+    final TopK result = new TopK(k);
+    if(entryPoint < 0 || k == 0) return result;
+
+    int     ep    = entryPoint;
+    double  epSim = similarity(query, vectors[ep]);
+    for (int l = maxLevel; l > 0; l--) {
+      final long best = greedy(query, ep, epSim, l);
+      ep    = (int) (best >>> 32);
+      epSim = Float.intBitsToFloat((int) best);
+    }
+
+    final Heap found = searchLayer(query, ep, Math.max(ef, k), 0);
+    for (int p = 0; p < found.size; p++) {
+      if(deleted.get(found.ids[p])) continue;
+
+      result.offer(found.ids[p], -found.keys[p]);
+    }
+
+    return result;
+  }
+
+  /**
+   * @return number of (not deleted) nodes in this graph.
+   */
+  public int size(){
+    int size = 0; for (int node = 0; node < vectors.length; node++){
+      if(vectors[node] != null && !deleted.get(node)) size++;
+    }
+
+    return size;
+  }
+
+  /**
+   * Writes this graph's structure (not its vectors).
+   *
+   * @param out output stream
+   * @throws IOException if unable to write the graph.
+   */
+  public void write(DataOutputStream out) throws IOException {
+    // spare capacity is not written
+    int length = links.length;
+    while(length > 0 && links[length - 1] == null) length--;
+
+    out.writeInt(length);
+    out.writeInt(m);
+    out.writeInt(efConstruction);
+    out.writeInt(entryPoint);
+    out.writeInt(maxLevel);
+
+    for (int node = 0; node < length; node++) {
+      out.writeInt(links[node] == null ? -1 : levels[node]);
+      if(links[node] == null) continue;
+
+      out.writeBoolean(deleted.get(node));
+
+      for (int l = 0; l <= levels[node]; l++) {
+        out.writeInt(counts[node][l]);
+        for (int p = 0; p < counts[node][l]; p++) {
+          out.writeInt(links[node][l][p]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a graph written by {@link #write(DataOutputStream)}.
+   *
+   * @param in input buffer
+   * @param vectors the graph's vectors (deleted nodes included), indexed by id;
+   *    there might be more vectors than nodes.
+   * @return a new Hnsw graph.
+   * @throws IOException if the vectors do not match the graph.
+   */
+  public static Hnsw read(ByteBuffer in, float[][] vectors) throws IOException {
+    final int size            = in.getInt();
+    final int m               = in.getInt();
+    final int efConstruction  = in.getInt();
+    final int entryPoint      = in.getInt();
+    final int maxLevel        = in.getInt();
+
+    if(size > vectors.length) throw new IOException("Graph does not match its vectors");
+
+    final int[]     levels  = new int[vectors.length];
+    final float[][] present = new float[vectors.length][];
+    final int[][][] stored  = new int[size][][];
+    final BitSet    removed = new BitSet();
+    for (int node = 0; node < size; node++) {
+      levels[node] = in.getInt();
+      if(levels[node] < 0) continue;
+
+      if(vectors[node] == null) throw new IOException("Graph does not match its vectors");
+
+      present[node] = vectors[node];
+      if(in.get() != 0) removed.set(node);
+
+      stored[node] = new int[levels[node] + 1][];
+      for (int l = 0; l <= levels[node]; l++) {
+        stored[node][l] = new int[in.getInt()];
+        in.asIntBuffer().get(stored[node][l]);
+        in.position(in.position() + stored[node][l].length * 4);
+      }
+    }
+
+    final Hnsw graph = new Hnsw(present, m, efConstruction, levels);
+    for (int node = 0; node < size; node++) {
+      if(stored[node] == null) continue;
+
+      for (int l = 0; l <= levels[node]; l++) {
+        System.arraycopy(stored[node][l], 0, graph.links[node][l], 0, stored[node][l].length);
+        graph.counts[node][l] = stored[node][l].length;
+      }
+    }
+
+    graph.deleted.or(removed);
+    graph.entryPoint = entryPoint;
+    graph.maxLevel   = maxLevel;
+
+    return graph;
+  }
+
+  private static int level(Random random, int m){
+    return (int) Math.floor(-Math.log(1.0D - random.nextDouble()) / Math.log(m));
+  }
+
+  private int maxLinks(int level){
+    return level == 0 ? 2 * m : m;
+  }
+
+  private void allocate(int node){
+    links[node]   = new int[levels[node] + 1][];
+    counts[node]  = new int[levels[node] + 1];
+    locks[node]   = new Object();
+
+    for (int l = 0; l <= levels[node]; l++) {
+      links[node][l] = new int[maxLinks(l) + 1];
+    }
+  }
+
+  private void grow(int size){
+    if(size <= vectors.length) return;
+
+    final int capacity = Math.max(size, vectors.length * 3 / 2);
+    vectors = Arrays.copyOf(vectors, capacity);
+    levels  = Arrays.copyOf(levels, capacity);
+    links   = Arrays.copyOf(links, capacity);
+    counts  = Arrays.copyOf(counts, capacity);
+    locks   = Arrays.copyOf(locks, capacity);
+  }
+
+  private void insert(int node){
+    final float[] query = vectors[node];
+    final int     level = levels[node];
+
+    int ep; int top;
+    synchronized (this) {
+      ep  = entryPoint;
+      top = maxLevel;
+    }
+
+    double epSim = similarity(query, vectors[ep]);
+    for (int l = top; l > level; l--) {
+      final long best = greedy(query, ep, epSim, l);
+      ep    = (int) (best >>> 32);
+      epSim = Float.intBitsToFloat((int) best);
+    }
+
+    for (int l = Math.min(top, level); l >= 0; l--) {
+      // a re-linked node can find itself
+      final Heap  found     = searchLayer(query, ep, efConstruction, l);
+      final int[] neighbors = selectNeighbors(
+        query, Arrays.stream(found.sortedIds()).filter(id -> id != node).toArray(), m
+      );
+
+      synchronized (locks[node]) {
+        System.arraycopy(neighbors, 0, links[node][l], 0, neighbors.length);
+        counts[node][l] = neighbors.length;
+      }
+
+      for (int each : neighbors) {
+        connect(each, node, l);
+      }
+
+      ep = found.best();
+    }
+
+    if(level > top){
+      synchronized (this) {
+        if(level > maxLevel){
+          maxLevel   = level;
+          entryPoint = node;
+        }
+      }
+    }
+  }
+
+  private void connect(int node, int neighbor, int level){
+    synchronized (locks[node]) {
+      final int[] list  = links[node][level];
+      final int   count = counts[node][level];
+      final int   max   = maxLinks(level);
+
+      for (int p = 0; p < count; p++) {
+        if(list[p] == neighbor) return;
+      }
+
+      list[count] = neighbor;
+      if(count + 1 <= max){
+        counts[node][level] = count + 1;
+        return;
+      }
+
+      // too many neighbors: keep the most diverse ones
+      final Heap candidates = new Heap(count + 1);
+      for (int p = 0; p <= count; p++) {
+        candidates.push(list[p], -similarity(vectors[node], vectors[list[p]]));
+      }
+
+      final int[] kept = selectNeighbors(vectors[node], candidates.sortedIds(), max);
+      System.arraycopy(kept, 0, list, 0, kept.length);
+      counts[node][level] = kept.length;
+    }
+  }
+
+  /**
+   * Neighbor selection heuristic: a candidate is kept only if it is more
+   * similar to the base vector than to any already kept neighbor, which favors
+   * links in diverse directions. The remaining slots are then filled
+   * with the most similar pruned candidates.
+   *
+   * @param base base vector
+   * @param candidates candidates, most similar to base first.
+   * @param max max number of neighbors to keep
+   */
+  private int[] selectNeighbors(float[] base, int[] candidates, int max){
+    if(candidates.length <= max) return candidates;
+
+    final int[]     kept    = new int[max];
+    final boolean[] taken   = new boolean[candidates.length];
+    int size = 0;
+
+    for (int c = 0; c < candidates.length && size < max; c++) {
+      final float[] vector  = vectors[candidates[c]];
+      final double  sim     = similarity(base, vector);
+
+      boolean diverse = true;
+      for (int r = 0; r < size && diverse; r++) {
+        diverse = similarity(vector, vectors[kept[r]]) <= sim;
+      }
+
+      if(diverse){
+        kept[size++] = candidates[c];
+        taken[c]     = true;
+      }
+    }
+
+    for (int c = 0; c < candidates.length && size < max; c++) {
+      if(!taken[c]) kept[size++] = candidates[c];
+    }
+
+    return kept;
+  }
+
+  private long greedy(float[] query, int ep, double epSim, int level){
+    boolean changed = true;
+    while(changed){
+      changed = false;
+
+      for (int each : neighbors(ep, level)) {
+        final double sim = similarity(query, vectors[each]);
+        if(sim > epSim){
+          epSim   = sim;
+          ep      = each;
+          changed = true;
+        }
+      }
+    }
+
+    return ((long) ep << 32) | (Float.floatToIntBits((float) epSim) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Beam search in a single layer.
+   *
+   * @return the ef most similar nodes found, as a heap keyed by
+   *  negated similarity (i.e., the least similar node is the root).
+   */
+  private Heap searchLayer(float[] query, int ep, int ef, int level){
+    final BitSet  visited     = new BitSet(vectors.length);
+    final Heap    candidates  = new Heap(ef);   // most similar first
+    final Heap    found       = new Heap(ef);   // least similar first
+
+    final double epSim = similarity(query, vectors[ep]);
+    visited.set(ep);
+    candidates.push(ep, -epSim);
+    found.push(ep, epSim);
+
+    while(candidates.size > 0){
+      final double sim  = -candidates.peekKey();
+      final int    node = candidates.pop();
+
+      if(found.size >= ef && sim < found.peekKey()) break;
+
+      for (int each : neighbors(node, level)) {
+        if(visited.get(each)) continue;
+        visited.set(each);
+
+        final double eachSim = similarity(query, vectors[each]);
+        if(found.size < ef || eachSim > found.peekKey()){
+          candidates.push(each, -eachSim);
+          found.push(each, eachSim);
+          if(found.size > ef) found.pop();
+        }
+      }
+    }
+
+    // re-key by negated similarity so that sortedIds() lists the most similar first
+    final Heap result = new Heap(found.size);
+    for (int p = 0; p < found.size; p++) {
+      result.push(found.ids[p], -found.keys[p]);
+    }
+
+    return result;
+  }
+
+  private int[] neighbors(int node, int level){
+    synchronized (locks[node]) {
+      return Arrays.copyOf(links[node][level], counts[node][level]);
+    }
+  }
+
+  private static double similarity(float[] a, float[] b){
+    double dot = 0.0D;
+    for (int i = 0; i < a.length; i++) {
+      dot += a[i] * b[i];
+    }
+
+    return dot;
+  }
+
+  /**
+   * Binary min-heap of (id, key) pairs over primitive arrays.
+   */
+  private static final class Heap {
+    int[]     ids;
+    double[]  keys;
+    int       size;
+
+    Heap(int capacity){
+      this.ids  = new int[Math.max(1, capacity)];
+      this.keys = new double[ids.length];
+      this.size = 0;
+    }
+
+    void push(int id, double key){
+      if(size == ids.length){
+        ids  = Arrays.copyOf(ids, size * 2);
+        keys = Arrays.copyOf(keys, size * 2);
+      }
+
+      int p = size++;
+      while(p > 0){
+        final int parent = (p - 1) >>> 1;
+        if(keys[parent] <= key) break;
+
+        ids[p]  = ids[parent];
+        keys[p] = keys[parent];
+        p = parent;
+      }
+
+      ids[p]  = id;
+      keys[p] = key;
+    }
+
+    double peekKey(){
+      return keys[0];
+    }
+
+    int pop(){
+      final int top = ids[0];
+
+      final int     id  = ids[--size];
+      final double  key = keys[size];
+
+      int p = 0;
+      while(true){
+        int child = 2 * p + 1;
+        if(child >= size) break;
+        if(child + 1 < size && keys[child + 1] < keys[child]) child++;
+        if(keys[child] >= key) break;
+
+        ids[p]  = ids[child];
+        keys[p] = keys[child];
+        p = child;
+      }
+
+      ids[p]  = id;
+      keys[p] = key;
+
+      return top;
+    }
+
+    int best(){
+      return ids[0];
+    }
+
+    int[] sortedIds(){
+      final Heap copy = new Heap(size);
+      copy.ids  = Arrays.copyOf(ids, size);
+      copy.keys = Arrays.copyOf(keys, size);
+      copy.size = size;
+
+      final int[] sorted = new int[size];
+      for (int p = 0; p < sorted.length; p++) {
+        sorted[p] = copy.pop();
+      }
+
+      return sorted;
+    }
+  }
+}
@@ -0,0 +1,315 @@
+package com.vesperin.text.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits identifiers into fragments in a single pass over their chars, with no
+ * regular expressions. It splits exactly where {@code identifier.split(CAMEL_CASE)}
+ * does, where {@code CAMEL_CASE} is
+ * {@code ((?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z]))|_}; i.e., at underscores,
+ * before an upper case letter that follows a non upper case char, and before an
+ * upper case letter followed by a lower case one. Like {@link String#split(String)},
+ * trailing empty fragments are dropped.
+ *
+ * <p>Fragments are kept as offsets into the identifier; they are classified (numeric,
+ * only consonants or only vowels) from those offsets, without creating substrings
+ * or compiling patterns.
+ *
+ * @author Huascar Sanchez
+ */
+public final class IdentifierTokenizer {
+  private IdentifierTokenizer(){}
+
+  /**
+   * Splits an identifier.
+   *
+   * @param identifier identifier to split
+   * @return the identifier's fragments
+   */
+  public static Fragments tokenize(String identifier){
+    final int         n         = identifier.length();
+    final Fragments   fragments = new Fragments(identifier);
+
+    int     start   = 0;
+    boolean matched = false;
+
+    for (int q = 0; q < n; q++) {
+      final char c = identifier.charAt(q);
+
+      if(q > 0 && isUpper(c) && (!isUpper(identifier.charAt(q - 1))
+        || (q + 1 < n && isLower(identifier.charAt(q + 1))))){
+
+        fragments.add(start, q);
+        start   = q;
+        matched = true;
+      } else if(c == '_'){
+        fragments.add(start, q);
+        start   = q + 1;
+        matched = true;
+      }
+    }
+
+    fragments.add(start, n);
+
+    if(matched){
+      fragments.dropTrailingEmpties();
+    }
+
+    return fragments;
+  }
+
+  /**
+   * Same as {@code input.matches("\\d+")}.
+   *
+   * @param input string to test
+   * @return true if input is a non empty sequence of ASCII digits.
+   */
+  public static boolean isNumber(String input){
+    return input != null && isNumber(input, 0, input.length());
+  }
+
+  /**
+   * Same as {@code word.toLowerCase(Locale.ENGLISH).matches("^[aeiuoAEIOU]*$|^(?!.*(NG|ng)).[^aeyiuo]*$")};
+   * e.g., true for "cfg", "aeo", and (quirk) "abc", since the first char of the
+   * second alternative can be anything.
+   *
+   * @param word word to test
+   * @return true if the word is non empty and made of only vowels or (almost) only
+   *    consonants.
+   */
+  public static boolean onlyConsonantsOrVowels(String word){
+    return word != null && onlyConsonantsOrVowels(word, 0, word.length());
+  }
+
+  /**
+   * Same as {@code input.replaceAll("(-?\\d+)|(\\+1)", "")}.
+   *
+   * @param input string to clean
+   * @return the input without ASCII digits, their leading minus
+   *    signs, and "+1"s.
+   */
+  public static String stripNumbers(String input){
+    final int n = input.length();
+
+    StringBuilder result = null;
+
+    int i = 0; while(i < n){
+      final char c    = input.charAt(i);
+      final int  from = i;
+
+      if(c == '-' && i + 1 < n && isDigit(input.charAt(i + 1))){
+        i++;
+        while(i < n && isDigit(input.charAt(i))) i++;
+      } else if(isDigit(c)){
+        while(i < n && isDigit(input.charAt(i))) i++;
+      } else if(c == '+' && i + 1 < n && input.charAt(i + 1) == '1'){
+        i += 2;
+      } else {
+        if(result != null) result.append(c);
+        i++;
+        continue;
+      }
+
+      if(result == null){
+        result = new StringBuilder(n).append(input, 0, from);
+      }
+    }
+
+    return result == null ? input : result.toString();
+  }
+
+  /**
+   * Same as {@code input.split(Pattern.quote("_")).length}.
+   *
+   * @param input string to split
+   * @return number of underscore-separated parts, not
+   *    counting trailing empty ones.
+   */
+  public static int countUnderscoreParts(String input){
+    final int n = input.length();
+    if(input.indexOf('_') < 0) return 1;
+
+    // trailing underscores produce trailing empty parts
+    int end = n; while(end > 0 && input.charAt(end - 1) == '_') end--;
+    if(end == 0) return 0;
+
+    int parts = 1; for (int i = 0; i < end; i++) {
+      if(input.charAt(i) == '_') parts++;
+    }
+
+    return parts;
+  }
+
+  static boolean isNumber(CharSequence input, int from, int to){
+    if(from >= to) return false;
+
+    for (int i = from; i < to; i++) {
+      if(!isDigit(input.charAt(i))) return false;
+    }
+
+    return true;
+  }
+
+  static boolean onlyConsonantsOrVowels(CharSequence word, int from, int to){
+    if(from >= to) return false;
+
+    for (int i = from; i < to; i++) {
+      if(word.charAt(i) >= 0x80){
+        // non-ASCII chars may not lower case one to one
+        final String lower = word.subSequence(from, to).toString().toLowerCase(Locale.ENGLISH);
+        return onlyConsonantsOrVowelsLowered(lower, 0, lower.length());
+      }
+    }
+
+    return onlyConsonantsOrVowelsLowered(word, from, to);
+  }
+
+  private static boolean onlyConsonantsOrVowelsLowered(CharSequence word, int from, int to){
+    boolean onlyVowels      = true;   // ^[aeiou]*$
+    boolean noVowelsAfter   = true;   // .[^aeyiuo]*$
+    boolean ng              = false;  // (?!.*ng) can only see up to the first line terminator
+    boolean terminated      = false;
+
+    for (int i = from; i < to; i++) {
+      final char c = lower(word.charAt(i));
+
+      if(!isVowel(c))                           onlyVowels    = false;
+      if(i > from && (isVowel(c) || c == 'y'))  noVowelsAfter = false;
+
+      if(isLineTerminator(c)){
+        terminated = true;
+      } else if(!terminated && c == 'g' && i > from && lower(word.charAt(i - 1)) == 'n'){
+        ng = true;
+      }
+
+      if(!onlyVowels && !noVowelsAfter) return false;
+    }
+
+    return onlyVowels || (noVowelsAfter && !ng && !isLineTerminator(lower(word.charAt(from))));
+  }
+
+  private static char lower(char c){
+    return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+  }
+
+  private static boolean isVowel(char c){
+    return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+  }
+
+  private static boolean isLineTerminator(char c){
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static boolean isUpper(char c){
+    return c >= 'A' && c <= 'Z';
+  }
+
+  private static boolean isLower(char c){
+    return c >= 'a' && c <= 'z';
+  }
+
+  private static boolean isDigit(char c){
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Fragments of an identifier, kept as offsets.
+   */
+  public static final class Fragments {
+    private final String identifier;
+
+    private int[] bounds; // start and end offsets, one pair per fragment
+    private int   size;
+
+    Fragments(String identifier){
+      this.identifier = identifier;
+      this.bounds     = new int[8];
+      this.size       = 0;
+    }
+
+    void add(int start, int end){
+      if(2 * size == bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+
+      bounds[2 * size]     = start;
+      bounds[2 * size + 1] = end;
+      size++;
+    }
+
+    void dropTrailingEmpties(){
+      while(size > 0 && length(size - 1) == 0) size--;
+    }
+
+    /**
+     * @return number of fragments.
+     */
+    public int size(){
+      return size;
+    }
+
+    /**
+     * @param i fragment index
+     * @return the offset where the i-th fragment starts.
+     */
+    public int start(int i){
+      return bounds[2 * i];
+    }
+
+    /**
+     * @param i fragment index
+     * @return the offset where the i-th fragment ends (exclusive).
+     */
+    public int end(int i){
+      return bounds[2 * i + 1];
+    }
+
+    /**
+     * @param i fragment index
+     * @return the length of the i-th fragment.
+     */
+    public int length(int i){
+      return end(i) - start(i);
+    }
+
+    /**
+     * @param i fragment index
+     * @return the i-th fragment.
+     */
+    public String get(int i){
+      return identifier.substring(start(i), end(i));
+    }
+
+    /**
+     * @param i fragment index
+     * @return true if the i-th fragment is a number; see {@link IdentifierTokenizer#isNumber(String)}.
+     */
+    public boolean isNumber(int i){
+      return IdentifierTokenizer.isNumber(identifier, start(i), end(i));
+    }
+
+    /**
+     * @param i fragment index
+     * @return true if the i-th fragment is made of only consonants or vowels;
+     *    see {@link IdentifierTokenizer#onlyConsonantsOrVowels(String)}.
+     */
+    public boolean onlyConsonantsOrVowels(int i){
+      return IdentifierTokenizer.onlyConsonantsOrVowels(identifier, start(i), end(i));
+    }
+
+    /**
+     * @return all fragments, as strings.
+     */
+    public String[] toArray(){
+      final String[] result = new String[size];
+      for (int i = 0; i < size; i++) {
+        result[i] = get(i);
+      }
+
+      return result;
+    }
+
+    @Override public String toString() {
+      return Arrays.toString(toArray());
+    }
+  }
+}
@@ -5,9 +5,11 @@ import Jama.SingularValueDecomposition;
 import com.vesperin.text.Selection.Word;
 
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * @author Huascar Sanchez
@@ -116,43 +118,129 @@ public class Jamas {
     writer.flush();
   }
 
+  /**
+   * Applies tf-idf weights to a dense word-by-document frequency matrix,
+   * and then normalizes the word scores for every document. Document
+   * frequencies are counted once per word. Does not change the passed matrix.
+   *
+   * @param matrix raw word frequencies (rows are words, columns are documents).
+   * @return a new weighted matrix.
+   */
   public static Matrix tfidfMatrix(Matrix matrix){
+    final int     rows  = matrix.getRowDimension();
+    final int     cols  = matrix.getColumnDimension();
+    final double[][] raw = matrix.getArray();
 
-    // Phase 1: apply IDF weight to the raw word frequencies
-    int n = matrix.getColumnDimension();
-    for (int j = 0; j < matrix.getColumnDimension(); j++) {
-      for (int i = 0; i < matrix.getRowDimension(); i++) {
-        double matrixElement = matrix.get(i, j);
-
-        if (matrixElement > 0.0D) {
+    final double[] idf = new double[rows];
+    for (int i = 0; i < rows; i++) {
+      idf[i] = idf(cols, countDocsWithWord(raw[i]));
+    }
 
-          final Matrix subMatrix  = matrix.getMatrix(i, i, 0, matrix.getColumnDimension() - 1);
-          final double dm         = countDocsWithWord(subMatrix);
-          final double tfIdf      = matrix.get(i,j) * (1 + Math.log(n) - Math.log(dm));
+    final Matrix      result  = new Matrix(rows, cols);
+    final double[][]  weights = result.getArray();
 
-          matrix.set(i, j, tfIdf);
-        }
+    // Phase 1: apply IDF weight to the raw word frequencies
+    final double[] sums = new double[cols];
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        final double tfIdf = raw[i][j] > 0.0D ? raw[i][j] * idf[i] : raw[i][j];
+        weights[i][j] = tfIdf;
+        sums[j] += tfIdf;
       }
     }
 
     // Phase 2: normalize the word scores for a single document
-    for (int j = 0; j < matrix.getColumnDimension(); j++) {
-      final Matrix colMatrix  = getCol(matrix, j);
-      final double sum        = colSum(colMatrix);
-
-      for (int i = 0; i < matrix.getRowDimension(); i++) {
-        matrix.set(i, j, (matrix.get(i, j) / sum));
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        weights[i][j] = weights[i][j] / sums[j];
       }
     }
 
-    return matrix;
+    return result;
+  }
+
+
+  /**
+   * Applies tf-idf weights to a sparse word-by-document frequency matrix,
+   * and then normalizes the word scores for every document. Only stored entries
+   * are visited. Does not change the passed matrix.
+   *
+   * @param matrix raw word frequencies (rows are words, columns are documents).
+   * @return a new weighted matrix with the same sparsity structure.
+   */
+  public static SparseMatrix tfidfMatrix(SparseMatrix matrix){
+    return tfidfMatrix(matrix, matrix.rowNonZeros(), matrix.getColumnDimension());
+  }
+
+  /**
+   * Applies tf-idf weights to a sparse word-by-document frequency matrix using
+   * already known document frequencies, and then normalizes the word scores for
+   * every document. Does not change the passed matrix.
+   *
+   * @param matrix raw word frequencies (rows are words, columns are documents).
+   * @param docFrequency number of documents containing each word.
+   * @param n number of documents; empty columns may not be documents.
+   * @return a new weighted matrix with the same sparsity structure.
+   */
+  public static SparseMatrix tfidfMatrix(SparseMatrix matrix, int[] docFrequency, int n){
+    return tfidfMatrix(matrix, docFrequency, n, Weighting.RAW);
   }
 
+  /**
+   * Applies a weighted tf-idf to a sparse word-by-document frequency matrix using
+   * already known document frequencies, and then normalizes the word scores for
+   * every document. The IDF vector is computed once; documents are weighted
+   * and normalized in parallel. Does not change the passed matrix.
+   *
+   * @param matrix raw word frequencies (rows are words, columns are documents).
+   * @param docFrequency number of documents containing each word.
+   * @param n number of documents; empty columns may not be documents.
+   * @param weighting term frequency weighting scheme.
+   * @return a new weighted matrix with the same sparsity structure.
+   */
+  public static SparseMatrix tfidfMatrix(SparseMatrix matrix, int[] docFrequency, int n, Weighting weighting){
+    final int rows = matrix.getRowDimension();
+    final int cols = matrix.getColumnDimension();
+
+    final double[] idf = new double[rows];
+    for (int i = 0; i < rows; i++) {
+      idf[i] = idf(n, docFrequency[i]);
+    }
 
-  private static double countDocsWithWord(Matrix rowMatrix) {
+    final double[] lengths      = matrix.colSums();
+    final double   avgDocLength = n == 0 ? 0.0D : Arrays.stream(lengths).sum() / n;
+    final double[] weights      = new double[matrix.nonZeros()];
+
+    // every document owns a disjoint slice of the weights array
+    IntStream.range(0, cols).parallel().forEach(j -> {
+      final int from = matrix.columnStart(j);
+      final int to   = matrix.columnEnd(j);
+
+      // Phase 1: apply IDF weight to the (weighted) word frequencies
+      double sum = 0.0D;
+      for (int p = from; p < to; p++) {
+        final double tf = weighting.tf(matrix.valueAt(p), lengths[j], avgDocLength);
+        weights[p] = tf * idf[matrix.rowAt(p)];
+        sum += weights[p];
+      }
+
+      // Phase 2: normalize the word scores for a single document
+      for (int p = from; p < to; p++) {
+        weights[p] = weights[p] / sum;
+      }
+    });
+
+    return matrix.withValues(weights);
+  }
+
+  private static double idf(int n, double dm){
+    return 1 + Math.log(n) - Math.log(dm);
+  }
+
+  private static double countDocsWithWord(double[] row) {
     double numDocs = 0.0D;
-    for (int j = 0; j < rowMatrix.getColumnDimension(); j++) {
-      if (rowMatrix.get(0, j) > 0.0D) {
+    for (double each : row) {
+      if (each > 0.0D) {
         numDocs++;
       }
     }
@@ -195,22 +283,31 @@ public class Jamas {
   }
 
   public static Matrix latentSemanticIndexing(Matrix matrix){
-    // compute the value of k (ie where to truncate) // used to be getColDimensions
-    int k = (int) Math.floor(Math.sqrt(matrix.getRowDimension()));
+    return latentSemanticIndexing(matrix, TruncatedSvd.defaults());
+  }
 
-    // phase 1: Get singular value decomposition
-    final SingularValueDecomposition svd = matrix.svd();
+  /**
+   * Computes a rank-k latent semantic matrix, where k = floor(sqrt(rows)).
+   * Only the top k singular triplets are computed; big matrices are decomposed
+   * by the given truncated SVD engine.
+   *
+   * @param matrix word-by-document matrix
+   * @param svdEngine truncated SVD engine
+   * @return the normalized rank-k approximation of matrix.
+   */
+  public static Matrix latentSemanticIndexing(Matrix matrix, TruncatedSvd svdEngine){
+    final int rows = matrix.getRowDimension();
+    final int cols = matrix.getColumnDimension();
 
-    final Matrix U  = svd.getU();
-    final Matrix S  = getSigma(matrix.getRowDimension(), svd.getSingularValues());//svd.getS();
-    final Matrix V  = svd.getV();
+    // compute the value of k (ie where to truncate) // used to be getColDimensions
+    int k = Math.min((int) Math.floor(Math.sqrt(rows)), Math.min(rows, cols));
 
-    final Matrix reducedU  = U.getMatrix(0, U.getRowDimension() - 1, 0, k - 1);
-    final Matrix reducedS  = S.getMatrix(0, k - 1, 0, k - 1);
-    final Matrix reducedV  = V.getMatrix(0, V.getRowDimension() - 1, 0, k - 1);
+    // phase 1: Get singular value decomposition
+    final TruncatedSvd.Svd svd = TruncatedSvd.worthwhile(rows, cols)
+      ? svdEngine.decompose(matrix, k)
+      : TruncatedSvd.exact(matrix, k);
 
-    final Matrix weights = reducedU.times(reducedS)
-      .times(reducedV.transpose());
+    final Matrix weights = svd.reconstruct();
 
     // Phase 2: Normalize the word score for a single document
     for (int j = 0; j < weights.getColumnDimension(); j++) {
@@ -315,6 +412,21 @@ public class Jamas {
     return X;
   }
 
+  /**
+   * Splits a matrix into its rows.
+   *
+   * @param matrix the matrix to split
+   * @return an array of row matrices, indexed by row.
+   */
+  public static Matrix[] splitMatrix(Matrix matrix){
+    final Matrix[] rows = new Matrix[matrix.getRowDimension()];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = getRow(matrix, i);
+    }
+
+    return rows;
+  }
+
   public static <T> Map<T, Matrix> splitMatrix(List<T> items, Matrix matrix){
     final Map<T, Matrix> map = new HashMap<>();
     int idx = 0; for (T each : items){
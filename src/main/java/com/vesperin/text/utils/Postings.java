@@ -0,0 +1,180 @@
+package com.vesperin.text.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed posting list: a list of (id, frequency) pairs
+ * sorted by id. Ids are stored as deltas from the previous id, and both
+ * deltas and frequencies are stored as variable-length integers (7 bits
+ * per byte); small ids and frequencies take a single byte. The compressed
+ * bytes may be a view over a larger buffer (e.g., a memory mapped index
+ * snapshot); see {@link #view(ByteBuffer, int)}.
+ *
+ * @author Huascar Sanchez
+ */
+public final class Postings {
+  public static final Postings EMPTY = new Postings(ByteBuffer.allocate(0), 0);
+
+  private final ByteBuffer  data;
+  private final int         size;
+
+  private Postings(ByteBuffer data, int size){
+    this.data = data;
+    this.size = size;
+  }
+
+  /**
+   * Compresses a list of (id, frequency) pairs.
+   *
+   * @param ids strictly increasing, non negative ids.
+   * @param frequencies positive frequencies; one per id.
+   * @return a new Postings object.
+   */
+  public static Postings of(int[] ids, int[] frequencies){
+    if(ids.length != frequencies.length) throw new IllegalArgumentException("length mismatch");
+    if(ids.length == 0) return EMPTY;
+
+    final byte[] buffer = new byte[ids.length * 10];
+
+    int pos = 0; int last = -1; for (int p = 0; p < ids.length; p++) {
+      if(ids[p] <= last) throw new IllegalArgumentException("ids must be strictly increasing");
+
+      pos  = writeVarint(buffer, pos, ids[p] - last - 1);
+      pos  = writeVarint(buffer, pos, frequencies[p]);
+      last = ids[p];
+    }
+
+    return new Postings(ByteBuffer.wrap(Arrays.copyOf(buffer, pos)), ids.length);
+  }
+
+  /**
+   * Compresses an unsorted list of ids; repeated ids are counted as
+   * their frequency.
+   *
+   * @param occurrences ids, one per occurrence.
+   * @return a new Postings object.
+   */
+  public static Postings count(int[] occurrences){
+    if(occurrences.length == 0) return EMPTY;
+
+    final int[] sorted = occurrences.clone();
+    Arrays.sort(sorted);
+
+    final int[] ids         = new int[sorted.length];
+    final int[] frequencies = new int[sorted.length];
+
+    int size = 0; for (int p = 0; p < sorted.length; p++) {
+      if(size > 0 && ids[size - 1] == sorted[p]){
+        frequencies[size - 1]++;
+      } else {
+        ids[size]         = sorted[p];
+        frequencies[size] = 1;
+        size++;
+      }
+    }
+
+    return of(Arrays.copyOf(ids, size), Arrays.copyOf(frequencies, size));
+  }
+
+  /**
+   * Restores a posting list from its compressed bytes. See {@link #bytes()}.
+   *
+   * @param data compressed bytes
+   * @param size number of postings
+   * @return a new Postings object.
+   */
+  public static Postings decode(byte[] data, int size){
+    return size == 0 ? EMPTY : new Postings(ByteBuffer.wrap(data.clone()), size);
+  }
+
+  /**
+   * Restores a posting list from its compressed bytes, without copying them.
+   * The bytes are the remaining bytes of the given buffer, and they must not
+   * change afterwards.
+   *
+   * @param data compressed bytes; e.g., a slice of a memory mapped file.
+   * @param size number of postings
+   * @return a new Postings object.
+   */
+  public static Postings view(ByteBuffer data, int size){
+    return size == 0 ? EMPTY : new Postings(data.slice(), size);
+  }
+
+  /**
+   * Visits every (id, frequency) pair, in id order.
+   *
+   * @param visitor pair consumer
+   */
+  public void forEach(Visitor visitor){
+    int pos = 0; int id = -1; for (int p = 0; p < size; p++) {
+      int delta = 0; int shift = 0; byte b;
+      do { b = data.get(pos++); delta |= (b & 0x7F) << shift; shift += 7; } while (b < 0);
+
+      int frequency = 0; shift = 0;
+      do { b = data.get(pos++); frequency |= (b & 0x7F) << shift; shift += 7; } while (b < 0);
+
+      id += delta + 1;
+      visitor.visit(id, frequency);
+    }
+  }
+
+  /**
+   * @return the ids in this list, in increasing order.
+   */
+  public int[] ids(){
+    final int[] ids = new int[size];
+    final int[] p   = {0};
+    forEach((id, f) -> ids[p[0]++] = id);
+    return ids;
+  }
+
+  /**
+   * @return the frequencies in this list, in id order.
+   */
+  public int[] frequencies(){
+    final int[] frequencies = new int[size];
+    final int[] p           = {0};
+    forEach((id, f) -> frequencies[p[0]++] = f);
+    return frequencies;
+  }
+
+  /**
+   * @return number of postings.
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * @return a copy of the compressed bytes.
+   */
+  public byte[] bytes(){
+    final byte[] bytes = new byte[data.limit()];
+    data.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static int writeVarint(byte[] buffer, int pos, int value){
+    while((value & ~0x7F) != 0){
+      buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    buffer[pos++] = (byte) value;
+    return pos;
+  }
+
+  @Override public String toString() {
+    final StringBuilder text = new StringBuilder("[");
+    forEach((id, f) -> text.append(text.length() == 1 ? "" : ", ").append(id).append('=').append(f));
+    return text.append(']').toString();
+  }
+
+  /**
+   * Consumer of (id, frequency) pairs.
+   */
+  public interface Visitor {
+    void visit(int id, int frequency);
+  }
+}
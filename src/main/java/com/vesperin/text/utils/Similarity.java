@@ -20,6 +20,40 @@ public class Similarity {
     return 1.0f - normalizeDistance(word, suggestion);
   }
 
+  /**
+   * Calculates the similarityScore between two strings, if it is greater than
+   * a minimum score. Since edit distances grow by one, the minimum score bounds
+   * the edit distance between the strings; once that bound is exceeded, the
+   * distance is no longer computed. E.g., {@code similarityScore(a, b, 0.3f) > 0.3f}
+   * iff {@code similarityScore(a, b) > 0.3f}.
+   *
+   * @param word original string
+   * @param suggestion suggested string
+   * @param minScore minimum score
+   * @return the similarityScore if it is greater than minScore; otherwise,
+   *    a score no greater than minScore.
+   */
+  public static float similarityScore(String word, String suggestion, float minScore){
+    Objects.requireNonNull(word);
+    Objects.requireNonNull(suggestion);
+
+    final int length = Math.max(word.length(), suggestion.length());
+
+    // the largest distance whose score is greater than minScore
+    int maxDistance = (int) Math.max(-1, Math.min(length, Math.floor((1.0 - minScore) * length)));
+    while(maxDistance >= 0 && !(score(maxDistance, length) > minScore)) maxDistance--;
+    while(maxDistance < length && score(maxDistance + 1, length) > minScore) maxDistance++;
+
+    return score(distance(word, suggestion, Math.max(0, maxDistance)), length);
+  }
+
+  private static float score(int distance, int length){
+    final float editDistance = (distance/1.0f);
+    final float maxLength    = length/1.0f;
+
+    return 1.0f - (editDistance/maxLength);
+  }
+
   /**
    * Calculates the normalized distance of a suggested correction. This is
    * no longer a metric. Therefore, in order to calculate the similarityScore
@@ -50,32 +84,153 @@ public class Similarity {
    * @return the edit distance.
    */
   private static int distance(String a, String b){
+    return distance(a, b, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Edit distance between words, up to a maximum distance. Words of up to 64
+   * chars are compared with Myers' bit-parallel algorithm (as formulated by
+   * Hyyro), in O(|a| + |b|) word operations; longer words are compared by
+   * only filling the cells at most maxDistance away from the table's diagonal.
+   * Both stop as soon as the distance is known to be greater than maxDistance.
+   *
+   * @param a original word
+   * @param b suggested correction.
+   * @param maxDistance maximum distance
+   * @return the edit distance, if at most maxDistance; otherwise maxDistance + 1.
+   */
+  private static int distance(String a, String b, int maxDistance){
     if(a == null || b == null)  return 0;
     if(a.length() == 0)         return 0;
     if(b.length() == 0)         return 0;
     if(a.equals(b))             return 0;
 
+    // the shorter word is the pattern
+    final String pattern  = a.length() <= b.length() ? a : b;
+    final String text     = a.length() <= b.length() ? b : a;
 
-    int[] v0 = new int[b.length() + 1];
-    int[] v1 = new int[b.length() + 1];
+    final int max = Math.min(maxDistance, text.length());
+    if(text.length() - pattern.length() > max) return max + 1;
 
-    int idx;
-    for(idx = 0; idx < v0.length; idx++){
-      v0[idx] = idx;
+    return pattern.length() <= 64
+      ? bitParallel(pattern, text, max)
+      : banded(pattern, text, max);
+  }
+
+  private static int bitParallel(String pattern, String text, int max){
+    final int   m     = pattern.length();
+    final int   n     = text.length();
+    final long  last  = 1L << (m - 1);
+
+    // peq[c]: bit i is set iff pattern[i] == c
+    final long[] peq = SCRATCH.get().peq;
+    for (int i = 0; i < m; i++) {
+      final char c = pattern.charAt(i);
+      if(c < peq.length) peq[c] |= 1L << i;
     }
 
-    for(idx = 0; idx < a.length(); idx++){
-      v1[0] = idx + 1;
+    try {
+      long pv     = -1L;
+      long mv     = 0L;
+      int  score  = m;
+
+      for (int j = 0; j < n; j++) {
+        final long eq = equalities(pattern, text.charAt(j), peq);
+
+        final long xv = eq | mv;
+        final long xh = (((eq & pv) + pv) ^ pv) | eq;
+
+        long ph = mv | ~(xh | pv);
+        long mh = pv & xh;
+
+        if((ph & last) != 0){
+          score++;
+        } else if((mh & last) != 0){
+          score--;
+        }
 
-      for (int j = 0; j < b.length(); j++){
-        int cost = (a.charAt(idx) == b.charAt(j) ? 0 : 1);
+        // the score may drop by one per remaining char, at most
+        if(score - (n - 1 - j) > max) return max + 1;
 
-        v1[j + 1] = Math.min(Math.min(v1[j] + 1, v0[j + 1] + 1), v0[j] + cost);
+        ph = (ph << 1) | 1L;
+        mh = mh << 1;
+
+        pv = mh | ~(xv | ph);
+        mv = ph & xv;
+      }
+
+      return score;
+    } finally {
+      for (int i = 0; i < m; i++) {
+        final char c = pattern.charAt(i);
+        if(c < peq.length) peq[c] = 0L;
+      }
+    }
+  }
+
+  private static long equalities(String pattern, char c, long[] peq){
+    if(c < peq.length) return peq[c];
+
+    long eq = 0L;
+    for (int i = 0; i < pattern.length(); i++) {
+      if(pattern.charAt(i) == c) eq |= 1L << i;
+    }
+
+    return eq;
+  }
+
+  private static int banded(String pattern, String text, int max){
+    final int m         = pattern.length();
+    final int n         = text.length();
+    final int infinity  = max + 1;
+
+    final Scratch scratch = SCRATCH.get().ensureCapacity(n + 1);
+
+    int[] v0 = scratch.v0;
+    int[] v1 = scratch.v1;
+
+    for (int j = 0; j <= Math.min(n, max); j++) v0[j] = j;
+    if(max < n) v0[max + 1] = infinity;
+
+    for (int i = 1; i <= m; i++) {
+      final int lo = Math.max(1, i - max);
+      final int hi = Math.min(n, i + max);
+
+      v1[lo - 1] = lo == 1 ? Math.min(i, infinity) : infinity;
+
+      int rowMin = v1[lo - 1];
+      for (int j = lo; j <= hi; j++) {
+        final int cost = (pattern.charAt(i - 1) == text.charAt(j - 1) ? 0 : 1);
+
+        v1[j] = Math.min(infinity, Math.min(Math.min(v1[j - 1] + 1, v0[j] + 1), v0[j - 1] + cost));
+        rowMin = Math.min(rowMin, v1[j]);
       }
 
-      System.arraycopy(v1, 0, v0, 0, v0.length);
+      if(hi < n) v1[hi + 1] = infinity;
+
+      // distances never decrease along an alignment
+      if(rowMin > max) return infinity;
+
+      final int[] swap = v0; v0 = v1; v1 = swap;
     }
 
-    return v1[b.length()];
+    return Math.min(v0[n], infinity);
+  }
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private static class Scratch {
+    final long[] peq = new long[128]; // by ASCII char
+    int[] v0 = new int[0];
+    int[] v1 = new int[0];
+
+    Scratch ensureCapacity(int size){
+      if(v0.length < size){
+        v0 = new int[size];
+        v1 = new int[size];
+      }
+
+      return this;
+    }
   }
 }
@@ -0,0 +1,471 @@
+package com.vesperin.text.utils;
+
+import Jama.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * Immutable sparse matrix stored in compressed sparse column (CSC) form.
+ * Columns are documents and rows are words in every matrix built by
+ * {@code Index}, so column access (the common case) is a contiguous scan.
+ *
+ * @author Huascar Sanchez
+ */
+public final class SparseMatrix {
+  private final int       rows;
+  private final int       cols;
+  private final int[]     colPtr;
+  private final int[]     rowIdx;
+  private final double[]  values;
+
+  private SparseMatrix(int rows, int cols, int[] colPtr, int[] rowIdx, double[] values){
+    this.rows   = rows;
+    this.cols   = cols;
+    this.colPtr = colPtr;
+    this.rowIdx = rowIdx;
+    this.values = values;
+  }
+
+  /**
+   * Creates a new builder for a rows x cols sparse matrix.
+   *
+   * @param rows number of rows
+   * @param cols number of columns
+   * @return a new builder.
+   */
+  public static Builder builder(int rows, int cols){
+    return new Builder(rows, cols);
+  }
+
+  /**
+   * @return the number of rows.
+   */
+  public int getRowDimension(){
+    return rows;
+  }
+
+  /**
+   * @return the number of columns.
+   */
+  public int getColumnDimension(){
+    return cols;
+  }
+
+  /**
+   * @return the number of stored (non zero) entries.
+   */
+  public int nonZeros(){
+    return colPtr[cols];
+  }
+
+  /**
+   * @param col the column
+   * @return the position of the first stored entry of column col.
+   */
+  public int columnStart(int col){
+    return colPtr[col];
+  }
+
+  /**
+   * @param col the column
+   * @return one past the position of the last stored entry of column col.
+   */
+  public int columnEnd(int col){
+    return colPtr[col + 1];
+  }
+
+  /**
+   * @param pos position of a stored entry.
+   * @return the row of that entry.
+   */
+  public int rowAt(int pos){
+    return rowIdx[pos];
+  }
+
+  /**
+   * @param pos position of a stored entry.
+   * @return the value of that entry.
+   */
+  public double valueAt(int pos){
+    return values[pos];
+  }
+
+  /**
+   * Gets a single element.
+   *
+   * @param i row index
+   * @param j column index
+   * @return A(i,j)
+   */
+  public double get(int i, int j){
+    final int pos = Arrays.binarySearch(rowIdx, colPtr[j], colPtr[j + 1], i);
+    return pos < 0 ? 0.0D : values[pos];
+  }
+
+  /**
+   * Computes y = A * x.
+   *
+   * @param x dense vector of length {@link #getColumnDimension()}
+   * @return a new dense vector of length {@link #getRowDimension()}
+   */
+  public double[] times(double[] x){
+    final double[] y = new double[rows];
+    for (int j = 0; j < cols; j++) {
+      final double xj = x[j];
+      if(xj == 0.0D) continue;
+
+      for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+        y[rowIdx[p]] += values[p] * xj;
+      }
+    }
+
+    return y;
+  }
+
+  /**
+   * Computes y = A' * x.
+   *
+   * @param x dense vector of length {@link #getRowDimension()}
+   * @return a new dense vector of length {@link #getColumnDimension()}
+   */
+  public double[] transposeTimes(double[] x){
+    final double[] y = new double[cols];
+    for (int j = 0; j < cols; j++) {
+      double sum = 0.0D;
+      for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+        sum += values[p] * x[rowIdx[p]];
+      }
+
+      y[j] = sum;
+    }
+
+    return y;
+  }
+
+  /**
+   * Computes Y = A * X, for a dense (and usually thin) X.
+   *
+   * @param x dense matrix with {@link #getColumnDimension()} rows.
+   * @return a new dense matrix with {@link #getRowDimension()} rows.
+   */
+  public Matrix times(Matrix x){
+    final int         c = x.getColumnDimension();
+    final double[][]  X = x.getArray();
+    final Matrix      y = new Matrix(rows, c);
+    final double[][]  Y = y.getArray();
+
+    for (int j = 0; j < cols; j++) {
+      final double[] xj = X[j];
+      for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+        final double[] yi = Y[rowIdx[p]];
+        final double   v  = values[p];
+        for (int l = 0; l < c; l++) {
+          yi[l] += v * xj[l];
+        }
+      }
+    }
+
+    return y;
+  }
+
+  /**
+   * Computes Y = A' * X, for a dense (and usually thin) X.
+   *
+   * @param x dense matrix with {@link #getRowDimension()} rows.
+   * @return a new dense matrix with {@link #getColumnDimension()} rows.
+   */
+  public Matrix transposeTimes(Matrix x){
+    final int         c = x.getColumnDimension();
+    final double[][]  X = x.getArray();
+    final Matrix      y = new Matrix(cols, c);
+    final double[][]  Y = y.getArray();
+
+    for (int j = 0; j < cols; j++) {
+      final double[] yj = Y[j];
+      for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+        final double[] xi = X[rowIdx[p]];
+        final double   v  = values[p];
+        for (int l = 0; l < c; l++) {
+          yj[l] += v * xi[l];
+        }
+      }
+    }
+
+    return y;
+  }
+
+  /**
+   * @return the number of stored entries in every row; for a word-document
+   *  frequency matrix, this is each word's document frequency.
+   */
+  public int[] rowNonZeros(){
+    final int[] counts = new int[rows];
+    for (int p = 0; p < nonZeros(); p++) {
+      counts[rowIdx[p]]++;
+    }
+
+    return counts;
+  }
+
+  /**
+   * @return the sum of every row.
+   */
+  public double[] rowSums(){
+    final double[] sums = new double[rows];
+    for (int p = 0; p < nonZeros(); p++) {
+      sums[rowIdx[p]] += values[p];
+    }
+
+    return sums;
+  }
+
+  /**
+   * @return the sum of every column.
+   */
+  public double[] colSums(){
+    final double[] sums = new double[cols];
+    for (int j = 0; j < cols; j++) {
+      double sum = 0.0D;
+      for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+        sum += values[p];
+      }
+
+      sums[j] = sum;
+    }
+
+    return sums;
+  }
+
+  /**
+   * Creates a new matrix with the same sparsity structure as this one
+   * but with different values. Does not change this matrix.
+   *
+   * @param newValues values; one per stored entry, in storage order.
+   * @return a new sparse matrix.
+   */
+  public SparseMatrix withValues(double[] newValues){
+    if(newValues.length != nonZeros()){
+      throw new IllegalArgumentException("expected " + nonZeros() + " values");
+    }
+
+    return new SparseMatrix(rows, cols, colPtr, rowIdx, newValues);
+  }
+
+  /**
+   * Creates a new matrix where a single column is replaced, copying the
+   * stored entries of the other columns as they are (i.e., no sorting); the
+   * new matrix grows to fit the new column and rows, if needed. Does not
+   * change this matrix.
+   *
+   * @param newRows number of rows of the new matrix; at least {@link #getRowDimension()}
+   * @param col the column to replace
+   * @param colRows ascending rows of the column's stored entries
+   * @param colValues values of the column's stored entries
+   * @return a new sparse matrix.
+   */
+  public SparseMatrix withColumn(int newRows, int col, int[] colRows, double[] colValues){
+    if(newRows < rows || col < 0 || colRows.length != colValues.length){
+      throw new IllegalArgumentException("Invalid column " + col);
+    }
+
+    final int newCols = Math.max(cols, col + 1);
+    final int from    = col < cols ? colPtr[col] : nonZeros();
+    final int to      = col < cols ? colPtr[col + 1] : nonZeros();
+    final int nnz     = nonZeros() - (to - from) + colRows.length;
+
+    final int[]     ptr = new int[newCols + 1];
+    final int[]     idx = new int[nnz];
+    final double[]  val = new double[nnz];
+
+    System.arraycopy(rowIdx, 0, idx, 0, from);
+    System.arraycopy(values, 0, val, 0, from);
+    System.arraycopy(colRows, 0, idx, from, colRows.length);
+    System.arraycopy(colValues, 0, val, from, colRows.length);
+    System.arraycopy(rowIdx, to, idx, from + colRows.length, nonZeros() - to);
+    System.arraycopy(values, to, val, from + colRows.length, nonZeros() - to);
+
+    final int shift = colRows.length - (to - from);
+    for (int j = 0; j <= newCols; j++) {
+      if(j <= col){
+        ptr[j] = j <= cols ? colPtr[j] : nonZeros();
+      } else {
+        ptr[j] = (j <= cols ? colPtr[j] : nonZeros()) + shift;
+      }
+    }
+
+    return new SparseMatrix(newRows, newCols, ptr, idx, val);
+  }
+
+  /**
+   * @return a copy of the stored values, in storage order.
+   */
+  public double[] values(){
+    return Arrays.copyOf(values, nonZeros());
+  }
+
+  /**
+   * @return the transpose of this matrix.
+   */
+  public SparseMatrix transpose(){
+    final int[]     ptr = new int[rows + 1];
+    final int[]     idx = new int[nonZeros()];
+    final double[]  val = new double[nonZeros()];
+
+    for (int p = 0; p < nonZeros(); p++) {
+      ptr[rowIdx[p] + 1]++;
+    }
+
+    for (int i = 0; i < rows; i++) {
+      ptr[i + 1] += ptr[i];
+    }
+
+    final int[] next = Arrays.copyOf(ptr, rows);
+    for (int j = 0; j < cols; j++) {
+      for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+        final int dest = next[rowIdx[p]]++;
+        idx[dest] = j;
+        val[dest] = values[p];
+      }
+    }
+
+    return new SparseMatrix(cols, rows, ptr, idx, val);
+  }
+
+  /**
+   * Densifies this matrix. Only meant for small matrices or for
+   * interoperability with code that requires a {@link Matrix}.
+   *
+   * @return a new dense matrix.
+   */
+  public Matrix toDense(){
+    final Matrix     dense = new Matrix(rows, cols);
+    final double[][] data  = dense.getArray();
+    for (int j = 0; j < cols; j++) {
+      for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+        data[rowIdx[p]][j] = values[p];
+      }
+    }
+
+    return dense;
+  }
+
+  @Override public String toString() {
+    return "SparseMatrix(" + rows + "x" + cols + ", nnz=" + nonZeros() + ")";
+  }
+
+  /**
+   * Accumulates (row, col, value) entries; entries at the same
+   * coordinates are summed.
+   */
+  public static final class Builder {
+    private final int rows;
+    private final int cols;
+
+    private int[]     is;
+    private int[]     js;
+    private double[]  vs;
+    private int       size;
+
+    private Builder(int rows, int cols){
+      if(rows < 0 || cols < 0) throw new IllegalArgumentException("negative dimension");
+
+      this.rows = rows;
+      this.cols = cols;
+      this.is   = new int[16];
+      this.js   = new int[16];
+      this.vs   = new double[16];
+      this.size = 0;
+    }
+
+    /**
+     * Adds value to the entry at (i, j).
+     *
+     * @param i row index
+     * @param j column index
+     * @param value value to add
+     * @return self
+     */
+    public Builder add(int i, int j, double value){
+      if(i < 0 || i >= rows || j < 0 || j >= cols){
+        throw new IndexOutOfBoundsException("(" + i + "," + j + ")");
+      }
+
+      if(size == is.length){
+        final int capacity = size * 2;
+        is = Arrays.copyOf(is, capacity);
+        js = Arrays.copyOf(js, capacity);
+        vs = Arrays.copyOf(vs, capacity);
+      }
+
+      is[size] = i;
+      js[size] = j;
+      vs[size] = value;
+      size++;
+
+      return this;
+    }
+
+    /**
+     * @return a new sparse matrix.
+     */
+    public SparseMatrix build(){
+      // two stable counting sorts (by row, then by column) leave
+      // entries grouped by column with ascending rows.
+      final int[] byRow = countingSort(identity(size), is, rows);
+      final int[] order = countingSort(byRow, js, cols);
+
+      final int[]     colPtr  = new int[cols + 1];
+      final int[]     rowIdx  = new int[size];
+      final double[]  values  = new double[size];
+
+      int nnz = 0; int e = 0;
+      for (int j = 0; j < cols; j++) {
+        while (e < size && js[order[e]] == j) {
+          final int entry = order[e++];
+          if(nnz > colPtr[j] && rowIdx[nnz - 1] == is[entry]){
+            values[nnz - 1] += vs[entry];
+          } else {
+            rowIdx[nnz] = is[entry];
+            values[nnz] = vs[entry];
+            nnz++;
+          }
+        }
+
+        colPtr[j + 1] = nnz;
+      }
+
+      return new SparseMatrix(
+        rows, cols, colPtr,
+        Arrays.copyOf(rowIdx, nnz),
+        Arrays.copyOf(values, nnz)
+      );
+    }
+
+    private static int[] identity(int n){
+      final int[] result = new int[n];
+      for (int e = 0; e < n; e++) {
+        result[e] = e;
+      }
+
+      return result;
+    }
+
+    private static int[] countingSort(int[] entries, int[] keys, int range){
+      final int[] next = new int[range + 1];
+      for (int entry : entries) {
+        next[keys[entry] + 1]++;
+      }
+
+      for (int k = 0; k < range; k++) {
+        next[k + 1] += next[k];
+      }
+
+      final int[] sorted = new int[entries.length];
+      for (int entry : entries) {
+        sorted[next[keys[entry]]++] = entry;
+      }
+
+      return sorted;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package com.vesperin.text.utils;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the k best (id, score) pairs seen so far using a bounded min-heap over
+ * primitive arrays; the worst retained pair sits at the root and is evicted
+ * first. Higher scores are better; equal scores are broken by the smaller id,
+ * so the result does not depend on the order in which pairs are offered.
+ *
+ * @author Huascar Sanchez
+ */
+public final class TopK {
+  private final int k;
+
+  private int[]     ids;
+  private double[]  scores;
+  private int       size;
+
+  /**
+   * Creates a new TopK object.
+   *
+   * @param k max number of pairs to keep
+   */
+  public TopK(int k){
+    if(k < 0) throw new IllegalArgumentException("negative k");
+
+    this.k      = k;
+    this.ids    = new int[Math.min(k, 16)];
+    this.scores = new double[ids.length];
+    this.size   = 0;
+  }
+
+  /**
+   * Offers a new pair.
+   *
+   * @param id item id
+   * @param score item score
+   * @return true if the pair was kept; false otherwise.
+   */
+  public boolean offer(int id, double score){
+    if(k == 0) return false;
+
+    if(size < k){
+      if(size == ids.length){
+        final int capacity = (int) Math.min(k, ids.length * 2L);
+        ids    = Arrays.copyOf(ids, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+      }
+
+      ids[size]    = id;
+      scores[size] = score;
+      siftUp(size++);
+      return true;
+    }
+
+    if(!worse(ids[0], scores[0], id, score)) return false;
+
+    ids[0]    = id;
+    scores[0] = score;
+    siftDown(0, size);
+    return true;
+  }
+
+  /**
+   * Offers all the pairs kept by another TopK object.
+   *
+   * @param other other TopK object
+   */
+  public void offerAll(TopK other){
+    for (int p = 0; p < other.size; p++) {
+      offer(other.ids[p], other.scores[p]);
+    }
+  }
+
+  /**
+   * @return number of kept pairs.
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * @return the kept ids, best first.
+   */
+  public int[] ids(){
+    final int[] result = new int[size];
+    sort(result, new double[size]);
+    return result;
+  }
+
+  /**
+   * @return the kept scores, best first.
+   */
+  public double[] scores(){
+    final double[] result = new double[size];
+    sort(new int[size], result);
+    return result;
+  }
+
+  private void sort(int[] sortedIds, double[] sortedScores){
+    // heap-sorts a copy; the worst pair is popped first
+    final int[]     heapIds     = Arrays.copyOf(ids, size);
+    final double[]  heapScores  = Arrays.copyOf(scores, size);
+
+    final TopK heap = new TopK(size);
+    heap.ids    = heapIds;
+    heap.scores = heapScores;
+    heap.size   = size;
+
+    for (int p = size - 1; p >= 0; p--) {
+      sortedIds[p]    = heapIds[0];
+      sortedScores[p] = heapScores[0];
+
+      heap.size--;
+      heapIds[0]    = heapIds[heap.size];
+      heapScores[0] = heapScores[heap.size];
+      heap.siftDown(0, heap.size);
+    }
+  }
+
+  private void siftUp(int p){
+    while(p > 0){
+      final int parent = (p - 1) >>> 1;
+      if(!worse(ids[p], scores[p], ids[parent], scores[parent])) break;
+
+      swap(p, parent);
+      p = parent;
+    }
+  }
+
+  private void siftDown(int p, int n){
+    while(true){
+      final int left  = 2 * p + 1;
+      if(left >= n) break;
+
+      final int right = left + 1;
+      final int worst = right < n && worse(ids[right], scores[right], ids[left], scores[left])
+        ? right : left;
+
+      if(!worse(ids[worst], scores[worst], ids[p], scores[p])) break;
+
+      swap(p, worst);
+      p = worst;
+    }
+  }
+
+  private void swap(int a, int b){
+    final int     id    = ids[a];
+    final double  score = scores[a];
+
+    ids[a]    = ids[b];
+    scores[a] = scores[b];
+    ids[b]    = id;
+    scores[b] = score;
+  }
+
+  private static boolean worse(int a, double scoreA, int b, double scoreB){
+    final int order = Double.compare(scoreA, scoreB);
+    return order < 0 || (order == 0 && a > b);
+  }
+}
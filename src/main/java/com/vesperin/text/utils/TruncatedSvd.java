@@ -0,0 +1,259 @@
+package com.vesperin.text.utils;
+
+import Jama.Matrix;
+import Jama.QRDecomposition;
+import Jama.SingularValueDecomposition;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Computes only the top k singular triplets of a matrix using randomized
+ * range finding (Halko, Martinsson and Tropp): the range of A is sampled with
+ * a few random vectors, refined by power iterations, and the full
+ * SVD is then applied to a small (k + oversampling) sized projection
+ * of A. Compared to a full SVD, this avoids the cubic cost and the
+ * full-size U/S/V allocations when only a few triplets are needed.
+ *
+ * @author Huascar Sanchez
+ */
+public final class TruncatedSvd {
+
+  /**
+   * Matrices whose smallest dimension is below this threshold
+   * are decomposed with a full (exact) SVD.
+   */
+  public static final int THRESHOLD = 200;
+
+  public static final int DEFAULT_OVERSAMPLING = 10;
+  public static final int DEFAULT_ITERATIONS   = 2;
+
+  private static final long SEED = 0x5EEDL;
+
+  private final int   oversampling;
+  private final int   iterations;
+  private final long  seed;
+
+  /**
+   * Creates a new truncated SVD engine.
+   *
+   * @param oversampling number of extra random samples, beyond k, used to
+   *    capture the range of the matrix.
+   * @param iterations number of power iterations; more iterations improve
+   *    accuracy when singular values decay slowly.
+   */
+  public TruncatedSvd(int oversampling, int iterations){
+    this(oversampling, iterations, SEED);
+  }
+
+  TruncatedSvd(int oversampling, int iterations, long seed){
+    if(oversampling < 0) throw new IllegalArgumentException("negative oversampling");
+    if(iterations < 0)   throw new IllegalArgumentException("negative iterations");
+
+    this.oversampling = oversampling;
+    this.iterations   = iterations;
+    this.seed         = seed;
+  }
+
+  /**
+   * @return a truncated SVD engine with default oversampling and
+   *  number of iterations.
+   */
+  public static TruncatedSvd defaults(){
+    return new TruncatedSvd(DEFAULT_OVERSAMPLING, DEFAULT_ITERATIONS);
+  }
+
+  /**
+   * Tests whether a matrix is big enough to benefit from a truncated SVD.
+   *
+   * @param rows number of rows
+   * @param cols number of columns
+   * @return true if min(rows, cols) is at least {@link #THRESHOLD}.
+   */
+  public static boolean worthwhile(int rows, int cols){
+    return Math.min(rows, cols) >= THRESHOLD;
+  }
+
+  /**
+   * @return number of extra random samples.
+   */
+  public int oversampling(){
+    return oversampling;
+  }
+
+  /**
+   * @return number of power iterations.
+   */
+  public int iterations(){
+    return iterations;
+  }
+
+  /**
+   * Computes the top k singular triplets of a sparse matrix.
+   *
+   * @param matrix sparse matrix
+   * @param k number of triplets to compute
+   * @return the truncated decomposition.
+   */
+  public Svd decompose(SparseMatrix matrix, int k){
+    return decompose(new Operator() {
+      @Override public int rows()                     { return matrix.getRowDimension(); }
+      @Override public int cols()                     { return matrix.getColumnDimension(); }
+      @Override public Matrix times(Matrix x)         { return matrix.times(x); }
+      @Override public Matrix transposeTimes(Matrix x){ return matrix.transposeTimes(x); }
+    }, k);
+  }
+
+  /**
+   * Computes the top k singular triplets of a dense matrix.
+   *
+   * @param matrix dense matrix
+   * @param k number of triplets to compute
+   * @return the truncated decomposition.
+   */
+  public Svd decompose(Matrix matrix, int k){
+    return decompose(new Operator() {
+      @Override public int rows()                     { return matrix.getRowDimension(); }
+      @Override public int cols()                     { return matrix.getColumnDimension(); }
+      @Override public Matrix times(Matrix x)         { return matrix.times(x); }
+      @Override public Matrix transposeTimes(Matrix x){ return matrix.transpose().times(x); }
+    }, k);
+  }
+
+  /**
+   * Computes the top k singular triplets of a dense matrix using
+   * Jama's full SVD, and then drops the remaining triplets.
+   *
+   * @param matrix dense matrix
+   * @param k number of triplets to keep
+   * @return the truncated decomposition.
+   */
+  public static Svd exact(Matrix matrix, int k){
+    // Jama's SVD requires rows >= cols
+    final boolean inconsistent = matrix.getRowDimension() < matrix.getColumnDimension();
+    final SingularValueDecomposition svd = (inconsistent ? matrix.transpose() : matrix).svd();
+
+    final int     rank = Math.min(k, svd.getSingularValues().length);
+    final Matrix  U    = svd.getU().getMatrix(0, svd.getU().getRowDimension() - 1, 0, rank - 1);
+    final Matrix  V    = svd.getV().getMatrix(0, svd.getV().getRowDimension() - 1, 0, rank - 1);
+    final double[] s   = Arrays.copyOf(svd.getSingularValues(), rank);
+
+    return inconsistent ? new Svd(V, s, U) : new Svd(U, s, V);
+  }
+
+  private Svd decompose(Operator a, int k){
+    final int m = a.rows();
+    final int n = a.cols();
+    final int l = Math.min(k + oversampling, Math.min(m, n));
+
+    if(k <= 0 || l <= 0) throw new IllegalArgumentException("invalid rank " + k);
+
+    // Stage A: find an orthonormal basis Q for the (approximate) range of A
+    final Random random = new Random(seed);
+    final Matrix omega  = new Matrix(n, l);
+    final double[][] data = omega.getArray();
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < l; j++) {
+        data[i][j] = random.nextGaussian();
+      }
+    }
+
+    Matrix Q = orthonormalize(a.times(omega));
+    for (int q = 0; q < iterations; q++) {
+      final Matrix Z = orthonormalize(a.transposeTimes(Q));
+      Q = orthonormalize(a.times(Z));
+    }
+
+    // Stage B: B = Q'A is small (l x n); decompose B' (n x l) since
+    // Jama's SVD requires rows >= cols.
+    final Matrix                      Bt  = a.transposeTimes(Q);
+    final SingularValueDecomposition  svd = Bt.svd();
+
+    final int     rank = Math.min(k, l);
+    final Matrix  Ub   = svd.getV().getMatrix(0, l - 1, 0, rank - 1);
+    final Matrix  V    = svd.getU().getMatrix(0, n - 1, 0, rank - 1);
+    final double[] s   = Arrays.copyOf(svd.getSingularValues(), rank);
+
+    return new Svd(Q.times(Ub), s, V);
+  }
+
+  private static Matrix orthonormalize(Matrix y){
+    return new QRDecomposition(y).getQ();
+  }
+
+  private interface Operator {
+    int rows();
+    int cols();
+    Matrix times(Matrix x);
+    Matrix transposeTimes(Matrix x);
+  }
+
+  /**
+   * A truncated singular value decomposition A ~ U * S * V'.
+   */
+  public static final class Svd {
+    private final Matrix    U;
+    private final double[]  s;
+    private final Matrix    V;
+
+    /**
+     * Creates an already computed decomposition; e.g., one read from disk.
+     *
+     * @param U left singular vectors (rows x k).
+     * @param s singular values, in descending order.
+     * @param V right singular vectors (cols x k).
+     */
+    public Svd(Matrix U, double[] s, Matrix V){
+      this.U = U;
+      this.s = s;
+      this.V = V;
+    }
+
+    /**
+     * @return left singular vectors (rows x k).
+     */
+    public Matrix getU(){
+      return U;
+    }
+
+    /**
+     * @return diagonal matrix of singular values (k x k).
+     */
+    public Matrix getS(){
+      final Matrix S = new Matrix(s.length, s.length);
+      for (int i = 0; i < s.length; i++) {
+        S.set(i, i, s[i]);
+      }
+
+      return S;
+    }
+
+    /**
+     * @return right singular vectors (cols x k).
+     */
+    public Matrix getV(){
+      return V;
+    }
+
+    /**
+     * @return singular values, in descending order.
+     */
+    public double[] getSingularValues(){
+      return Arrays.copyOf(s, s.length);
+    }
+
+    /**
+     * @return the number of computed triplets.
+     */
+    public int rank(){
+      return s.length;
+    }
+
+    /**
+     * @return the rank-k approximation U * S * V'.
+     */
+    public Matrix reconstruct(){
+      return U.times(getS()).times(V.transpose());
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.vesperin.text.utils;
+
+/**
+ * Term frequency weighting schemes applied by
+ * {@link Jamas#tfidfMatrix(SparseMatrix, int[], int, Weighting)}
+ * before multiplying by a word's inverse document frequency.
+ *
+ * @author Huascar Sanchez
+ */
+public enum Weighting {
+  /**
+   * Raw word counts: tf.
+   */
+  RAW {
+    @Override public double tf(double count, double docLength, double avgDocLength) {
+      return count;
+    }
+  },
+
+  /**
+   * Log-scaled word counts: log(1 + tf).
+   */
+  LOG {
+    @Override public double tf(double count, double docLength, double avgDocLength) {
+      return Math.log1p(count);
+    }
+  },
+
+  /**
+   * Sublinear word counts: 1 + log(tf); a word seen once scores 1.
+   */
+  SUBLINEAR {
+    @Override public double tf(double count, double docLength, double avgDocLength) {
+      return count > 0.0D ? 1.0D + Math.log(count) : 0.0D;
+    }
+  },
+
+  /**
+   * BM25-style saturation: tf * (k1 + 1) / (tf + k1 * (1 - b + b * |d| / avg(|d|))),
+   * with k1 = 1.2 and b = 0.75. Repeated words yield diminishing returns and
+   * long documents are penalized.
+   */
+  BM25 {
+    @Override public double tf(double count, double docLength, double avgDocLength) {
+      final double norm = avgDocLength > 0.0D ? docLength / avgDocLength : 1.0D;
+      return count * (K1 + 1.0D) / (count + K1 * (1.0D - B + B * norm));
+    }
+  };
+
+  static final double K1 = 1.2D;
+  static final double B  = 0.75D;
+
+  /**
+   * Weights a word's frequency in a document.
+   *
+   * @param count number of times the word appears in the document.
+   * @param docLength total number of words in the document.
+   * @param avgDocLength average number of words per document.
+   * @return the weighted term frequency.
+   */
+  public abstract double tf(double count, double docLength, double avgDocLength);
+}
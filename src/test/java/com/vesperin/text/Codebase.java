@@ -187,6 +187,38 @@ public class Codebase {
     );
   }
 
+  static Source nestedTypes(String name){
+    return createCode(
+      name,
+      "package com.foo.nested;",
+      "import java.util.*;",
+      "",
+      "@Deprecated",
+      "public class " + name + "<K extends Comparable<K>> extends Base implements Runnable {",
+      "  static Runnable worker = new Runnable(){ int counter = 1; public void run(){ increment(counter); } };",
+      "  int[] numbers = {first, second};",
+      "  static { initialize(); }",
+      "",
+      "  " + name + "(int capacity){ super(capacity); }",
+      "",
+      "  @SuppressWarnings({\"unchecked\"}) @Override public void run(){",
+      "    @Deprecated final class Helper<Q> extends Thing { int limit = maximum; void assist(){ helping(); } }",
+      "    Runnable runner = () -> { execute(); };",
+      "    Object holder = new Object(){ int amount = balance; };",
+      "    Comparator<List<String>[]> order = new Comparator<List<String>[]>(){",
+      "      public int compare(List<String>[] left, List<String>[] right){ return ranking(left, right); }",
+      "    };",
+      "    outer: for(;;){ break outer; }",
+      "    String label = Foo.class.getName();",
+      "  }",
+      "",
+      "  interface Listener { void notified(int eventCount); default void listen(){ subscribe(); } }",
+      "  enum Color { RED(crimson), GREEN { void shade(){ darken(); } }; void paint(){ brush(); } Color(){} Color(int pigment){ mixing(); } }",
+      "  @interface Marker { int priority() default 1; int[] levels() default {lowest, highest}; }",
+      "  abstract List<String> transform(Map<String, Integer> mapping) throws Failure;",
+      "}"
+    );
+  }
 
   private static Source createCode(String name, String... lines){
     return Source.from(name, String.join("\n", Arrays.asList(lines)));
@@ -0,0 +1,498 @@
+package com.vesperin.text;
+
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.vesperin.base.Source;
+import com.vesperin.text.Selection.Document;
+import com.vesperin.text.Selection.Word;
+import com.vesperin.text.spelling.StopWords;
+import com.vesperin.text.utils.Jamas;
+import com.vesperin.text.utils.Postings;
+import com.vesperin.text.utils.SparseMatrix;
+import com.vesperin.text.utils.TruncatedSvd;
+import com.vesperin.text.utils.Weighting;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Huascar Sanchez
+ */
+public class IndexTest {
+  private static List<Word> words;
+
+  @BeforeClass public static void setup(){
+    final Selection extractor = new WordDistilling();
+    final Set<Source> code = Sets.newHashSet(
+      Codebase.quickSort("QuickSort1"),
+      Codebase.quickSort("QuickSort2"),
+      Codebase.randomCode("Query1"),
+      Codebase.randomCode("Query2")
+    );
+
+    words = extractor.flattenWordList(code, Collections.emptySet(), StopWords.all());
+  }
+
+  @Test public void testSparseFrequencyMatchesNaiveCounting() throws Exception {
+    final Index         index     = Index.createIndex(words);
+    final SparseMatrix  frequency = index.wordDocFrequency();
+
+    assertEquals(index.wordList().size(), frequency.getRowDimension());
+    assertEquals(index.docSet().size(), frequency.getColumnDimension());
+
+    for(Document doc : index.docSet()){
+      for(int i = 0; i < index.wordList().size(); i++){
+        final Word word = index.wordList().get(i);
+
+        int count = 0; for(Word each : words){
+          if(Objects.equals(each, word) && each.container().contains(doc.toString())) count++;
+        }
+
+        assertEquals(count, frequency.get(i, doc.id()), 0.0D);
+      }
+    }
+
+    assertTrue(frequency.nonZeros() < frequency.getRowDimension() * frequency.getColumnDimension());
+  }
+
+  @Test public void testDocumentIdsFollowColumns() throws Exception {
+    testDocumentIdsFollowColumns(Index.createIndex(words));
+  }
+
+  @Test public void testPostingsRoundTrip() throws Exception {
+    final Postings postings = Postings.count(new int[]{300, 2, 2, 70000, 5, 2});
+
+    assertEquals(4, postings.size());
+    assertArrayEquals(new int[]{2, 5, 300, 70000}, postings.ids());
+    assertArrayEquals(new int[]{3, 1, 1, 1}, postings.frequencies());
+    assertEquals(11, postings.bytes().length);
+
+    final Postings decoded = Postings.decode(postings.bytes(), postings.size());
+    assertArrayEquals(postings.ids(), decoded.ids());
+    assertArrayEquals(postings.frequencies(), decoded.frequencies());
+
+    // a view over a larger buffer only sees its own bytes
+    final ByteBuffer buffer = ByteBuffer.allocate(20);
+    buffer.put(new byte[]{7, 7, 7}).put(postings.bytes());
+    buffer.position(3);
+    buffer.limit(3 + postings.bytes().length);
+
+    final Postings view = Postings.view(buffer, postings.size());
+    assertArrayEquals(postings.ids(), view.ids());
+    assertArrayEquals(postings.bytes(), view.bytes());
+  }
+
+  @Test public void testWordIdsIgnoreCase() throws Exception {
+    final Index index = Index.createIndex(words);
+    final Word  word  = index.wordList().get(0);
+    final Word  upper = Selection.createWord(word.element().toUpperCase());
+
+    assertEquals(word, upper);
+    assertEquals(word.hashCode(), upper.hashCode());
+    assertEquals(0, index.wordId(upper));
+    assertEquals(-1, index.wordId(Selection.createWord("zzzzunknown")));
+  }
+
+  @Test public void testTruncatedSvdApproximatesExactSvd() throws Exception {
+    final Random               random  = new Random(7);
+    final SparseMatrix.Builder builder = SparseMatrix.builder(400, 300);
+    for(int i = 0; i < 400; i++){
+      for(int j = 0; j < 300; j++){
+        // a few dominant "topics" plus sparse noise
+        if(i % 10 == j % 10 && random.nextDouble() < 0.3) builder.add(i, j, 1.0D + (i % 10));
+        if(random.nextDouble() < 0.02) builder.add(i, j, 1.0D);
+      }
+    }
+
+    final SparseMatrix  matrix = builder.build();
+    final int           k      = 10;
+
+    assertTrue(TruncatedSvd.worthwhile(matrix.getRowDimension(), matrix.getColumnDimension()));
+
+    final double[] exact  = TruncatedSvd.exact(matrix.toDense(), k).getSingularValues();
+    final double[] approx = TruncatedSvd.defaults().decompose(matrix, k).getSingularValues();
+
+    assertEquals(k, approx.length);
+    for(int i = 0; i < k; i++){
+      assertEquals(exact[i], approx[i], exact[i] * 0.05D);
+    }
+  }
+
+  @Test public void testRemoveThenAddMatchesFreshIndex() throws Exception {
+    final Index fresh = Index.createIndex(words);
+    final Index index = Index.createIndex(words);
+
+    final Document   doc      = Iterables.get(index.docSet(), 0);
+    final List<Word> docWords = wordsOf(doc);
+
+    final long version = index.version();
+    index.remove(doc);
+    assertEquals(fresh.docCount() - 1, index.docCount());
+    assertFalse(index.docSet().contains(doc));
+
+    final Document added = index.add(doc.toString(), docWords);
+    assertTrue(index.version() > version);
+    assertEquals(fresh.docCount(), index.docCount());
+    assertArrayEquals(fresh.docFrequency(), index.docFrequency());
+
+    for(int i = 0; i < fresh.wordList().size(); i++){
+      assertEquals(
+        fresh.wordDocFrequency().get(i, doc.id()),
+        index.wordDocFrequency().get(i, added.id()),
+        0.0D
+      );
+    }
+  }
+
+  @Test public void testChangesUpdateContainersAndFrequencies() throws Exception {
+    final Index index = Index.createIndex(words);
+    final Document first  = Iterables.get(index.docSet(), 0);
+    final Document second = Iterables.get(index.docSet(), 1);
+
+    assertNotNull(index.wordDocFrequency());
+
+    index.remove(first);
+    index.replace(second, wordsOf(first));
+    index.add("com.foo.best.Copy#method", wordsOf(second));
+
+    for(Word each : index.wordList()){
+      assertFalse(each.container().contains(first.toString()));
+      assertEquals(
+        wordsOf(first).contains(each),
+        each.container().contains(second.toString())
+      );
+    }
+
+    // the caller's words are left as they are
+    assertTrue(words.stream().anyMatch(w -> w.container().contains(first.toString())));
+
+    // the incrementally updated matrix matches one built from the postings
+    // (a loaded index builds its matrix from the stored postings)
+    final Path file = Files.createTempFile("index", ".snapshot");
+    try {
+      index.save(file);
+
+      assertArrayEquals(
+        Index.load(file).wordDocFrequency().toDense().getColumnPackedCopy(),
+        index.wordDocFrequency().toDense().getColumnPackedCopy(),
+        0.0D
+      );
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test public void testFoldInReproducesLatentColumn() throws Exception {
+    final Index index = Index.createIndex(words);
+    index.driftThreshold(1.0D);
+
+    final Matrix   before = index.lsiMatrix();
+    final Document doc    = Iterables.get(index.docSet(), 1);
+
+    final Document copy   = index.add("com.foo.best.Copy#method", wordsOf(doc));
+    final Matrix   after  = index.lsiMatrix();
+
+    // (with fewer words than documents, a new column changes the normalization
+    // of every word; so, columns are compared within the same matrix)
+    assertTrue(index.drift() > 0.0D);
+    assertEquals(before.getColumnDimension() + 1, after.getColumnDimension());
+    assertArrayEquals(
+      Jamas.getCol(after, doc.id()).getColumnPackedCopy(),
+      Jamas.getCol(after, copy.id()).getColumnPackedCopy(),
+      1e-9
+    );
+  }
+
+  @Test public void testFewerWordsThanDocumentsNormalizesWords() throws Exception {
+    final List<Word> few    = fewWords();
+    final Index      index  = Index.createIndex(few);
+    final Matrix raw    = index.wordDocFrequency().toDense();
+    assertTrue(raw.getRowDimension() < raw.getColumnDimension());
+
+    // the original LSI: decompose the transposed matrix, normalize its
+    // columns (i.e., words), and transpose the result back
+    final Matrix transposed = raw.transpose();
+    final int    k          = (int) Math.floor(Math.sqrt(transposed.getColumnDimension()));
+    final SingularValueDecomposition svd = transposed.svd();
+
+    final Matrix weights = svd.getU().getMatrix(0, transposed.getRowDimension() - 1, 0, k - 1)
+      .times(svd.getS().getMatrix(0, k - 1, 0, k - 1))
+      .times(svd.getV().getMatrix(0, transposed.getColumnDimension() - 1, 0, k - 1).transpose());
+
+    for (int j = 0; j < weights.getColumnDimension(); j++) {
+      final double sum = Jamas.colSum(Jamas.getCol(weights, j));
+      for (int i = 0; i < weights.getRowDimension(); i++) {
+        weights.set(i, j, Math.abs(weights.get(i, j) / sum));
+      }
+    }
+
+    final Matrix actual = index.lsiMatrix();
+    assertArrayEquals(
+      weights.transpose().getColumnPackedCopy(),
+      actual.getColumnPackedCopy(),
+      1e-9
+    );
+
+    // folding in a copy of a document keeps the word normalization
+    index.driftThreshold(1.0D);
+
+    final Document doc  = Iterables.get(index.docSet(), 2);
+    final List<Word> docWords = few.stream()
+      .filter(w -> w.container().contains(doc.toString()))
+      .collect(Collectors.toList());
+
+    final Document copy  = index.add("com.foo.Doc#copy", docWords);
+    final Matrix   after = index.lsiMatrix();
+    assertArrayEquals(
+      Jamas.getCol(after, doc.id()).getColumnPackedCopy(),
+      Jamas.getCol(after, copy.id()).getColumnPackedCopy(),
+      1e-9
+    );
+  }
+
+  @Test public void testFoldInUpdatesNormsInPlace() throws Exception {
+    for(List<Word> fixture : Arrays.asList(words, fewWords())){
+      final Index index = Index.createIndex(fixture);
+      index.driftThreshold(1.0D);
+      assertNotNull(index.lsiMatrix());
+
+      final Document   first  = Iterables.get(index.docSet(), 0);
+      final Document   second = Iterables.get(index.docSet(), 1);
+      final List<Word> copied = index.wordList().stream()
+        .filter(w -> w.container().contains(first.toString()))
+        .collect(Collectors.toList());
+
+      index.remove(first);
+      index.replace(second, copied);
+      final Document copy = index.add("com.foo.Doc#copy", copied);
+
+      final Matrix lsi = index.lsiMatrix();
+
+      // word vectors are exact; so is the last folded in document vector
+      final Index.UnitVectors wordVectors = index.unitWordVectors();
+      for (int i = 0; i < lsi.getRowDimension(); i++) {
+        final double norm = Jamas.getRow(lsi, i).normF();
+        for (int j = 0; j < lsi.getColumnDimension(); j++) {
+          assertEquals(norm == 0.0D ? 0.0D : lsi.get(i, j) / norm, wordVectors.get(j, i), 1e-9);
+        }
+      }
+
+      final Index.UnitVectors docVectors = index.unitDocVectors();
+      final double            norm       = Jamas.getCol(lsi, copy.id()).normF();
+      for (int i = 0; i < lsi.getRowDimension(); i++) {
+        assertEquals(lsi.get(i, copy.id()) / norm, docVectors.get(i, copy.id()), 1e-9);
+      }
+    }
+  }
+
+  @Test public void testDriftTriggersFullDecomposition() throws Exception {
+    final Index index = Index.createIndex(words);
+    index.driftThreshold(0.01D);
+
+    assertNotNull(index.lsiMatrix());
+    assertEquals(0.0D, index.drift(), 0.0D);
+
+    final Document doc = Iterables.get(index.docSet(), 0);
+    index.replace(doc, wordsOf(Iterables.get(index.docSet(), 1)));
+    assertTrue(index.drift() > 0.01D);
+
+    assertNotNull(index.lsiMatrix());
+    assertEquals(0.0D, index.drift(), 0.0D);
+  }
+
+  @Test public void testReindexDropsRemovedDocuments() throws Exception {
+    final Index index = Index.createIndex(words);
+    final int   docs  = index.docCount();
+
+    index.remove(Iterables.get(index.docSet(), 0));
+    index.reindex();
+
+    assertEquals(docs - 1, index.docList().size());
+    assertEquals(docs - 1, index.wordDocFrequency().getColumnDimension());
+    testDocumentIdsFollowColumns(index);
+  }
+
+  @Test public void testTfidfDoesNotChangeFrequencies() throws Exception {
+    final Index         index     = Index.createIndex(words);
+    final SparseMatrix  frequency = index.wordDocFrequency();
+    final Matrix        dense     = frequency.toDense();
+
+    final Matrix        expected  = Jamas.tfidfMatrix(dense);
+    final SparseMatrix  actual    = index.tfidfMatrix();
+
+    assertArrayEquals(frequency.toDense().getColumnPackedCopy(), dense.getColumnPackedCopy(), 0.0D);
+    assertArrayEquals(expected.getColumnPackedCopy(), actual.toDense().getColumnPackedCopy(), 1e-12);
+    assertSame(actual, index.tfidfMatrix(Weighting.RAW));
+  }
+
+  @Test public void testTfidfWeightingVariants() throws Exception {
+    final Index index = Index.createIndex(words);
+
+    for(Weighting each : Weighting.values()){
+      final SparseMatrix weighted = index.tfidfMatrix(each);
+      assertEquals(index.wordDocFrequency().nonZeros(), weighted.nonZeros());
+
+      // every document's word scores add up to one
+      for(double sum : weighted.colSums()){
+        assertEquals(1.0D, sum, 1e-9);
+      }
+    }
+
+    assertEquals(1.0D, Weighting.SUBLINEAR.tf(1.0D, 10.0D, 10.0D), 0.0D);
+    assertEquals(Math.log(2.0D), Weighting.LOG.tf(1.0D, 10.0D, 10.0D), 0.0D);
+    assertTrue(Weighting.BM25.tf(100.0D, 10.0D, 10.0D) < 1.0D + 1.2D);
+  }
+
+  @Test public void testSnapshotRoundTrip() throws Exception {
+    final Index index = Index.createIndex(words);
+    index.remove(Iterables.get(index.docSet(), 0));
+    assertNotNull(index.lsiMatrix());
+    assertNotNull(index.docGraph());
+
+    final Path file = Files.createTempFile("index", ".snapshot");
+    try {
+      index.save(file);
+
+      final Index loaded = Index.load(file);
+      assertEquals(index.version(), loaded.version());
+      assertEquals(index.wordList(), loaded.wordList());
+      assertEquals(
+        index.wordList().stream().map(Word::value).collect(Collectors.toList()),
+        loaded.wordList().stream().map(Word::value).collect(Collectors.toList())
+      );
+      assertEquals(index.docList(), loaded.docList());
+      assertEquals(index.docCount(), loaded.docCount());
+      assertArrayEquals(index.docFrequency(), loaded.docFrequency());
+      assertArrayEquals(index.tfidfMatrix().values(), loaded.tfidfMatrix().values(), 0.0D);
+      assertArrayEquals(
+        index.lsiMatrix().getColumnPackedCopy(),
+        loaded.lsiMatrix().getColumnPackedCopy(),
+        0.0D
+      );
+
+      assertEquals(index.docGraph().size(), loaded.docGraph().size());
+
+      // a loaded index keeps accepting updates
+      final Document doc = Iterables.get(loaded.docSet(), 0);
+      loaded.add("com.foo.best.Copy#method", wordsOf(doc));
+      assertEquals(index.docCount() + 1, loaded.docCount());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test public void testSnapshotLoadsWithoutDecomposing() throws Exception {
+    final Index index = Index.createIndex(words);
+    index.driftThreshold(1.0D);
+    assertNotNull(index.lsiMatrix());
+
+    final Document doc = Iterables.get(index.docSet(), 0);
+    index.add("com.foo.best.Copy#method", wordsOf(doc));
+    assertNotNull(index.docGraph());
+
+    // saved past its drift threshold, along with its graph
+    index.driftThreshold(0.01D);
+    final double drift = index.drift();
+    assertTrue(drift > 0.01D);
+
+    final Path file = Files.createTempFile("index", ".snapshot");
+    try {
+      index.save(file);
+
+      final Index loaded = Index.load(file);
+      assertEquals(drift, loaded.drift(), 0.0D);
+
+      // the stored matrix is re-decomposed on first use, not on load
+      assertNotNull(loaded.lsiMatrix());
+      assertEquals(0.0D, loaded.drift(), 0.0D);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test public void testSnapshotRejectsCorruptedOrStaleFiles() throws Exception {
+    final Path file = Files.createTempFile("index", ".snapshot");
+    try {
+      Index.createIndex(words).save(file);
+
+      final byte[] bytes = Files.readAllBytes(file);
+
+      final byte[] corrupted = bytes.clone();
+      corrupted[corrupted.length - 1] ^= 0x1;
+      Files.write(file, corrupted);
+      assertLoadFails(file);
+
+      final byte[] stale = bytes.clone();
+      stale[7] = (byte) (Index.Snapshot.FORMAT_VERSION + 1);
+      Files.write(file, stale);
+      assertLoadFails(file);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void assertLoadFails(Path file){
+    try {
+      Index.load(file);
+      fail("expected an IOException");
+    } catch (IOException ignored){}
+  }
+
+  private static List<Word> fewWords(){
+    final List<Word> few = new ArrayList<>();
+    for(String each : Arrays.asList("sort", "pivot", "partition", "query")){
+      few.add(Selection.createWord(each));
+    }
+
+    final Random random = new Random(3);
+    for(int j = 0; j < 9; j++){
+      for(Word each : few){
+        if(random.nextInt(3) != 0) each.add("com.foo.Doc#m" + j);
+      }
+
+      few.get(j % few.size()).add("com.foo.Doc#m" + j);
+    }
+
+    return few;
+  }
+
+  private static List<Word> wordsOf(Document doc){
+    return words.stream()
+      .filter(w -> w.container().contains(doc.toString()))
+      .collect(Collectors.toList());
+  }
+
+  private static void testDocumentIdsFollowColumns(Index index){
+    int column = 0; for(Document each : index.docSet()){
+      assertEquals(column, each.id());
+      column++;
+    }
+  }
+
+  @AfterClass public static void tearDown(){
+    words = null;
+  }
+}
@@ -9,15 +9,28 @@ import com.vesperin.text.Query.Result;
 import com.vesperin.text.Selection.Document;
 import com.vesperin.text.Selection.Word;
 import com.vesperin.text.spelling.StopWords;
+import com.vesperin.text.utils.Hnsw;
+import com.vesperin.text.utils.TopK;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -81,6 +94,307 @@ public class QueryTest {
 
   }
 
+  @Test public void testTopKMatchesFullRanking() throws Exception {
+    final List<Word>  words  = Selection.selects(100, code);
+    final Index       index  = Index.createIndex(words);
+
+    for(Word each : words.subList(0, 5)){
+      final List<Word> query = Collections.singletonList(each);
+      final Result     all   = Query.methods(query, index);
+      final Result     top   = Query.methods(query, index, 3);
+
+      assertEquals(Math.min(3, all.size()), top.size());
+      assertEquals(
+        Result.items(all, Object.class).subList(0, top.size()),
+        Result.items(top, Object.class)
+      );
+
+      final double[] scores = all.scores();
+      for(int i = 1; i < scores.length; i++){
+        assertTrue(scores[i - 1] >= scores[i]);
+      }
+    }
+  }
+
+  @Test public void testTopKBreaksTiesById() throws Exception {
+    final TopK topK = new TopK(3);
+    topK.offer(4, 0.5D);
+    topK.offer(1, 0.9D);
+    topK.offer(3, 0.5D);
+    topK.offer(0, 0.1D);
+    topK.offer(2, 0.5D);
+
+    assertArrayEquals(new int[]{1, 2, 3}, topK.ids());
+    assertArrayEquals(new double[]{0.9D, 0.5D, 0.5D}, topK.scores(), 0.0D);
+  }
+
+  @Test public void testBatchMatchesSingleQueries() throws Exception {
+    final List<Word>  words  = Selection.selects(100, code);
+    final Index       index  = Index.createIndex(words);
+
+    final List<List<Word>> queries = Arrays.asList(
+      Collections.singletonList(words.get(0)),
+      words.subList(1, 4),
+      Collections.emptyList(),
+      words.subList(2, 6)
+    );
+
+    final List<Result> batch = Query.methodBatch(queries, index, 4);
+    assertEquals(queries.size(), batch.size());
+
+    for(int q = 0; q < queries.size(); q++){
+      final Result single = Query.methods(queries.get(q), index, 4);
+
+      assertEquals(Result.items(single, Object.class), Result.items(batch.get(q), Object.class));
+      assertArrayEquals(single.scores(), batch.get(q).scores(), 1e-12);
+    }
+  }
+
+  @Test public void testCachingQuery() throws Exception {
+    final List<Word>  words  = Selection.selects(100, code);
+    final Index       index  = Index.createIndex(words);
+    final Word        a      = words.get(0);
+    final Word        b      = words.get(1);
+
+    final Query.CachingQuery query = Query.createCachingQuery(10_000);
+
+    final Result first = query.methodSearch(Arrays.asList(a, b), index, 3);
+    final Result again = query.methodSearch(
+      Arrays.asList(Selection.createWord(b.element().toUpperCase()), a), index, 3
+    );
+
+    assertSame(first, again);
+    assertEquals(1, query.stats().hitCount());
+    assertEquals(1, query.stats().missCount());
+
+    // a different k is a different result
+    query.methodSearch(Arrays.asList(a, b), index, 4);
+    assertEquals(2, query.stats().missCount());
+
+    // approximate results are cached apart from exact ones
+    final Result approx = query.methodSearch(Arrays.asList(a, b), index, 3, 8);
+    assertSame(approx, query.methodSearch(Arrays.asList(b, a), index, 3, 8));
+    assertNotSame(first, approx);
+    assertEquals(3, query.stats().missCount());
+
+    // batches reuse (and fill) the cache, query by query
+    final List<Result> batch = query.batchMethodSearch(
+      Arrays.asList(Arrays.asList(a, b), Collections.singletonList(b)), index, 3
+    );
+
+    assertSame(first, batch.get(0));
+    assertSame(batch.get(1), query.methodSearch(Collections.singletonList(b), index, 3));
+    assertEquals(4, query.stats().missCount());
+
+    // changing the index invalidates its results
+    index.remove(Iterables.get(index.docSet(), 0));
+    final Result fresh = query.methodSearch(Arrays.asList(a, b), index, 3);
+    assertNotSame(first, fresh);
+    assertEquals(5, query.stats().missCount());
+  }
+
+  @Test public void testCachingQueryKeysDocumentsById() throws Exception {
+    final List<Word>  words  = Selection.selects(100, code);
+    final Index       index  = Index.createIndex(words);
+
+    // containers that only differ in case are different documents
+    final Document lower = index.add("com.foo.Doc#sort", words.subList(0, 5));
+    final Document upper = index.add("com.foo.DOC#sort", words.subList(5, 10));
+    assertNotEquals(index.docId(lower), index.docId(upper));
+
+    final Query.CachingQuery query = Query.createCachingQuery(10_000);
+
+    final Result first  = query.typeSearch(Collections.singletonList(lower), index, 3);
+    final Result second = query.typeSearch(Collections.singletonList(upper), index, 3);
+
+    assertNotSame(first, second);
+    assertEquals(0, query.stats().hitCount());
+    assertEquals(
+      Result.items(Query.createQuery().typeSearch(Collections.singletonList(upper), index, 3), Object.class),
+      Result.items(second, Object.class)
+    );
+  }
+
+  @Test public void testApproximateSearchMatchesExactSearch() throws Exception {
+    final List<Word>  words  = Selection.selects(100, code);
+    final Index       index  = Index.createIndex(words);
+
+    for(Word each : words.subList(0, 5)){
+      final List<Word> query  = Collections.singletonList(each);
+      final Result     exact  = Query.methods(query, index, 5);
+      final Result     approx = Query.methods(query, index, 5, index.docCount());
+
+      assertEquals(Result.items(exact, Object.class), Result.items(approx, Object.class));
+      assertArrayEquals(exact.scores(), approx.scores(), 1e-9);
+    }
+  }
+
+  @Test public void testGraphsUseLatentCoordinates() throws Exception {
+    final List<Word>  words  = Selection.selects(100, code);
+    final Index       index  = Index.createIndex(words);
+
+    // k-dim coordinates, rather than whole columns (or rows) of the latent matrix
+    final int k = index.docGraphQuery(new int[]{0}).length;
+    assertEquals(k, index.wordGraphQuery(new int[]{0}).length);
+    assertTrue(k > 0 && k < Math.min(index.wordList().size(), index.docCount()));
+
+    for(Document each : Iterables.limit(index.docSet(), 5)){
+      final List<Document> query  = Collections.singletonList(each);
+      final Result         exact  = Query.createQuery().typeSearch(query, index, 5);
+      final Result         approx = Query.createQuery().typeSearch(query, index, 5, index.wordList().size());
+
+      assertEquals(Result.items(exact, Object.class), Result.items(approx, Object.class));
+      assertArrayEquals(exact.scores(), approx.scores(), 1e-9);
+    }
+  }
+
+  @Test public void testHnswRecall() throws Exception {
+    final Random    random  = new Random(11);
+    final float[][] vectors = new float[2000][];
+    for(int i = 0; i < vectors.length; i++){
+      vectors[i] = unitVector(random, 24);
+    }
+
+    vectors[7] = null; // e.g., a removed document
+
+    final Hnsw graph = Hnsw.build(vectors, 12, 80, true);
+    assertEquals(vectors.length - 1, graph.size());
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    graph.write(new DataOutputStream(bytes));
+    final Hnsw loaded = Hnsw.read(ByteBuffer.wrap(bytes.toByteArray()), vectors);
+
+    int hits = 0; final int queries = 50; final int k = 10;
+    for(int q = 0; q < queries; q++){
+      final float[] query = unitVector(random, 24);
+
+      final TopK exact = new TopK(k);
+      for(int i = 0; i < vectors.length; i++){
+        if(vectors[i] == null) continue;
+
+        double dot = 0.0D; for(int d = 0; d < query.length; d++) dot += query[d] * vectors[i][d];
+        exact.offer(i, dot);
+      }
+
+      final int[] approx = graph.search(query, k, 64).ids();
+      assertArrayEquals(approx, loaded.search(query, k, 64).ids());
+
+      for(int id : exact.ids()){
+        for(int each : approx){
+          if(each == id) hits++;
+        }
+      }
+    }
+
+    assertTrue(hits / (double) (queries * k) >= 0.9D);
+  }
+
+  @Test public void testHnswUpdatesInPlace() throws Exception {
+    final Random    random  = new Random(13);
+    final float[][] vectors = new float[2000][];
+    for(int i = 0; i < 1500; i++){
+      vectors[i] = unitVector(random, 24);
+    }
+
+    final Hnsw graph = Hnsw.build(Arrays.copyOf(vectors, 1500), 12, 80, true);
+
+    // new nodes, changed nodes and deleted nodes
+    for(int i = 1500; i < vectors.length; i++){
+      vectors[i] = unitVector(random, 24);
+      graph.put(i, vectors[i]);
+    }
+
+    for(int i = 0; i < 100; i++){
+      vectors[i] = unitVector(random, 24);
+      graph.put(i, vectors[i]);
+    }
+
+    final float[][] live = vectors.clone();
+    for(int i = 100; i < 200; i++){
+      graph.delete(i);
+      live[i] = null;
+    }
+
+    assertEquals(vectors.length - 100, graph.size());
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    graph.write(new DataOutputStream(bytes));
+    final Hnsw loaded = Hnsw.read(ByteBuffer.wrap(bytes.toByteArray()), vectors);
+    assertEquals(graph.size(), loaded.size());
+
+    int hits = 0; final int queries = 50; final int k = 10;
+    for(int q = 0; q < queries; q++){
+      final float[] query = unitVector(random, 24);
+
+      final TopK exact = new TopK(k);
+      for(int i = 0; i < live.length; i++){
+        if(live[i] == null) continue;
+
+        double dot = 0.0D; for(int d = 0; d < query.length; d++) dot += query[d] * live[i][d];
+        exact.offer(i, dot);
+      }
+
+      final int[] approx = graph.search(query, k, 64).ids();
+      assertArrayEquals(approx, loaded.search(query, k, 64).ids());
+
+      for(int each : approx){
+        assertNotNull(live[each]);
+      }
+
+      for(int id : exact.ids()){
+        for(int each : approx){
+          if(each == id) hits++;
+        }
+      }
+    }
+
+    assertTrue(hits / (double) (queries * k) >= 0.9D);
+  }
+
+  @Test public void testChangesUpdateDocumentGraph() throws Exception {
+    final List<Word>  words  = Selection.selects(100, code);
+    final Index       index  = Index.createIndex(words);
+    index.driftThreshold(1.0D);
+
+    final Hnsw     graph  = index.docGraph();
+    final Document first  = Iterables.get(index.docSet(), 0);
+    final Document second = Iterables.get(index.docSet(), 1);
+
+    final List<Word> copied = index.wordList().stream()
+      .filter(w -> w.container().contains(second.toString()))
+      .collect(Collectors.toList());
+
+    index.add("com.foo.Doc#copy", copied);
+    index.remove(first);
+
+    assertSame(graph, index.docGraph());
+    assertEquals(index.docCount(), graph.size());
+
+    for(Word each : copied){
+      final List<Word> query  = Collections.singletonList(each);
+      final Result     exact  = Query.methods(query, index, 5);
+      final Result     approx = Query.methods(query, index, 5, index.docList().size());
+
+      assertEquals(Result.items(exact, Object.class), Result.items(approx, Object.class));
+      assertArrayEquals(exact.scores(), approx.scores(), 1e-9);
+    }
+  }
+
+  private static float[] unitVector(Random random, int size){
+    final float[] vector = new float[size];
+
+    double norm = 0.0D; for(int d = 0; d < size; d++){
+      vector[d] = (float) random.nextGaussian();
+      norm += vector[d] * vector[d];
+    }
+
+    for(int d = 0; d < size; d++){
+      vector[d] = (float) (vector[d] / Math.sqrt(norm));
+    }
+
+    return vector;
+  }
+
   @AfterClass public static void tearDown(){
     code.clear();
     code = null;
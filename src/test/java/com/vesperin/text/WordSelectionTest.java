@@ -2,16 +2,34 @@ package com.vesperin.text;
 
 import com.google.common.collect.Sets;
 import com.vesperin.base.Source;
+import com.vesperin.text.Selection.Extraction;
 import com.vesperin.text.Selection.Word;
 import com.vesperin.text.spelling.StopWords;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * @author Huascar Sanchez
@@ -67,6 +85,397 @@ public class WordSelectionTest {
     assertThat(words.isEmpty(), is(false));
   }
 
+  @Test public void testCachedExtraction() throws Exception {
+    final WordDistilling extractor = new WordDistilling();
+    final Source         code      = Codebase.quickSort("QuickSort1");
+    final Path           directory = Files.createTempDirectory("words");
+
+    try {
+      final List<Word> expected = extractor.from(code, Collections.emptySet(), StopWords.all());
+
+      final WordCache cache = WordCache.tiered(16, directory);
+      final List<Word> first  = cache.get(code, Collections.emptySet(), StopWords.all(), Extraction.AST, c -> expected);
+      final List<Word> second = cache.get(code, Collections.emptySet(), StopWords.all(), Extraction.AST, c -> {
+        throw new AssertionError("unchanged source parsed twice");
+      });
+
+      assertThat(cache.misses(), is(1L));
+      assertThat(cache.memoryStats().hitCount(), is(1L));
+      assertThat(second, is(first));
+      assertThat(second.get(0) != first.get(0), is(true));
+
+      // a new cache over the same directory reads the on-disk tier
+      final WordCache   reopened = WordCache.tiered(16, directory);
+      final List<Word>  third    = reopened.get(code, Collections.emptySet(), StopWords.all(), Extraction.AST, c -> {
+        throw new AssertionError("unchanged source parsed twice");
+      });
+
+      assertThat(reopened.diskHits(), is(1L));
+      assertThat(third, is(expected));
+      for(int i = 0; i < expected.size(); i++){
+        assertThat(third.get(i).container(), is(expected.get(i).container()));
+        assertThat(third.get(i).value(), is(expected.get(i).value()));
+      }
+
+      // a different configuration is a different entry
+      reopened.get(code, Collections.singleton("quicksort"), StopWords.all(), Extraction.AST, c -> expected);
+      assertThat(reopened.misses(), is(1L));
+
+      // so is a different extraction mode
+      reopened.get(code, Collections.emptySet(), StopWords.all(), Extraction.TOKENS, c -> expected);
+      assertThat(reopened.misses(), is(2L));
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)){
+        files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    }
+  }
+
+  @Test public void testCacheKeyFollowsExtraction() throws Exception {
+    final Set<Source> code  = Collections.singleton(Codebase.quickSort("QuickSort1"));
+    final WordCache   cache = WordCache.memory(16);
+
+    Selection.selects(100, code, Collections.emptySet(), StopWords.all(), cache, ExecutionPolicy.shared(), Extraction.AST);
+    assertThat(cache.misses(), is(1L));
+
+    // an AST entry is not served to a TOKENS selection
+    Selection.selects(100, code, Collections.emptySet(), StopWords.all(), cache, ExecutionPolicy.shared(), Extraction.TOKENS);
+    assertThat(cache.misses(), is(2L));
+
+    Selection.selects(100, code, Collections.emptySet(), StopWords.all(), cache, ExecutionPolicy.shared(), Extraction.TOKENS);
+    assertThat(cache.misses(), is(2L));
+  }
+
+  @Test public void testCacheKeyFollowsStopWords() throws Exception {
+    final Source          code    = Codebase.quickSort("QuickSort1");
+    final Set<StopWords>  custom  = EnumSet.of(StopWords.CUSTOM);
+
+    final String before = WordCache.key(code, Collections.emptySet(), custom, Extraction.AST);
+    assertThat(WordCache.key(code, Collections.emptySet(), custom, Extraction.AST), is(before));
+
+    try {
+      StopWords.CUSTOM.add("cachekeyword");
+      assertThat(WordCache.key(code, Collections.emptySet(), custom, Extraction.AST).equals(before), is(false));
+    } finally {
+      StopWords.CUSTOM.remove("cachekeyword");
+    }
+
+    assertThat(WordCache.key(code, Collections.emptySet(), custom, Extraction.AST), is(before));
+  }
+
+  @Test public void testExecutionPolicyPropagatesFailures() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final ExecutionPolicy policy = ExecutionPolicy.of(executor, 2);
+      assertThat(policy.map(Arrays.asList(1, 2, 3, 4), i -> i * 10), is(Arrays.asList(10, 20, 30, 40)));
+
+      try {
+        policy.map(Arrays.asList(1, 2, 3, 4), i -> {
+          if(i == 3) throw new IllegalStateException("boom");
+          return i;
+        });
+
+        fail("expected a TaskFailure");
+      } catch (ExecutionPolicy.TaskFailure failure){
+        assertThat(failure.item(), is(3));
+        assertThat(failure.getCause() instanceof IllegalStateException, is(true));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test public void testStreamingSelection() throws Exception {
+    final List<Source> code = Arrays.asList(
+      Codebase.quickSort("QuickSort1"),
+      Codebase.quickSort("QuickSort2"),
+      Codebase.quickSort("QuickSort3"),
+      Codebase.quickSort("QuickSort4"),
+      Codebase.quickSort("QuickSort5")
+    );
+
+    final Set<Source>  corpus    = new LinkedHashSet<>(code);
+    final List<Word>   expected  = Selection.selects(10, corpus, Collections.emptySet(), StopWords.all());
+    final List<Word>   streamed  = Selection.selects(10, code.stream(), Collections.emptySet(), StopWords.all());
+
+    assertThat(streamed, is(expected));
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(streamed.get(i).value(), is(expected.get(i).value()));
+      assertThat(streamed.get(i).container(), is(expected.get(i).container()));
+    }
+
+    // sources are pulled only when there is room for them (plus the
+    // one a stream's iterator looks ahead)
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final AtomicInteger pulled   = new AtomicInteger();
+      final AtomicInteger consumed = new AtomicInteger();
+
+      ExecutionPolicy.of(executor, 2).forEach(
+        Stream.iterate(0, i -> i + 1).limit(50).peek(i -> pulled.incrementAndGet()).iterator(),
+        i -> i,
+        i -> {
+          assertThat(i, is(consumed.getAndIncrement()));
+          assertThat(pulled.get() - consumed.get() <= 2, is(true));
+        }
+      );
+
+      assertThat(consumed.get(), is(50));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test public void testTokenExtractionMatchesAstExtraction() throws Exception {
+    final Selection ast    = new WordDistilling();
+    final Selection tokens = new WordDistilling(){
+      @Override public Extraction extraction() {
+        return Extraction.TOKENS;
+      }
+    };
+
+    final List<Source> code = Arrays.asList(
+      Codebase.quickSort("QuickSort1"),
+      Codebase.randomCode("Query1"),
+      Codebase.nestedTypes("Nested1")
+    );
+
+    for(Source each : code){
+      final List<Word> expected = ast.from(each, Collections.emptySet(), StopWords.all());
+      final List<Word> actual   = tokens.from(each, Collections.emptySet(), StopWords.all());
+
+      assertThat(expected.isEmpty(), is(false));
+      assertThat(actual, is(expected));
+      for(int i = 0; i < expected.size(); i++){
+        assertThat(actual.get(i).container(), is(expected.get(i).container()));
+        assertThat(actual.get(i).value(), is(expected.get(i).value()));
+      }
+    }
+  }
+
+  @Test public void testWordsAreAggregatedPerDocument() throws Exception {
+    final Selection.WordCollector collector = new Selection.WordCollector(
+      Collections.emptySet(), EnumSet.of(StopWords.ENGLISH), TermCache.of(16)
+    );
+
+    collector.collect("quickSort", "sort", () -> "Foo#sort");
+    collector.collect("quickSort", "sort", () -> "Foo#sort");
+    collector.collect("quickSort", "partition", () -> "Foo#partition");
+
+    final List<Word> words = collector.wordList();
+    assertThat(words, is(Arrays.asList(Selection.createWord("quick"), Selection.createWord("sort"))));
+    for(Word each : words){
+      assertThat(each.value(), is(3));
+      assertThat(each.container(), is(Sets.newHashSet("Foo#sort", "Foo#partition")));
+    }
+
+    // counting merges aggregates
+    final Selection  extractor = new WordDistilling();
+    final Set<Source> code     = Sets.newHashSet(
+      Codebase.quickSort("QuickSort1"),
+      Codebase.quickSort("QuickSort2")
+    );
+
+    final List<Word> all      = extractor.from(code, Collections.emptySet(), StopWords.all());
+    final List<Word> counted  = extractor.flattenWordList(code, Collections.emptySet(), StopWords.all());
+    for(Word each : counted){
+      final int occurrences = all.stream()
+        .filter(w -> w.equals(each))
+        .mapToInt(Word::value)
+        .sum();
+
+      assertThat(each.value() >= occurrences, is(true));
+    }
+  }
+
+  @Test public void testTermCache() throws Exception {
+    final TermCache       cache     = TermCache.of(16);
+    final Set<StopWords>  stopWords = EnumSet.of(StopWords.CUSTOM);
+
+    final List<String> first = cache.terms("parseZebraCount", stopWords);
+    assertThat(first, is(TermCache.normalize("parseZebraCount", stopWords)));
+    assertThat(first.contains("zebra"), is(true));
+
+    assertThat(cache.terms("parseZebraCount", stopWords), is(first));
+    assertThat(cache.stats().hitCount(), is(1L));
+    assertThat(cache.stats().missCount(), is(1L));
+
+    // a new stop word makes earlier entries stale
+    try {
+      StopWords.CUSTOM.add("zebra");
+      assertThat(cache.terms("parseZebraCount", stopWords).contains("zebra"), is(false));
+      assertThat(cache.stats().missCount(), is(2L));
+    } finally {
+      StopWords.CUSTOM.remove("zebra");
+    }
+
+    // and so does removing it
+    assertThat(cache.terms("parseZebraCount", stopWords), is(first));
+    assertThat(cache.stats().missCount(), is(3L));
+  }
+
+  @Test public void testTopKMatchesFullRanking() throws Exception {
+    final WordDistilling extractor = new WordDistilling();
+    final Set<Source> code = Sets.newHashSet(
+      Codebase.quickSort("QuickSort1"),
+      Codebase.quickSort("QuickSort2"),
+      Codebase.randomCode("Query1"),
+      Codebase.randomCode("Query2")
+    );
+
+    final List<Word> words = extractor.from(code, Collections.emptySet(), StopWords.all());
+
+    final Selection.WordCounter counter = new Selection.WordCounter(words);
+    final List<Word>            all     = counter.top(Integer.MAX_VALUE);
+
+    // equally frequent words are ordered by element
+    final List<Word> sorted = new ArrayList<>(all);
+    sorted.sort(Comparator.comparing(Word::value).reversed()
+      .thenComparing(Word::element, String.CASE_INSENSITIVE_ORDER));
+    assertThat(all, is(sorted));
+    assertThat(counter.top(5), is(all.subList(0, 5)));
+
+    final List<Word> ranked = new Selection.WordByCompositeWeight().apply(all);
+    assertThat(new Selection.WordByCompositeWeight(5).apply(all), is(ranked.subList(0, 5)));
+    assertThat(new Selection.WordByCompositeWeight().apply(all), is(ranked));
+  }
+
+  @Test public void testReselectionMatchesSelectionFromScratch() throws Exception {
+    final Source quickSort1 = Codebase.quickSort("QuickSort1");
+    final Source quickSort2 = Codebase.quickSort("QuickSort2");
+    final Source query1     = Codebase.randomCode("Query1");
+    final Source query2     = Codebase.randomCode("Query2");
+    final Source nested1    = Codebase.nestedTypes("Nested1");
+
+    final Set<String>     whiteSet  = Collections.emptySet();
+    final Set<StopWords>  stopWords = StopWords.all();
+
+    final SelectionState state = SelectionState.of(
+      Sets.newHashSet(quickSort1, quickSort2, query1), whiteSet, stopWords
+    );
+
+    assertSameWords(
+      state.selects(20),
+      Selection.selects(20, Sets.newHashSet(query1, quickSort2, quickSort1), whiteSet, stopWords)
+    );
+
+    // QuickSort2 is rewritten, Query1 is deleted, and two files are added
+    final Source modified = Codebase.randomCode("QuickSort2");
+    final List<Word> reselected = Selection.reselects(20, state,
+      Sets.newHashSet(query2, nested1), Collections.singleton(modified), Collections.singleton(query1)
+    );
+
+    assertThat(state.sources(), is(Sets.newHashSet("QuickSort1", "QuickSort2", "Query2", "Nested1")));
+
+    final Set<Source> corpus = new LinkedHashSet<>(Arrays.asList(nested1, modified, query2, quickSort1));
+    assertSameWords(reselected, Selection.selects(20, corpus, whiteSet, stopWords));
+
+    // deleting everything leaves nothing to select
+    Selection.reselects(20, state, Collections.emptySet(), Collections.emptySet(), corpus);
+    assertThat(state.selects(20).isEmpty(), is(true));
+  }
+
+  @Test public void testReselectionTellsSameNamedSourcesApart() throws Exception {
+    final Source first  = Codebase.quickSort("Twin");
+    final Source second = Codebase.randomCode("Twin");
+
+    final Set<String>     whiteSet  = Collections.emptySet();
+    final Set<StopWords>  stopWords = StopWords.all();
+
+    // by default, sources are identified by their names
+    try {
+      SelectionState.of(Sets.newHashSet(first, second), whiteSet, stopWords);
+      fail("expected an IllegalArgumentException");
+    } catch (IllegalArgumentException ignored){}
+
+    final Map<Source, String> paths = new HashMap<>();
+    paths.put(first, "sort/Twin");
+    paths.put(second, "query/Twin");
+
+    final SelectionState state = SelectionState.of(
+      Sets.newHashSet(first, second), whiteSet, stopWords,
+      WordCache.shared(), ExecutionPolicy.shared(), Selection.Extraction.AST, paths::get
+    );
+
+    assertThat(state.sources(), is(Sets.newHashSet("sort/Twin", "query/Twin")));
+    assertSameWords(state.selects(20), Selection.selects(20, Sets.newHashSet(first, second), whiteSet, stopWords));
+
+    // deleting one of them keeps the other's words
+    state.update(Collections.emptySet(), Collections.emptySet(), Collections.singleton(first));
+    assertThat(state.sources(), is(Collections.singleton("query/Twin")));
+    assertSameWords(state.selects(20), Selection.selects(20, Collections.singleton(second), whiteSet, stopWords));
+  }
+
+  private static void assertSameWords(List<Word> actual, List<Word> expected){
+    assertThat(expected.isEmpty(), is(false));
+    assertThat(actual, is(expected));
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.get(i).value(), is(expected.get(i).value()));
+      assertThat(actual.get(i).container(), is(expected.get(i).container()));
+    }
+  }
+
+  @Test public void testCorpusLoader() throws Exception {
+    final Source quickSort1 = Codebase.quickSort("QuickSort1");
+    final Source quickSort2 = Codebase.quickSort("QuickSort2");
+    final Source query1     = Codebase.randomCode("Query1");
+
+    // big enough to be memory-mapped
+    final StringBuilder padding = new StringBuilder("\n//");
+    for (int i = 0; i < 70_000; i++) padding.append('x');
+
+    final Path directory = Files.createTempDirectory("corpus");
+    try {
+      final Path sources = Files.createDirectories(directory.resolve("src/com/foo/best"));
+      Files.write(sources.resolve("QuickSort1.java"), quickSort1.getContent().getBytes(StandardCharsets.UTF_8));
+      Files.write(sources.resolve("QuickSort2.java"), (quickSort2.getContent() + padding).getBytes(StandardCharsets.UTF_8));
+      Files.write(sources.resolve("README.txt"), "not java".getBytes(StandardCharsets.UTF_8));
+
+      final Path tests = Files.createDirectories(directory.resolve("src/test"));
+      Files.write(tests.resolve("Query2.java"), Codebase.randomCode("Query2").getContent().getBytes(StandardCharsets.UTF_8));
+
+      final Path jar = directory.resolve("query-sources.jar");
+      try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))){
+        out.putNextEntry(new ZipEntry("com/foo/best/Query1.java"));
+        out.write(query1.getContent().getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+
+      final CorpusLoader loader = CorpusLoader.defaults().exclude("test/**");
+      final Set<Source>  corpus = loader.loadAll(directory.resolve("src"), jar);
+
+      final Map<String, String> contents = new HashMap<>();
+      corpus.forEach(c -> contents.put(c.getName(), c.getContent()));
+
+      assertThat(contents.keySet(), is(Sets.newHashSet("com/foo/best/QuickSort1", "com/foo/best/QuickSort2", "com/foo/best/Query1")));
+      assertThat(contents.get("com/foo/best/QuickSort1"), is(quickSort1.getContent()));
+      assertThat(contents.get("com/foo/best/QuickSort2"), is(quickSort2.getContent() + padding));
+      assertThat(contents.get("com/foo/best/Query1"), is(query1.getContent()));
+
+      assertThat(CorpusLoader.defaults().include("**/Query*").loadAll(directory).size(), is(1));
+
+      // the same file name under two roots is a collision, not two sources
+      final Path copies = Files.createDirectories(directory.resolve("copy/com/foo/best"));
+      Files.write(copies.resolve("QuickSort1.java"), quickSort1.getContent().getBytes(StandardCharsets.UTF_8));
+      try {
+        loader.loadAll(directory.resolve("src"), directory.resolve("copy"));
+        fail("expected an IllegalArgumentException");
+      } catch (IllegalArgumentException ignored){}
+
+      // sources flow into the selection as they are read
+      try (Stream<Source> stream = loader.load(directory.resolve("src"), jar)){
+        assertSameWords(
+          Selection.selects(10, stream, Collections.emptySet(), StopWords.all()),
+          Selection.selects(10, corpus, Collections.emptySet(), StopWords.all())
+        );
+      }
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)){
+        files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    }
+  }
+
   @Test public void testLatentWords() throws Exception {
     final WordDistilling extractor = new WordDistilling();
     final Set<Source> code = Sets.newHashSet(
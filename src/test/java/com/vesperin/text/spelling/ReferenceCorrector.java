@@ -0,0 +1,125 @@
+package com.vesperin.text.spelling;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.google.common.primitives.Floats.compare;
+import static com.vesperin.text.spelling.WordCorrector.onlyConsonantsOrVowels;
+import static com.vesperin.text.spelling.WordCorrector.similarity;
+
+/**
+ * The original (brute force) {@link WordCorrector#correct(String, float)}: it
+ * enumerates every word one and two edits away from a misspelled word, and
+ * looks each of them up in the dictionary. Kept as the reference behaviour
+ * of {@link WordCorrector}.
+ *
+ * @author Huascar Sanchez
+ */
+class ReferenceCorrector implements Corrector {
+  private final SortedMap<String, Integer> dictionary;
+
+  ReferenceCorrector(SortedMap<String, Integer> dictionary){
+    this.dictionary = dictionary;
+  }
+
+  @Override public String correct(String word, float accuracy) {
+
+    if(contains(word)) { return word; } else {
+      if(onlyConsonantsOrVowels(word)) {
+
+        // Make some edits
+        final Optional<String> e1 = max(captureThoseInDictionary(mutate(word)));
+        final Optional<String> e2 = max(captureThoseInDictionary(mutate(word)
+          .map(this::mutate).flatMap((x)->x))
+        );
+
+        // Use prefixes (like a Trie)
+        Optional<String> e3 = max(getPrefixedBy(word, dictionary).stream());
+        if(!e3.isPresent()){
+          e3 = max(getPrefixedBy(word.substring(0, word.length() - 1), dictionary).stream());
+        }
+
+        final Set<String> winners = new HashSet<>();
+        if(e1.isPresent()) winners.add(e1.get());
+        if(e2.isPresent()) winners.add(e2.get());
+        if(e3.isPresent()) winners.add(e3.get());
+
+        final Optional<String> winner = winners.stream().max(
+          (a, b) -> compare(similarity(word, a), similarity(word, b))
+        );
+
+        if(winner.isPresent()) return winner.get();
+
+        return word;
+      } else {
+        Optional<String> e0 = max(getPrefixedBy(word, dictionary).stream());
+
+        if(!e0.isPresent()){
+          e0 = max(getPrefixedBy(word.substring(0, word.length() - 1), dictionary).stream());
+        }
+
+        if(e0.isPresent()) return e0.get();
+
+        return word;
+      }
+    }
+  }
+
+  /**
+   * @return the most frequent dictionary word prefixed by the given prefix.
+   */
+  Optional<String> bestCompletion(String prefix){
+    return max(getPrefixedBy(prefix, dictionary).stream());
+  }
+
+  private Stream<String> captureThoseInDictionary(Stream<String> words){
+    return words.filter(this::contains);
+  }
+
+  private boolean contains(String word){
+    return dictionary.containsKey(word);
+  }
+
+  private static <V> SortedMap<String, V> filterPrefix(SortedMap<String,V> baseMap, String prefix) {
+    if(prefix.length() > 0) {
+      char nextLetter = (char)(prefix.charAt(prefix.length() - 1) + 1);
+      String end = prefix.substring(0, prefix.length() - 1) + nextLetter;
+      return baseMap.subMap(prefix, end);
+    }
+    return baseMap;
+  }
+
+  private static <V> Set<String> getPrefixedBy(String word, SortedMap<String, V> baseMap){
+    return filterPrefix(baseMap, word).keySet();
+  }
+
+  private Optional<String> max(Stream<String> stream){
+    return stream.max((a, b) -> dictionary.get(a) - dictionary.get(b));
+  }
+
+  private Stream<String> mutate(final String word){
+    final Stream<String> deletes    = IntStream.range(0, word.length())
+      .mapToObj((i) -> word.substring(0, i) + word.substring(i + 1));
+
+    final Stream<String> replaces   = IntStream.range(0, word.length())
+      .mapToObj((i)->i)
+      .flatMap( (i) -> "abcdefghijklmnopqrstuvwxyz".chars()
+        .mapToObj( (c) -> word.substring(0,i) + (char)c + word.substring(i+1)));
+
+    final Stream<String> inserts    = IntStream.range(0, word.length()+1)
+      .mapToObj((i)->i)
+      .flatMap( (i) -> "abcdefghijklmnopqrstuvwxyz".chars()
+        .mapToObj( (c) ->  word.substring(0,i) + (char)c + word.substring(i)));
+
+    final Stream<String> transposes = IntStream.range(0, word.length()-1)
+      .mapToObj((i)-> word.substring(0,i)
+        + word.substring(i + 1,i + 2)
+        + word.charAt(i) + word.substring(i + 2));
+
+    return Stream.of( deletes,replaces,inserts,transposes ).flatMap((x)->x);
+  }
+}
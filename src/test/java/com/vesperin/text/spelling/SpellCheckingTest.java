@@ -1,9 +1,26 @@
 package com.vesperin.text.spelling;
 
+import com.google.common.cache.CacheStats;
+import com.vesperin.text.utils.IdentifierTokenizer;
+import com.vesperin.text.utils.Similarity;
 import org.junit.Test;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static com.vesperin.text.spelling.WordCorrector.suggestCorrection;
 import static org.hamcrest.CoreMatchers.is;
@@ -31,4 +48,230 @@ public class SpellCheckingTest {
       assertThat(corrections.contains(correction), is(true));
     }
   }
+
+  @Test public void testCorrectionsAreCached() throws Exception {
+    final WordCorrector corrector = WordCorrector.getInstance();
+
+    final CacheStats before = corrector.correctionStats();
+    final String     first  = corrector.correct("srtng");
+    final String     none   = corrector.correct("zzqa");
+
+    assertThat(corrector.correct("srtng"), is(first));
+    assertThat(corrector.correct("zzqa"), is(none));
+    assertThat(none, is("zzqa"));
+
+    // dictionary words skip the cache
+    assertThat(corrector.correct("string"), is("string"));
+
+    final CacheStats delta = corrector.correctionStats().minus(before);
+    assertThat(delta.hitCount(), is(2L));
+    assertThat(delta.missCount() <= 2L, is(true));
+    assertThat(corrector.cachedCorrections() >= 2L, is(true));
+  }
+
+  @Test public void testTokenizerMatchesRegexes() throws Exception {
+    final String camelCase  = "((?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z]))|_";
+    final String alphabet   = "aeiouyngNGbcxzABCXYZ_019-+\n\u0130\u00e9";
+
+    final Random random = new Random(42);
+    for (int t = 0; t < 50000; t++) {
+      final char[] chars = new char[random.nextInt(9)];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+      }
+
+      final String each = new String(chars);
+
+      assertThat(each, Arrays.asList(IdentifierTokenizer.tokenize(each).toArray()),
+        is(Arrays.asList(each.split(camelCase))));
+      assertThat(each, IdentifierTokenizer.onlyConsonantsOrVowels(each),
+        is(!each.isEmpty() && each.toLowerCase(Locale.ENGLISH).matches("^[aeiuoAEIOU]*$|^(?!.*(NG|ng)).[^aeyiuo]*$")));
+      assertThat(each, IdentifierTokenizer.isNumber(each),
+        is(!each.isEmpty() && each.matches("\\d+")));
+      assertThat(each, IdentifierTokenizer.stripNumbers(each),
+        is(each.replaceAll("(-?\\d+)|(\\+1)", "")));
+      assertThat(each, IdentifierTokenizer.countUnderscoreParts(each),
+        is(each.split(Pattern.quote("_")).length));
+    }
+  }
+
+  @Test public void testCorrectionMatchesReference() throws Exception {
+    final WordCorrector       corrector = WordCorrector.getInstance();
+    final ReferenceCorrector  reference = new ReferenceCorrector(corrector.dictionary());
+
+    final List<String> words = new ArrayList<>(Arrays.asList(
+      "cnt", "idx", "tmp", "buf", "str", "msg", "ctx", "mgr", "btn", "src", "dst", "pkg", "cfg",
+      "ptr", "len", "arr", "obj", "quik", "sortd", "pivt", "prtn", "smth", "xyzzy"
+    ));
+
+    // misspelled dictionary words: one or two random edits away from them
+    final List<String>  dictionary  = new ArrayList<>(corrector.dictionary().keySet());
+    final String        letters     = "abcdefghijklmnopqrstuvwxyz";
+    final Random        random      = new Random(7);
+    while(words.size() < 150){
+      final StringBuilder each = new StringBuilder(dictionary.get(random.nextInt(dictionary.size())));
+      if(each.length() > 7) continue;
+
+      for(int edit = random.nextInt(2); edit < 2; edit++){
+        final int at = random.nextInt(each.length());
+        switch (random.nextInt(3)){
+          case 0:  each.deleteCharAt(at); break;
+          case 1:  each.setCharAt(at, letters.charAt(random.nextInt(26))); break;
+          default: each.insert(at, letters.charAt(random.nextInt(26)));
+        }
+      }
+
+      if(each.length() > 1) words.add(each.toString());
+    }
+
+    // abbreviations; i.e., words that are corrected by editing them
+    final String consonants = "bcdfghjklmnpqrstvwxz";
+    while(words.size() < 200){
+      final StringBuilder each = new StringBuilder().append(letters.charAt(random.nextInt(26)));
+      for(int i = random.nextInt(5); i >= 0; i--){
+        each.append(consonants.charAt(random.nextInt(consonants.length())));
+      }
+
+      if(WordCorrector.onlyConsonantsOrVowels(each.toString())) words.add(each.toString());
+    }
+
+    for(String each : words){
+      assertThat(each, corrector.correct(each), is(reference.correct(each)));
+    }
+  }
+
+  @Test public void testTrieMatchesPrefixScan() throws Exception {
+    final SortedMap<String, Integer> words = new TreeMap<>();
+    words.put("sort", 3);
+    words.put("sorted", 5);
+    words.put("sorter", 5);
+    words.put("sorting", 2);
+    words.put("so", 5);
+    words.put("zebra", 1);
+
+    final WordTrie            trie      = WordTrie.of(words);
+    final ReferenceCorrector  reference = new ReferenceCorrector(words);
+
+    assertThat(trie.size(), is(words.size()));
+    assertThat(trie.toSortedMap(), is(words));
+
+    for(String each : Arrays.asList("", "s", "so", "sor", "sorte", "sorti", "sortx", "z", "zebras", "a")){
+      assertThat(each, trie.bestCompletion(each), is(reference.bestCompletion(each)));
+    }
+
+    // every prefix of (and one char past) each dictionary word
+    final SortedMap<String, Integer> dictionary = WordCorrector.getInstance().dictionary();
+    final WordTrie            big       = WordTrie.of(dictionary);
+    final ReferenceCorrector  scan      = new ReferenceCorrector(dictionary);
+    for(String word : dictionary.keySet()){
+      assertThat(word, big.frequency(word), is(dictionary.get(word)));
+
+      for (int i = 0; i <= word.length(); i++) {
+        final String prefix = word.substring(0, i);
+        assertThat(prefix, big.bestCompletion(prefix), is(scan.bestCompletion(prefix)));
+        assertThat(prefix + "q", big.bestCompletion(prefix + "q"), is(scan.bestCompletion(prefix + "q")));
+      }
+    }
+  }
+
+  @Test public void testCompiledResourcesMatchText() throws Exception {
+    final SpellingDictionary text;
+    try (Reader reader = new InputStreamReader(getClass().getResourceAsStream("/big.txt"), StandardCharsets.UTF_8)){
+      text = SpellingDictionary.fromText(reader);
+    }
+
+    final byte[]              bytes     = CompiledResources.compileDictionary(text);
+    final SpellingDictionary  compiled  = SpellingDictionary.readFrom(CompiledResources.content(bytes));
+
+    assertThat(compiled.words.toSortedMap(), is(text.words.toSortedMap()));
+    assertThat(compiled.words.toSortedMap(), is(WordCorrector.getInstance().dictionary()));
+    for(String each : Arrays.asList("", "cnt", "str", "sort", "qzx", "configuration")){
+      assertThat(each, compiled.words.bestCompletion(each), is(text.words.bestCompletion(each)));
+      assertThat(each, compiled.edits.candidates(each), is(text.edits.candidates(each)));
+    }
+
+    // corrupted resources are rejected
+    bytes[bytes.length - 1] ^= 1;
+    assertThat(CompiledResources.content(bytes) == null, is(true));
+
+    final Map<String, List<String>> lists = new LinkedHashMap<>();
+    try (Reader reader = new InputStreamReader(getClass().getResourceAsStream("/english"), StandardCharsets.UTF_8)){
+      lists.put("english", StopWords.readWordList(reader));
+    }
+
+    final List<String> words = CompiledResources.readStopWords(
+      CompiledResources.content(CompiledResources.compileStopWords(lists))
+    ).get("english");
+
+    assertThat(new HashSet<>(words).size(), is(words.size()));
+    for(String each : lists.get("english")){
+      assertThat(each, words.contains(each.toLowerCase(Locale.ENGLISH)), is(true));
+      assertThat(each, StopWords.ENGLISH.isStopWord(each), is(true));
+    }
+  }
+
+  @Test public void testSimilarityMatchesDynamicProgramming() throws Exception {
+    final String alphabet = "abcdeABC\u00e9\u4e2d";
+    final Random random   = new Random(11);
+
+    for (int t = 0; t < 20000; t++) {
+      final int     bound = t % 10 == 0 ? 150 : 12;
+      final String  a     = randomWord(random, alphabet, bound);
+      final String  b     = random.nextInt(4) == 0 ? a : randomWord(random, alphabet, bound);
+
+      final float expected = referenceScore(a, b);
+      final float actual   = Similarity.similarityScore(a, b);
+      assertThat(a + " vs " + b, Float.floatToIntBits(actual), is(Float.floatToIntBits(expected)));
+
+      final float minScore = random.nextFloat() * 1.2f - 0.1f;
+      final float bounded  = Similarity.similarityScore(a, b, minScore);
+      assertThat(a + " vs " + b + " > " + minScore, bounded > minScore, is(expected > minScore));
+      if(expected > minScore) assertThat(bounded, is(expected));
+    }
+  }
+
+  private static String randomWord(Random random, String alphabet, int bound){
+    final char[] chars = new char[random.nextInt(bound)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+    }
+
+    return new String(chars);
+  }
+
+  // the original two-row Levenshtein, and its quirks (e.g., empty words)
+  private static float referenceScore(String a, String b){
+    int distance = 0;
+    if(!a.isEmpty() && !b.isEmpty() && !a.equals(b)){
+      int[] v0 = new int[b.length() + 1];
+      int[] v1 = new int[b.length() + 1];
+      for (int j = 0; j < v0.length; j++) v0[j] = j;
+
+      for (int i = 0; i < a.length(); i++) {
+        v1[0] = i + 1;
+        for (int j = 0; j < b.length(); j++) {
+          final int cost = a.charAt(i) == b.charAt(j) ? 0 : 1;
+          v1[j + 1] = Math.min(Math.min(v1[j] + 1, v0[j + 1] + 1), v0[j] + cost);
+        }
+
+        System.arraycopy(v1, 0, v0, 0, v0.length);
+      }
+
+      distance = v1[b.length()];
+    }
+
+    return 1.0f - ((distance / 1.0f) / (Math.max(a.length(), b.length()) / 1.0f));
+  }
+
+  @Test public void testMutationIndex() throws Exception {
+    final WordCorrector corrector = WordCorrector.getInstance();
+    for(String word : Arrays.asList("cnt", "aab", "x1y", "", "a", "zz")){
+      final List<String> mutations = corrector.mutate(word).collect(Collectors.toList());
+      for(String each : mutations){
+        assertThat(word + " -> " + each, WordCorrector.mutationIndex(word, each), is(mutations.indexOf(each)));
+      }
+
+      assertThat(WordCorrector.mutationIndex(word, word + "12"), is(-1));
+    }
+  }
 }